@@ -0,0 +1,114 @@
+package cn.laobayou.siyubao.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ImagePreprocessor公开入口的基准测试
+ * 同时以吞吐量和采样时间（给出p50/p90/p99等分位数）两种模式运行，配合-prof gc查看每次操作的分配量。
+ * 每次调用都重新包装已解码的图像，和线上一样包含一次像素提取，但不包含解码（decode和byte[]入口除外）
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx1g", "-Djava.awt.headless=true"})
+@State(Scope.Benchmark)
+public class ImagePreprocessorBenchmark {
+
+    @Param({"green-540x1200", "green-1080x2400", "green-1440x3200",
+            "blue-540x1200", "blue-1080x2400", "blue-1440x3200",
+            "colored-540x1200", "colored-1080x2400", "colored-1440x3200",
+            "white-540x1200", "white-1080x2400", "white-1440x3200"})
+    public String image;
+
+    /**
+     * 行带并行度，1为顺序执行
+     */
+    @Param({"1"})
+    public int parallelism;
+
+    private ImagePreprocessor preprocessor;
+    private byte[] imageBytes;
+    private BufferedImage decoded;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        preprocessor = ScreenshotCorpus.newPreprocessor(parallelism);
+        imageBytes = ScreenshotCorpus.load(image);
+        decoded = DecodedImage.read(imageBytes).getImage();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        preprocessor.destroy();
+    }
+
+    @Benchmark
+    public DecodedImage decode() throws IOException {
+        return DecodedImage.read(imageBytes);
+    }
+
+    @Benchmark
+    public BackgroundProfile profileBackground() {
+        return preprocessor.profileBackground(DecodedImage.of(decoded));
+    }
+
+    @Benchmark
+    public boolean hasGreenBackground() {
+        return preprocessor.hasGreenBackground(DecodedImage.of(decoded));
+    }
+
+    @Benchmark
+    public boolean hasBlueBackground() {
+        return preprocessor.hasBlueBackground(DecodedImage.of(decoded));
+    }
+
+    @Benchmark
+    public boolean hasColoredBackground() {
+        return preprocessor.hasColoredBackground(DecodedImage.of(decoded));
+    }
+
+    @Benchmark
+    public BufferedImage preprocessForGreenBackground() {
+        return preprocessor.preprocessForGreenBackground(DecodedImage.of(decoded));
+    }
+
+    @Benchmark
+    public BufferedImage preprocessForBlueBackground() {
+        return preprocessor.preprocessForBlueBackground(DecodedImage.of(decoded));
+    }
+
+    @Benchmark
+    public BufferedImage preprocessForColoredBackground() {
+        return preprocessor.preprocessForColoredBackground(DecodedImage.of(decoded));
+    }
+
+    @Benchmark
+    public BufferedImage preprocessForChatBackground() {
+        return preprocessor.preprocessForChatBackground(DecodedImage.of(decoded));
+    }
+
+    /**
+     * 字节入口：解码、预处理、PNG编码全过程
+     */
+    @Benchmark
+    public byte[] preprocessForGreenBackgroundBytes() throws IOException {
+        return preprocessor.preprocessForGreenBackground(imageBytes);
+    }
+}
@@ -0,0 +1,69 @@
+package cn.laobayou.siyubao.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 单个预处理阶段的基准测试
+ * 阶段即ImagePreprocessor内部的缩放、二值化、形态学、锐化和各背景的文字增强，
+ * 每次调用都从原始RGB图像开始执行一个阶段
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx1g", "-Djava.awt.headless=true"})
+@State(Scope.Benchmark)
+public class PreprocessStageBenchmark {
+
+    @Param({"scale", "threshold", "morphology", "sharpen",
+            "green-enhance", "blue-enhance", "colored-enhance", "general-enhance"})
+    public String stage;
+
+    @Param({"green-1080x2400", "blue-1080x2400"})
+    public String image;
+
+    @Param({"1"})
+    public int parallelism;
+
+    private ImagePreprocessor preprocessor;
+    private PreprocessStage preprocessStage;
+    private BufferedImage decoded;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        preprocessor = ScreenshotCorpus.newPreprocessor(parallelism);
+        preprocessStage = ScreenshotCorpus.stages(preprocessor).get(stage);
+        if (preprocessStage == null) {
+            throw new IllegalArgumentException("未知的预处理阶段: " + stage);
+        }
+        decoded = DecodedImage.read(ScreenshotCorpus.load(image)).getImage();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        preprocessor.destroy();
+    }
+
+    @Benchmark
+    public ImageRaster apply() {
+        PreprocessContext context = new PreprocessContext(DecodedImage.of(decoded));
+        preprocessStage.apply(context);
+        return context.getRaster();
+    }
+}
@@ -0,0 +1,156 @@
+package cn.laobayou.siyubao.util;
+
+import cn.laobayou.siyubao.config.PreprocessStageConfig;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 基准测试用的聊天截图语料
+ * 合成截图以“风格-宽x高”命名（如green-1080x2400），按名称用固定随机种子生成，每次运行完全一致：
+ * green为浅灰底绿色气泡黑字，blue为浅灰底蓝色气泡白字，colored为红色底浅色气泡，white为白底黑字。
+ * 其他名称按真实截图加载：先找classpath下的corpus/目录（src/jmh/resources/corpus），再按文件路径读取
+ */
+public final class ScreenshotCorpus {
+
+    private static final Pattern SYNTHETIC_NAME = Pattern.compile("(green|blue|colored|white)-(\\d+)x(\\d+)");
+
+    private ScreenshotCorpus() {
+    }
+
+    /**
+     * 按名称加载截图的原始字节（PNG或JPEG）
+     */
+    public static byte[] load(String name) throws IOException {
+        Matcher matcher = SYNTHETIC_NAME.matcher(name);
+        if (matcher.matches()) {
+            int width = Integer.parseInt(matcher.group(2));
+            int height = Integer.parseInt(matcher.group(3));
+            return DecodedImage.encodePng(synthesize(matcher.group(1), width, height));
+        }
+        try (InputStream in = ScreenshotCorpus.class.getClassLoader().getResourceAsStream("corpus/" + name)) {
+            if (in != null) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                byte[] buffer = new byte[8192];
+                int n;
+                while ((n = in.read(buffer)) > 0) {
+                    out.write(buffer, 0, n);
+                }
+                return out.toByteArray();
+            }
+        }
+        File file = new File(name);
+        if (!file.isFile()) {
+            throw new IOException("截图不存在: " + name);
+        }
+        return Files.readAllBytes(file.toPath());
+    }
+
+    /**
+     * 生成一张合成聊天截图：左右交替的圆角气泡、头像色块和多行文字
+     */
+    public static BufferedImage synthesize(String style, int width, int height) {
+        Color background;
+        Color bubble;
+        Color text;
+        switch (style) {
+            case "green":
+                background = new Color(237, 237, 237);
+                bubble = new Color(149, 236, 105);
+                text = Color.BLACK;
+                break;
+            case "blue":
+                background = new Color(245, 245, 245);
+                bubble = new Color(70, 150, 246);
+                text = Color.WHITE;
+                break;
+            case "colored":
+                background = new Color(230, 70, 70);
+                bubble = new Color(255, 240, 240);
+                text = new Color(40, 40, 40);
+                break;
+            default:
+                background = Color.WHITE;
+                bubble = Color.WHITE;
+                text = Color.BLACK;
+                break;
+        }
+
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        g.setColor(background);
+        g.fillRect(0, 0, width, height);
+
+        Random random = new Random(style.hashCode() * 31L + width * 7919L + height);
+        int fontSize = Math.max(14, width / 22);
+        int avatar = Math.max(40, width / 9);
+        int margin = avatar + 30;
+        g.setFont(new Font(Font.SANS_SERIF, Font.PLAIN, fontSize));
+        boolean right = true;
+        int y = fontSize * 2;
+        while (y < height - fontSize * 6) {
+            int bubbleWidth = width / 2 + random.nextInt(width / 4);
+            int lines = 1 + random.nextInt(4);
+            int bubbleHeight = fontSize * lines + fontSize;
+            int x = right ? width - bubbleWidth - margin : margin;
+            g.setColor(new Color(200, 120, 80));
+            g.fillRect(right ? width - avatar - 10 : 10, y, avatar, avatar);
+            g.setColor(right ? bubble : Color.WHITE);
+            g.fillRoundRect(x, y, bubbleWidth, bubbleHeight, 16, 16);
+            g.setColor(right ? text : Color.BLACK);
+            for (int line = 0; line < lines; line++) {
+                g.drawString("Hello chat " + random.nextInt(99999) + " text",
+                        x + fontSize / 2, y + fontSize / 2 + fontSize * (line + 1) - fontSize / 5);
+            }
+            y += bubbleHeight + fontSize;
+            right = !right;
+        }
+        g.dispose();
+        return image;
+    }
+
+    /**
+     * 创建一个不依赖Spring容器的预处理器，配置项取application.yml中的默认值
+     * 缩放相关的配置不在这里设置，直接使用ImagePreprocessor中与@Value共用的默认值
+     * @param parallelism 行带并行度
+     */
+    public static ImagePreprocessor newPreprocessor(int parallelism) {
+        ImagePreprocessor preprocessor = new ImagePreprocessor();
+        ReflectionTestUtils.setField(preprocessor, "parallelism", parallelism);
+        ReflectionTestUtils.setField(preprocessor, "parallelMinPixels", 250_000L);
+        preprocessor.init();
+        return preprocessor;
+    }
+
+    /**
+     * 与{@link PreprocessStageConfig}注册相同的预处理阶段，按名称索引
+     */
+    public static Map<String, PreprocessStage> stages(ImagePreprocessor preprocessor) {
+        PreprocessStageConfig config = new PreprocessStageConfig();
+        Map<String, PreprocessStage> stages = new HashMap<>();
+        for (PreprocessStage stage : new PreprocessStage[]{
+                config.scaleStage(preprocessor),
+                config.thresholdStage(preprocessor),
+                config.morphologyStage(preprocessor),
+                config.sharpenStage(preprocessor),
+                config.greenEnhanceStage(preprocessor),
+                config.blueEnhanceStage(preprocessor),
+                config.coloredEnhanceStage(preprocessor),
+                config.generalEnhanceStage(preprocessor)}) {
+            stages.put(stage.getName(), stage);
+        }
+        return stages;
+    }
+}
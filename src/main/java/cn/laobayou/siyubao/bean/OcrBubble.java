@@ -0,0 +1,26 @@
+package cn.laobayou.siyubao.bean;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * 按聊天气泡识别时单个气泡的识别结果
+ */
+@Getter@Setter
+public class OcrBubble {
+
+    public static final String SIDE_LEFT = "left";
+    public static final String SIDE_RIGHT = "right";
+
+    private String side;//left:靠左的对方消息 right:靠右的自己的消息
+
+    private String text;
+
+    public OcrBubble() {
+    }
+
+    public OcrBubble(String side, String text) {
+        this.side = side;
+        this.text = text;
+    }
+}
@@ -0,0 +1,90 @@
+package cn.laobayou.siyubao.bean;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 异步OCR任务
+ */
+@Getter@Setter
+public class OcrJob {
+
+    public static final String STATUS_QUEUED = "queued";
+    public static final String STATUS_RUNNING = "running";
+    public static final String STATUS_COMPLETED = "completed";
+    public static final String STATUS_FAILED = "failed";
+
+    private String id;
+
+    private String fileName;
+
+    private volatile String status = STATUS_QUEUED;//queued:排队中 running:识别中 completed:已完成 failed:失败
+
+    private volatile OcrResult result;//识别结果，完成后才有值
+
+    private volatile String message;//失败原因或提示信息
+
+    private long submitTime;
+
+    private volatile long startTime;
+
+    private volatile long finishTime;
+
+    public OcrJob() {
+    }
+
+    public OcrJob(String id, String fileName) {
+        this.id = id;
+        this.fileName = fileName;
+        this.submitTime = System.currentTimeMillis();
+    }
+
+    /**
+     * 是否已经结束（完成或失败）
+     */
+    public boolean isFinished() {
+        return STATUS_COMPLETED.equals(status) || STATUS_FAILED.equals(status);
+    }
+
+    /**
+     * 转换为接口返回的结构，与同步接口的字段保持一致
+     */
+    public Map<String, Object> toMap() {
+        Map<String, Object> map = new HashMap<>();
+        map.put("jobId", id);
+        map.put("fileName", fileName);
+        map.put("status", status);
+        map.put("submitTime", submitTime);
+        if (startTime > 0) {
+            map.put("startTime", startTime);
+            map.put("queueMs", startTime - submitTime);
+        }
+        if (finishTime > 0) {
+            map.put("finishTime", finishTime);
+            map.put("durationMs", finishTime - submitTime);
+        }
+        OcrResult ocrResult = result;
+        if (ocrResult != null) {
+            String text = ocrResult.getText() != null ? ocrResult.getText().trim() : "";
+            map.put("text", text);
+            map.put("source", ocrResult.getSource());
+            if (ocrResult.getEngine() != null) {
+                map.put("engine", ocrResult.getEngine());
+            }
+            if (!ocrResult.getBubbles().isEmpty()) {
+                map.put("bubbles", ocrResult.getBubbles());
+            }
+            map.put("nearDuplicate", ocrResult.isNearDuplicate());
+            if (ocrResult.isNearDuplicate()) {
+                map.put("duplicateDistance", ocrResult.getDuplicateDistance());
+            }
+        }
+        if (message != null) {
+            map.put("message", message);
+        }
+        return map;
+    }
+}
@@ -0,0 +1,40 @@
+package cn.laobayou.siyubao.bean;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * OCR识别结果及其来源
+ */
+@Getter@Setter
+public class OcrResult {
+
+    public static final String SOURCE_ENGINE = "engine";
+    public static final String SOURCE_CACHE = "cache";
+    public static final String SOURCE_NEAR_DUPLICATE = "near-duplicate";
+
+    private String text;
+
+    private String source = SOURCE_ENGINE;//engine:引擎识别 cache:内容完全相同的缓存 near-duplicate:复用近似截图的结果
+
+    private String engine;//给出结果的引擎（textin或tesseract），来自缓存时为空
+
+    private int duplicateDistance = -1;//与近似截图的哈希距离，未发现近似截图时为-1
+
+    private List<OcrBubble> bubbles = new ArrayList<>();//按聊天气泡识别时各气泡的方向和文字，识别整幅图像时为空（按气泡识别的结果不进缓存）
+
+    public OcrResult() {
+    }
+
+    public OcrResult(String text, String source) {
+        this.text = text;
+        this.source = source;
+    }
+
+    public boolean isNearDuplicate() {
+        return duplicateDistance >= 0;
+    }
+}
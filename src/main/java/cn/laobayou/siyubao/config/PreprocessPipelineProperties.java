@@ -0,0 +1,40 @@
+package cn.laobayou.siyubao.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 预处理流水线配置
+ * 每种背景类型对应一个阶段名称列表，按顺序执行；未配置的背景类型使用默认流水线
+ */
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "ocr.pipeline")
+public class PreprocessPipelineProperties {
+
+    /**
+     * 背景类型 -> 阶段名称列表
+     */
+    private Map<String, List<String>> profiles = new LinkedHashMap<>();
+
+    /**
+     * 默认流水线，在原来各preprocessFor*方法的固定顺序前先按文字行高缩放
+     */
+    public static Map<String, List<String>> defaultProfiles() {
+        Map<String, List<String>> defaults = new LinkedHashMap<>();
+        defaults.put("blue", Collections.singletonList("scale"));
+        defaults.put("green", Arrays.asList("scale", "green-enhance", "morphology"));
+        defaults.put("colored", Arrays.asList("scale", "colored-enhance", "morphology"));
+        defaults.put("plain", Collections.singletonList("scale"));
+        return defaults;
+    }
+}
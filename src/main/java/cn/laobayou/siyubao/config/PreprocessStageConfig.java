@@ -0,0 +1,54 @@
+package cn.laobayou.siyubao.config;
+
+import cn.laobayou.siyubao.util.ImagePreprocessor;
+import cn.laobayou.siyubao.util.PreprocessStage;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 预处理阶段注册
+ * 阶段名称即流水线配置中使用的名称
+ */
+@Configuration
+public class PreprocessStageConfig {
+
+    @Bean
+    public PreprocessStage scaleStage(ImagePreprocessor imagePreprocessor) {
+        return PreprocessStage.of("scale", imagePreprocessor::scaleStage);
+    }
+
+    @Bean
+    public PreprocessStage thresholdStage(ImagePreprocessor imagePreprocessor) {
+        return PreprocessStage.of("threshold", imagePreprocessor::thresholdStage);
+    }
+
+    @Bean
+    public PreprocessStage morphologyStage(ImagePreprocessor imagePreprocessor) {
+        return PreprocessStage.of("morphology", imagePreprocessor::morphologyStage);
+    }
+
+    @Bean
+    public PreprocessStage sharpenStage(ImagePreprocessor imagePreprocessor) {
+        return PreprocessStage.of("sharpen", imagePreprocessor::sharpenStage);
+    }
+
+    @Bean
+    public PreprocessStage greenEnhanceStage(ImagePreprocessor imagePreprocessor) {
+        return PreprocessStage.of("green-enhance", imagePreprocessor::greenEnhanceStage);
+    }
+
+    @Bean
+    public PreprocessStage blueEnhanceStage(ImagePreprocessor imagePreprocessor) {
+        return PreprocessStage.of("blue-enhance", imagePreprocessor::blueEnhanceStage);
+    }
+
+    @Bean
+    public PreprocessStage coloredEnhanceStage(ImagePreprocessor imagePreprocessor) {
+        return PreprocessStage.of("colored-enhance", imagePreprocessor::coloredEnhanceStage);
+    }
+
+    @Bean
+    public PreprocessStage generalEnhanceStage(ImagePreprocessor imagePreprocessor) {
+        return PreprocessStage.of("general-enhance", imagePreprocessor::generalEnhanceStage);
+    }
+}
@@ -1,14 +1,32 @@
 package cn.laobayou.siyubao.controller;
 
+import cn.laobayou.siyubao.bean.OcrJob;
+import cn.laobayou.siyubao.bean.OcrResult;
+import cn.laobayou.siyubao.exception.OcrEngineUnavailableException;
+import cn.laobayou.siyubao.service.OcrBatchService;
+import cn.laobayou.siyubao.service.OcrJobService;
 import cn.laobayou.siyubao.service.OcrService;
+import cn.laobayou.siyubao.util.InMemoryMultipartFile;
+import com.alibaba.fastjson.JSON;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * OCR文字识别控制器
@@ -21,6 +39,12 @@ public class OcrController {
     @Autowired
     private OcrService ocrService;
 
+    @Autowired
+    private OcrJobService ocrJobService;
+
+    @Autowired
+    private OcrBatchService ocrBatchService;
+
     /**
      * 图片文字识别API
      * @param image 上传的图片文件
@@ -35,29 +59,27 @@ public class OcrController {
                     image.getOriginalFilename(), image.getSize());
             
             // 验证文件
-            if (image.isEmpty()) {
+            String invalidMessage = validateImage(image);
+            if (invalidMessage != null) {
                 result.put("success", false);
-                result.put("message", "图片文件不能为空");
+                result.put("message", invalidMessage);
                 return ResponseEntity.badRequest().body(result);
             }
             
-            // 验证文件类型
-            String contentType = image.getContentType();
-            if (contentType == null || !contentType.startsWith("image/")) {
-                result.put("success", false);
-                result.put("message", "请上传有效的图片文件");
-                return ResponseEntity.badRequest().body(result);
+            // 执行OCR识别
+            OcrResult ocrResult = ocrService.recognize(image);
+            String recognizedText = ocrResult.getText();
+            result.put("source", ocrResult.getSource());
+            if (ocrResult.getEngine() != null) {
+                result.put("engine", ocrResult.getEngine());
             }
-            
-            // 验证文件大小（限制为10MB）
-            if (image.getSize() > 10 * 1024 * 1024) {
-                result.put("success", false);
-                result.put("message", "图片文件大小不能超过10MB");
-                return ResponseEntity.badRequest().body(result);
+            if (!ocrResult.getBubbles().isEmpty()) {
+                result.put("bubbles", ocrResult.getBubbles());
+            }
+            result.put("nearDuplicate", ocrResult.isNearDuplicate());
+            if (ocrResult.isNearDuplicate()) {
+                result.put("duplicateDistance", ocrResult.getDuplicateDistance());
             }
-            
-            // 执行OCR识别
-            String recognizedText = ocrService.recognizeText(image);
             
             if (recognizedText != null && !recognizedText.trim().isEmpty()) {
                 // 在识别出的文字内容后添加"22"
@@ -75,6 +97,13 @@ public class OcrController {
             
             return ResponseEntity.ok(result);
             
+        } catch (OcrEngineUnavailableException e) {
+            log.warn("OCR引擎不可用: {}", e.getMessage());
+            result.put("success", false);
+            result.put("message", e.getMessage());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header("Retry-After", String.valueOf(Math.max(1, (e.getRetryAfterMs() + 999) / 1000)))
+                    .body(result);
         } catch (Exception e) {
             log.error("OCR识别失败", e);
             result.put("success", false);
@@ -83,6 +112,139 @@ public class OcrController {
         }
     }
     
+    /**
+     * 多图批量识别，结果以NDJSON流式返回
+     * 每张图片识别完成后立即输出一行（type=result，按完成顺序，index为上传顺序），
+     * 最后输出一行type=transcript，text为按上传顺序合并的完整文字
+     * @param images 上传的图片文件，按聊天记录的先后顺序排列
+     * @return NDJSON结果流
+     */
+    @PostMapping("/ocr/batch")
+    public ResponseEntity<?> performBatchOcr(@RequestParam("images") List<MultipartFile> images) {
+        Map<String, Object> result = new HashMap<>();
+        try {
+            if (images == null || images.isEmpty()) {
+                result.put("success", false);
+                result.put("message", "图片文件不能为空");
+                return ResponseEntity.badRequest().body(result);
+            }
+            if (images.size() > ocrBatchService.getMaxImages()) {
+                result.put("success", false);
+                result.put("message", "单次最多上传" + ocrBatchService.getMaxImages() + "张图片");
+                return ResponseEntity.badRequest().body(result);
+            }
+
+            // 请求结束后上传的临时文件会被删除，先校验并复制到内存
+            List<MultipartFile> copies = new ArrayList<>(images.size());
+            for (int i = 0; i < images.size(); i++) {
+                String invalidMessage = validateImage(images.get(i));
+                if (invalidMessage != null) {
+                    result.put("success", false);
+                    result.put("message", "第" + (i + 1) + "张图片: " + invalidMessage);
+                    return ResponseEntity.badRequest().body(result);
+                }
+                copies.add(InMemoryMultipartFile.copyOf(images.get(i)));
+            }
+            log.info("收到批量OCR请求，共{}张图片", copies.size());
+
+            StreamingResponseBody body = outputStream -> {
+                List<Map<String, Object>> items;
+                try {
+                    items = ocrBatchService.recognizeAll(copies, item -> {
+                        Map<String, Object> line = new HashMap<>(item);
+                        line.put("type", "result");
+                        writeLine(outputStream, line);
+                    });
+                } catch (UncheckedIOException e) {
+                    // 客户端已断开，未完成的识别结果不再输出
+                    throw e.getCause();
+                }
+                Map<String, Object> transcript = new HashMap<>();
+                long successCount = items.stream().filter(item -> Boolean.TRUE.equals(item.get("success"))).count();
+                transcript.put("type", "transcript");
+                transcript.put("success", successCount > 0);
+                transcript.put("count", items.size());
+                transcript.put("successCount", successCount);
+                transcript.put("text", ocrBatchService.mergeTranscript(items));
+                writeLine(outputStream, transcript);
+            };
+            return ResponseEntity.ok().contentType(MediaType.parseMediaType("application/x-ndjson;charset=UTF-8")).body(body);
+        } catch (Exception e) {
+            log.error("批量OCR请求处理失败", e);
+            result.put("success", false);
+            result.put("message", "识别失败: " + e.getMessage());
+            return ResponseEntity.status(500).body(result);
+        }
+    }
+
+    /**
+     * 提交异步识别任务，立即返回任务ID
+     * 之后通过 GET /api/ocr/jobs/{jobId} 轮询，或订阅 GET /api/ocr/jobs/{jobId}/events 接收状态事件
+     * @param image 上传的图片文件
+     * @return 任务信息
+     */
+    @PostMapping("/ocr/jobs")
+    public ResponseEntity<Map<String, Object>> submitOcrJob(@RequestParam("image") MultipartFile image) {
+        Map<String, Object> result = new HashMap<>();
+        try {
+            String invalidMessage = validateImage(image);
+            if (invalidMessage != null) {
+                result.put("success", false);
+                result.put("message", invalidMessage);
+                return ResponseEntity.badRequest().body(result);
+            }
+
+            OcrJob job = ocrJobService.submit(image);
+            result.put("success", true);
+            result.put("data", job.toMap());
+            result.put("message", "任务已提交");
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(result);
+        } catch (RejectedExecutionException e) {
+            log.warn("OCR任务排队已满，拒绝提交");
+            result.put("success", false);
+            result.put("message", "识别任务繁忙，请稍后再试");
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(result);
+        } catch (Exception e) {
+            log.error("提交OCR任务失败", e);
+            result.put("success", false);
+            result.put("message", "提交失败: " + e.getMessage());
+            return ResponseEntity.status(500).body(result);
+        }
+    }
+
+    /**
+     * 查询异步识别任务
+     * @param jobId 任务ID
+     * @return 任务状态，完成后包含识别结果
+     */
+    @GetMapping("/ocr/jobs/{jobId}")
+    public ResponseEntity<Map<String, Object>> getOcrJob(@PathVariable String jobId) {
+        Map<String, Object> result = new HashMap<>();
+        OcrJob job = ocrJobService.getJob(jobId);
+        if (job == null) {
+            result.put("success", false);
+            result.put("message", "任务不存在或已过期");
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(result);
+        }
+        result.put("success", true);
+        result.put("data", job.toMap());
+        return ResponseEntity.ok(result);
+    }
+
+    /**
+     * 订阅异步识别任务的状态事件（SSE），事件名为任务状态，任务结束后连接关闭
+     * @param jobId 任务ID
+     * @return 事件流
+     */
+    @GetMapping(value = "/ocr/jobs/{jobId}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> subscribeOcrJob(@PathVariable String jobId) {
+        SseEmitter emitter = ocrJobService.subscribe(jobId);
+        if (emitter == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        }
+        return ResponseEntity.ok(emitter);
+    }
+
     /**
      * 健康检查接口
      * @return 服务状态
@@ -94,6 +256,7 @@ public class OcrController {
             boolean isHealthy = ocrService.isServiceHealthy();
             result.put("success", isHealthy);
             result.put("message", isHealthy ? "OCR服务正常" : "OCR服务异常");
+            result.put("engines", ocrService.getEngineStates());
             return ResponseEntity.ok(result);
         } catch (Exception e) {
             log.error("OCR健康检查失败", e);
@@ -111,6 +274,8 @@ public class OcrController {
     public ResponseEntity<Map<String, Object>> getStatistics() {
         try {
             Map<String, Object> stats = ocrService.getStatistics();
+            stats.put("jobs", ocrJobService.getStatistics());
+            stats.put("batch", ocrBatchService.getStatistics());
             Map<String, Object> result = new HashMap<>();
             result.put("success", true);
             result.put("data", stats);
@@ -134,6 +299,8 @@ public class OcrController {
         Map<String, Object> result = new HashMap<>();
         try {
             ocrService.resetStatistics();
+            ocrJobService.resetStatistics();
+            ocrBatchService.resetStatistics();
             result.put("success", true);
             result.put("message", "统计信息重置成功");
             log.info("OCR统计信息已重置");
@@ -166,4 +333,39 @@ public class OcrController {
             return ResponseEntity.status(500).body(result);
         }
     }
+
+    /**
+     * 校验上传的图片
+     * @return 错误提示，校验通过时返回null
+     */
+    private String validateImage(MultipartFile image) {
+        if (image.isEmpty()) {
+            return "图片文件不能为空";
+        }
+
+        // 验证文件类型
+        String contentType = image.getContentType();
+        if (contentType == null || !contentType.startsWith("image/")) {
+            return "请上传有效的图片文件";
+        }
+
+        // 验证文件大小（限制为10MB）
+        if (image.getSize() > 10 * 1024 * 1024) {
+            return "图片文件大小不能超过10MB";
+        }
+        return null;
+    }
+
+    /**
+     * 输出一行NDJSON并立即刷新，让客户端尽早收到
+     */
+    private void writeLine(OutputStream outputStream, Map<String, Object> line) {
+        try {
+            outputStream.write(JSON.toJSONString(line).getBytes(StandardCharsets.UTF_8));
+            outputStream.write('\n');
+            outputStream.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
 }
\ No newline at end of file
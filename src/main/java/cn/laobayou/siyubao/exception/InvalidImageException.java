@@ -0,0 +1,18 @@
+package cn.laobayou.siyubao.exception;
+
+import java.io.IOException;
+
+/**
+ * 上传的图片本身不合格（为空、类型不对、过大、无法解码）时抛出
+ * 属于调用方的问题，不计入OCR引擎的熔断统计
+ */
+public class InvalidImageException extends IOException {
+
+    public InvalidImageException(String message) {
+        super(message);
+    }
+
+    public InvalidImageException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,26 @@
+package cn.laobayou.siyubao.exception;
+
+import net.sourceforge.tess4j.TesseractException;
+
+/**
+ * OCR引擎熔断打开期间直接拒绝识别时抛出
+ */
+public class OcrEngineUnavailableException extends TesseractException {
+
+    private final String engine;
+    private final long retryAfterMs;
+
+    public OcrEngineUnavailableException(String engine, long retryAfterMs) {
+        super(String.format("OCR引擎%s近期失败过多，已暂停调用，请%d秒后重试", engine, Math.max(1, (retryAfterMs + 999) / 1000)));
+        this.engine = engine;
+        this.retryAfterMs = retryAfterMs;
+    }
+
+    public String getEngine() {
+        return engine;
+    }
+
+    public long getRetryAfterMs() {
+        return retryAfterMs;
+    }
+}
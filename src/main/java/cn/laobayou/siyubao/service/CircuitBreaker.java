@@ -0,0 +1,276 @@
+package cn.laobayou.siyubao.service;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 滑动时间窗口熔断器
+ * 窗口按时间分成若干段，只统计最近一个窗口内的调用。窗口内调用数达到下限且失败率或慢调用率超过阈值时打开，
+ * 打开期间直接拒绝；冷却时间过后进入半开状态，放行少量探测调用，全部成功则关闭，任一失败或过慢则重新打开
+ */
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private final String name;
+    private final long bucketMs;
+    private final int minRequests;
+    private final double failureRateThreshold;
+    private final long slowCallMs;
+    private final double slowCallRateThreshold;
+    private final long openMs;
+    private final int halfOpenProbes;
+
+    // 每段的起始编号（时间/段长）和计数
+    private final long[] bucketEpochs;
+    private final int[] totals;
+    private final int[] failures;
+    private final int[] slowCalls;
+
+    private State state = State.CLOSED;
+    private long openedAt;
+    private int probesInFlight;
+    private int probeSuccesses;
+    private String lastOpenReason;
+
+    // 统计信息
+    private long openCount;
+    private long rejectedCount;
+
+    /**
+     * @param name 名称（引擎名）
+     * @param windowMs 统计窗口长度
+     * @param buckets 窗口分段数，段越多窗口滑动越平滑
+     * @param minRequests 窗口内调用数达到该值才判断是否打开
+     * @param failureRateThreshold 失败率阈值（百分比）
+     * @param slowCallMs 超过该耗时的成功调用记为慢调用
+     * @param slowCallRateThreshold 慢调用率阈值（百分比）
+     * @param openMs 打开后的冷却时间
+     * @param halfOpenProbes 半开状态放行的探测调用数
+     */
+    public CircuitBreaker(String name, long windowMs, int buckets, int minRequests, double failureRateThreshold,
+                          long slowCallMs, double slowCallRateThreshold, long openMs, int halfOpenProbes) {
+        this.name = name;
+        int bucketCount = Math.max(1, buckets);
+        this.bucketMs = Math.max(1, windowMs / bucketCount);
+        this.minRequests = Math.max(1, minRequests);
+        this.failureRateThreshold = failureRateThreshold;
+        this.slowCallMs = slowCallMs;
+        this.slowCallRateThreshold = slowCallRateThreshold;
+        this.openMs = openMs;
+        this.halfOpenProbes = Math.max(1, halfOpenProbes);
+        this.bucketEpochs = new long[bucketCount];
+        this.totals = new int[bucketCount];
+        this.failures = new int[bucketCount];
+        this.slowCalls = new int[bucketCount];
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 当前状态，冷却时间已过的打开状态视为半开
+     */
+    public synchronized State getState() {
+        if (state == State.OPEN && System.currentTimeMillis() - openedAt >= openMs) {
+            return State.HALF_OPEN;
+        }
+        return state;
+    }
+
+    /**
+     * 是否会放行调用，只查看不占用探测名额，用于选择引擎
+     */
+    public synchronized boolean isCallPermitted() {
+        State current = getState();
+        return current == State.CLOSED || (current == State.HALF_OPEN && probesInFlight < halfOpenProbes);
+    }
+
+    /**
+     * 申请一次调用，放行后必须调用{@link #onSuccess}、{@link #onFailure}或{@link #onIgnored}之一
+     * @return 是否放行
+     */
+    public synchronized boolean tryAcquire() {
+        if (state == State.OPEN) {
+            if (System.currentTimeMillis() - openedAt < openMs) {
+                rejectedCount++;
+                return false;
+            }
+            state = State.HALF_OPEN;
+            probesInFlight = 0;
+            probeSuccesses = 0;
+        }
+        if (state == State.HALF_OPEN) {
+            if (probesInFlight >= halfOpenProbes) {
+                rejectedCount++;
+                return false;
+            }
+            probesInFlight++;
+        }
+        return true;
+    }
+
+    /**
+     * 调用成功
+     * @param elapsedMs 耗时，超过慢调用阈值时按慢调用统计
+     */
+    public synchronized void onSuccess(long elapsedMs) {
+        boolean slow = elapsedMs > slowCallMs;
+        if (state == State.HALF_OPEN) {
+            releaseProbe();
+            if (slow) {
+                open("探测调用过慢(" + elapsedMs + " ms)");
+            } else if (++probeSuccesses >= halfOpenProbes) {
+                close();
+            }
+            return;
+        }
+        record(false, slow);
+    }
+
+    /**
+     * 调用失败
+     */
+    public synchronized void onFailure(long elapsedMs) {
+        if (state == State.HALF_OPEN) {
+            releaseProbe();
+            open("探测调用失败");
+            return;
+        }
+        record(true, elapsedMs > slowCallMs);
+    }
+
+    /**
+     * 调用结果不反映引擎状况（如被对冲取消），只归还探测名额
+     */
+    public synchronized void onIgnored() {
+        if (state == State.HALF_OPEN) {
+            releaseProbe();
+        }
+    }
+
+    /**
+     * 距离进入半开状态的剩余时间，非打开状态时为0
+     */
+    public synchronized long getRetryAfterMs() {
+        return state == State.OPEN ? Math.max(0, openMs - (System.currentTimeMillis() - openedAt)) : 0;
+    }
+
+    /**
+     * 打开之前放行的调用可能在半开状态下才结束，计数不会小于0
+     */
+    private void releaseProbe() {
+        if (probesInFlight > 0) {
+            probesInFlight--;
+        }
+    }
+
+    private void record(boolean failure, boolean slow) {
+        int index = currentBucket();
+        totals[index]++;
+        if (failure) {
+            failures[index]++;
+        }
+        if (slow) {
+            slowCalls[index]++;
+        }
+        if (state != State.CLOSED) {
+            return;
+        }
+        int[] window = windowTotals();
+        if (window[0] < minRequests) {
+            return;
+        }
+        double failureRate = window[1] * 100.0 / window[0];
+        double slowRate = window[2] * 100.0 / window[0];
+        if (failureRate >= failureRateThreshold) {
+            open(String.format("失败率%.2f%%（%d/%d）", failureRate, window[1], window[0]));
+        } else if (slowRate >= slowCallRateThreshold) {
+            open(String.format("慢调用率%.2f%%（%d/%d）", slowRate, window[2], window[0]));
+        }
+    }
+
+    private void open(String reason) {
+        state = State.OPEN;
+        openedAt = System.currentTimeMillis();
+        lastOpenReason = reason;
+        openCount++;
+    }
+
+    private void close() {
+        state = State.CLOSED;
+        probesInFlight = 0;
+        probeSuccesses = 0;
+        // 关闭后重新统计，打开之前的失败不再计入
+        for (int i = 0; i < totals.length; i++) {
+            bucketEpochs[i] = 0;
+            totals[i] = 0;
+            failures[i] = 0;
+            slowCalls[i] = 0;
+        }
+    }
+
+    /**
+     * 当前时间所在的段，段已过期时先清零
+     */
+    private int currentBucket() {
+        long epoch = System.currentTimeMillis() / bucketMs;
+        int index = (int) (epoch % totals.length);
+        if (bucketEpochs[index] != epoch) {
+            bucketEpochs[index] = epoch;
+            totals[index] = 0;
+            failures[index] = 0;
+            slowCalls[index] = 0;
+        }
+        return index;
+    }
+
+    /**
+     * 窗口内的调用数、失败数、慢调用数
+     */
+    private int[] windowTotals() {
+        long oldest = System.currentTimeMillis() / bucketMs - totals.length;
+        int[] window = new int[3];
+        for (int i = 0; i < totals.length; i++) {
+            if (bucketEpochs[i] > oldest) {
+                window[0] += totals[i];
+                window[1] += failures[i];
+                window[2] += slowCalls[i];
+            }
+        }
+        return window;
+    }
+
+    /**
+     * 获取统计信息
+     */
+    public synchronized Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new HashMap<>();
+        int[] window = windowTotals();
+        stats.put("state", getState().name());
+        stats.put("windowRequests", window[0]);
+        stats.put("windowFailures", window[1]);
+        stats.put("windowSlowCalls", window[2]);
+        stats.put("windowFailureRate", window[0] > 0 ? String.format("%.2f%%", window[1] * 100.0 / window[0]) : "N/A");
+        stats.put("openCount", openCount);
+        stats.put("rejectedCount", rejectedCount);
+        stats.put("retryAfterMs", getRetryAfterMs());
+        if (lastOpenReason != null) {
+            stats.put("lastOpenReason", lastOpenReason);
+        }
+        return stats;
+    }
+
+    /**
+     * 重置统计信息，不改变熔断状态
+     */
+    public synchronized void resetStatistics() {
+        openCount = 0;
+        rejectedCount = 0;
+    }
+}
@@ -0,0 +1,224 @@
+package cn.laobayou.siyubao.service;
+
+import cn.laobayou.siyubao.util.DecodedImage;
+import cn.laobayou.siyubao.util.PerceptualHash;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 近似截图索引
+ * 同一张聊天截图经微信转发后会被重新压缩或缩放，字节不同，内容缓存无法命中。
+ * 这里为每次识别成功的截图保存感知哈希，新上传的截图按汉明距离查找最接近的一张，
+ * 距离不超过阈值、宽高比相近且亮度缩略图中内容不同的格子不超过上限时视为同一张截图，
+ * 可以只在响应中标记（flag，默认）或直接复用识别结果（reuse）。
+ * 同一应用的不同截图布局相同，只比较哈希会误判，误判时reuse会返回另一张截图的文字，所以默认只做标记。
+ * 条目数有限，超过上限时覆盖最早的条目，线性扫描几千个256位哈希只需几十微秒
+ */
+@Slf4j
+@Service
+public class NearDuplicateIndex {
+
+    public static final String ACTION_REUSE = "reuse";
+    public static final String ACTION_FLAG = "flag";
+
+    @Value("${ocr.near-duplicate.enabled:true}")
+    private boolean enabled;
+
+    @Value("${ocr.near-duplicate.action:flag}")
+    private String action;
+
+    @Value("${ocr.near-duplicate.max-distance:24}")
+    private int maxDistance; // 256位哈希中允许不同的位数
+
+    @Value("${ocr.near-duplicate.max-aspect-diff:0.05}")
+    private double maxAspectDiff; // 宽高比允许的相对差异
+
+    @Value("${ocr.near-duplicate.max-changed-cells:0}")
+    private int maxChangedCells; // 亮度缩略图中允许内容不同的格子数
+
+    @Value("${ocr.near-duplicate.max-entries:2000}")
+    private int maxEntries;
+
+    private Entry[] entries;
+    private int nextSlot;
+    private int size;
+
+    // 统计信息
+    private final AtomicLong lookupCount = new AtomicLong(0);
+    private final AtomicLong hitCount = new AtomicLong(0);
+    private final AtomicLong contentRejectCount = new AtomicLong(0);
+    private final AtomicLong hashCount = new AtomicLong(0);
+    private final AtomicLong hashTimeNanos = new AtomicLong(0);
+
+    @PostConstruct
+    public void init() {
+        entries = new Entry[Math.max(1, maxEntries)];
+        if (!ACTION_REUSE.equalsIgnoreCase(action) && !ACTION_FLAG.equalsIgnoreCase(action)) {
+            log.warn("未知的近似截图处理方式{}，使用{}", action, ACTION_FLAG);
+            action = ACTION_FLAG;
+        }
+        log.info("近似截图检测: {}, 处理方式: {}, 最大距离: {}/{}", enabled ? "开启" : "关闭", action, maxDistance, PerceptualHash.BITS);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 命中时是否直接复用之前的识别结果，否则只做标记并照常识别
+     */
+    public boolean isReuse() {
+        return ACTION_REUSE.equalsIgnoreCase(action);
+    }
+
+    /**
+     * 计算上传图像的感知哈希
+     * @param image 识别流程中已解码的图像，这里不再单独解码
+     */
+    public PerceptualHash hash(DecodedImage image) {
+        long start = System.nanoTime();
+        try {
+            return PerceptualHash.of(image);
+        } finally {
+            hashCount.incrementAndGet();
+            hashTimeNanos.addAndGet(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * 查找最接近的近似截图
+     * 哈希距离在阈值以内的条目再逐格比较缩略图，文字内容不同的截图不算匹配
+     * @param fingerprint 引擎与配置指纹，只在相同配置下的结果中查找
+     * @return 匹配结果，没有近似截图时返回null
+     */
+    public Match find(PerceptualHash hash, String fingerprint) {
+        lookupCount.incrementAndGet();
+        Entry best = null;
+        int bestDistance = Integer.MAX_VALUE;
+        boolean contentRejected = false;
+        synchronized (this) {
+            for (int i = 0; i < size; i++) {
+                Entry entry = entries[i];
+                if (!entry.fingerprint.equals(fingerprint)) {
+                    continue;
+                }
+                double aspectA = entry.hash.getAspectRatio();
+                double aspectB = hash.getAspectRatio();
+                if (Math.abs(aspectA - aspectB) > maxAspectDiff * Math.max(aspectA, aspectB)) {
+                    continue;
+                }
+                int distance = entry.hash.distance(hash);
+                if (distance > maxDistance || distance >= bestDistance) {
+                    continue;
+                }
+                if (entry.hash.changedCells(hash) > maxChangedCells) {
+                    contentRejected = true;
+                    continue;
+                }
+                best = entry;
+                bestDistance = distance;
+            }
+        }
+        if (best == null) {
+            if (contentRejected) {
+                contentRejectCount.incrementAndGet();
+            }
+            return null;
+        }
+        hitCount.incrementAndGet();
+        return new Match(best.text, bestDistance);
+    }
+
+    /**
+     * 记录识别成功的截图，超过上限时覆盖最早的条目
+     */
+    public synchronized void add(PerceptualHash hash, String fingerprint, String text) {
+        entries[nextSlot] = new Entry(hash, fingerprint, text);
+        nextSlot = (nextSlot + 1) % entries.length;
+        if (size < entries.length) {
+            size++;
+        }
+    }
+
+    public synchronized void clear() {
+        for (int i = 0; i < entries.length; i++) {
+            entries[i] = null;
+        }
+        nextSlot = 0;
+        size = 0;
+    }
+
+    /**
+     * 获取统计信息
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("action", action);
+        stats.put("maxDistance", maxDistance);
+        stats.put("maxChangedCells", maxChangedCells);
+        stats.put("lookupCount", lookupCount.get());
+        stats.put("hitCount", hitCount.get());
+        stats.put("contentRejectCount", contentRejectCount.get());
+        long lookups = lookupCount.get();
+        stats.put("hitRate", lookups > 0 ? String.format("%.2f%%", hitCount.get() * 100.0 / lookups) : "N/A");
+        long hashes = hashCount.get();
+        stats.put("averageHashMs", hashes > 0 ? String.format("%.2f", hashTimeNanos.get() / 1_000_000.0 / hashes) : "N/A");
+        synchronized (this) {
+            stats.put("entries", size);
+        }
+        return stats;
+    }
+
+    /**
+     * 重置统计信息，不清空索引
+     */
+    public void resetStatistics() {
+        lookupCount.set(0);
+        hitCount.set(0);
+        contentRejectCount.set(0);
+        hashCount.set(0);
+        hashTimeNanos.set(0);
+    }
+
+    /**
+     * 近似截图的匹配结果
+     */
+    public static final class Match {
+
+        private final String text;
+        private final int distance;
+
+        Match(String text, int distance) {
+            this.text = text;
+            this.distance = distance;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        public int getDistance() {
+            return distance;
+        }
+    }
+
+    private static final class Entry {
+
+        final PerceptualHash hash;
+        final String fingerprint;
+        final String text;
+
+        Entry(PerceptualHash hash, String fingerprint, String text) {
+            this.hash = hash;
+            this.fingerprint = fingerprint;
+            this.text = text;
+        }
+    }
+}
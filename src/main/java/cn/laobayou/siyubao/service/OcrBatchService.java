@@ -0,0 +1,225 @@
+package cn.laobayou.siyubao.service;
+
+import cn.laobayou.siyubao.bean.OcrResult;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * 多图批量识别服务
+ * 一次请求中的多张截图并行识别，每张完成后立即回调，调用方可以边识别边输出；
+ * 全部结束后按上传顺序合并为一份完整的聊天记录
+ */
+@Slf4j
+@Service
+public class OcrBatchService {
+
+    @Autowired
+    private OcrService ocrService;
+
+    @Value("${ocr.batch.parallelism:2}")
+    private int parallelism; // 同时识别的图片数，所有批量请求共享
+
+    @Value("${ocr.batch.max-images:20}")
+    private int maxImages; // 单次请求最多的图片数
+
+    @Value("${ocr.batch.timeout-seconds:120}")
+    private long timeoutSeconds; // 整批识别的最长时间，超时未完成的图片记为失败
+
+    private ExecutorService batchExecutor;
+
+    // 统计信息
+    private final AtomicLong batchCount = new AtomicLong(0);
+    private final AtomicLong imageCount = new AtomicLong(0);
+    private final AtomicLong imageFailureCount = new AtomicLong(0); // 失败或未识别到文字的图片数
+    private final AtomicLong timeoutCount = new AtomicLong(0);
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadNumber = new AtomicInteger(1);
+        int size = Math.max(1, parallelism);
+        batchExecutor = new ThreadPoolExecutor(size, size, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+            Thread t = new Thread(r, "OCR-Batch-" + threadNumber.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        });
+        log.info("批量OCR: 并行数{}, 单次最多{}张", size, maxImages);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        batchExecutor.shutdownNow();
+    }
+
+    public int getMaxImages() {
+        return maxImages;
+    }
+
+    /**
+     * 并行识别多张图片
+     * @param images 图片，调用方需保证请求结束后内容仍可读取
+     * @param listener 每张图片识别结束（成功或失败）时按完成顺序回调，在调用线程中执行
+     * @return 按上传顺序排列的每张图片结果
+     */
+    public List<Map<String, Object>> recognizeAll(List<MultipartFile> images, Consumer<Map<String, Object>> listener) {
+        batchCount.incrementAndGet();
+        imageCount.addAndGet(images.size());
+        long startTime = System.currentTimeMillis();
+        long deadline = startTime + TimeUnit.SECONDS.toMillis(timeoutSeconds);
+
+        CompletionService<Map<String, Object>> completion = new ExecutorCompletionService<>(batchExecutor);
+        List<Future<Map<String, Object>>> futures = new ArrayList<>(images.size());
+        for (int i = 0; i < images.size(); i++) {
+            int index = i;
+            MultipartFile image = images.get(i);
+            futures.add(completion.submit(() -> recognizeOne(index, image)));
+        }
+
+        List<Map<String, Object>> items = new ArrayList<>(images.size());
+        for (int i = 0; i < images.size(); i++) {
+            items.add(null);
+        }
+        try {
+            for (int done = 0; done < images.size(); done++) {
+                long remaining = deadline - System.currentTimeMillis();
+                Future<Map<String, Object>> future = remaining > 0 ? completion.poll(remaining, TimeUnit.MILLISECONDS) : null;
+                if (future == null) {
+                    break;
+                }
+                Map<String, Object> item = future.get();
+                items.set((Integer) item.get("index"), item);
+                if (!Boolean.TRUE.equals(item.get("success"))) {
+                    imageFailureCount.incrementAndGet();
+                }
+                listener.accept(item);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            // recognizeOne自己捕获了所有异常，不会走到这里
+            log.error("批量OCR任务异常", e.getCause());
+        } catch (RuntimeException e) {
+            // 回调失败（通常是客户端已断开），剩下的图片不再识别
+            for (Future<Map<String, Object>> future : futures) {
+                future.cancel(true);
+            }
+            throw e;
+        }
+
+        // 超时或被中断时，取消未完成的图片并记为失败
+        for (int i = 0; i < items.size(); i++) {
+            if (items.get(i) == null) {
+                futures.get(i).cancel(true);
+                timeoutCount.incrementAndGet();
+                imageFailureCount.incrementAndGet();
+                Map<String, Object> item = failure(i, images.get(i), "识别超时");
+                items.set(i, item);
+                listener.accept(item);
+            }
+        }
+        log.info("批量OCR完成，共{}张，耗时: {} ms", images.size(), System.currentTimeMillis() - startTime);
+        return items;
+    }
+
+    /**
+     * 按上传顺序合并识别成功的文字
+     */
+    public String mergeTranscript(List<Map<String, Object>> items) {
+        StringBuilder transcript = new StringBuilder();
+        for (Map<String, Object> item : items) {
+            Object text = item.get("text");
+            if (Boolean.TRUE.equals(item.get("success")) && text != null && !text.toString().isEmpty()) {
+                if (transcript.length() > 0) {
+                    transcript.append('\n');
+                }
+                transcript.append(text);
+            }
+        }
+        return transcript.toString();
+    }
+
+    private Map<String, Object> recognizeOne(int index, MultipartFile image) {
+        long startTime = System.currentTimeMillis();
+        try {
+            OcrResult ocrResult = ocrService.recognize(image);
+            String text = ocrResult.getText() != null ? ocrResult.getText().trim() : "";
+            Map<String, Object> item = new HashMap<>();
+            item.put("index", index);
+            item.put("fileName", image.getOriginalFilename());
+            item.put("success", !text.isEmpty());
+            item.put("text", text);
+            item.put("source", ocrResult.getSource());
+            if (ocrResult.getEngine() != null) {
+                item.put("engine", ocrResult.getEngine());
+            }
+            if (!ocrResult.getBubbles().isEmpty()) {
+                item.put("bubbles", ocrResult.getBubbles());
+            }
+            item.put("nearDuplicate", ocrResult.isNearDuplicate());
+            item.put("message", text.isEmpty() ? "未识别到文字内容" : "识别成功");
+            item.put("durationMs", System.currentTimeMillis() - startTime);
+            return item;
+        } catch (Exception e) {
+            log.error("批量OCR第{}张图片识别失败: {}", index + 1, e.getMessage());
+            Map<String, Object> item = failure(index, image, "识别失败: " + e.getMessage());
+            item.put("durationMs", System.currentTimeMillis() - startTime);
+            return item;
+        }
+    }
+
+    private Map<String, Object> failure(int index, MultipartFile image, String message) {
+        Map<String, Object> item = new HashMap<>();
+        item.put("index", index);
+        item.put("fileName", image.getOriginalFilename());
+        item.put("success", false);
+        item.put("message", message);
+        return item;
+    }
+
+    /**
+     * 获取统计信息
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("batchCount", batchCount.get());
+        stats.put("imageCount", imageCount.get());
+        stats.put("imageFailureCount", imageFailureCount.get());
+        stats.put("timeoutCount", timeoutCount.get());
+        if (batchExecutor instanceof ThreadPoolExecutor) {
+            ThreadPoolExecutor tpe = (ThreadPoolExecutor) batchExecutor;
+            stats.put("active", tpe.getActiveCount());
+            stats.put("queued", tpe.getQueue().size());
+        }
+        return stats;
+    }
+
+    /**
+     * 重置统计信息
+     */
+    public void resetStatistics() {
+        batchCount.set(0);
+        imageCount.set(0);
+        imageFailureCount.set(0);
+        timeoutCount.set(0);
+    }
+}
@@ -0,0 +1,121 @@
+package cn.laobayou.siyubao.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * OCR引擎熔断器，每个引擎一个，参数相同
+ * 熔断状态参与引擎选择和健康检查：打开的引擎直接拒绝，对冲或回退时改用另一个引擎
+ */
+@Slf4j
+@Service
+public class OcrCircuitBreakers {
+
+    public static final String ENGINE_TEXTIN = "textin";
+    public static final String ENGINE_TESSERACT = "tesseract";
+
+    @Value("${ocr.circuit-breaker.enabled:true}")
+    private boolean enabled;
+
+    @Value("${ocr.circuit-breaker.window-seconds:60}")
+    private long windowSeconds; // 统计窗口长度
+
+    @Value("${ocr.circuit-breaker.buckets:12}")
+    private int buckets; // 窗口分段数
+
+    @Value("${ocr.circuit-breaker.min-requests:10}")
+    private int minRequests; // 窗口内调用数达到后才判断是否熔断
+
+    @Value("${ocr.circuit-breaker.failure-rate-threshold:50}")
+    private double failureRateThreshold; // 失败率阈值（百分比）
+
+    @Value("${ocr.circuit-breaker.slow-call-ms:20000}")
+    private long slowCallMs; // 超过该耗时记为慢调用
+
+    @Value("${ocr.circuit-breaker.slow-call-rate-threshold:80}")
+    private double slowCallRateThreshold; // 慢调用率阈值（百分比）
+
+    @Value("${ocr.circuit-breaker.open-seconds:30}")
+    private long openSeconds; // 熔断后多久放行探测调用
+
+    @Value("${ocr.circuit-breaker.half-open-probes:3}")
+    private int halfOpenProbes; // 连续成功多少次探测调用后恢复
+
+    @Value("${ocr.circuit-breaker.fallback-to-other-engine:false}")
+    private boolean fallbackToOtherEngine; // 未开启对冲时，主引擎熔断是否改用另一个引擎
+
+    private final Map<String, CircuitBreaker> breakers = new HashMap<>();
+
+    @PostConstruct
+    public void init() {
+        for (String engine : new String[]{ENGINE_TEXTIN, ENGINE_TESSERACT}) {
+            breakers.put(engine, new CircuitBreaker(engine, windowSeconds * 1000, buckets, minRequests,
+                    failureRateThreshold, slowCallMs, slowCallRateThreshold, openSeconds * 1000, halfOpenProbes));
+        }
+        if (enabled) {
+            log.info("OCR引擎熔断: 窗口{}秒, 失败率{}%或慢调用率{}%（>{} ms）时熔断{}秒",
+                    windowSeconds, failureRateThreshold, slowCallRateThreshold, slowCallMs, openSeconds);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public boolean isFallbackToOtherEngine() {
+        return fallbackToOtherEngine;
+    }
+
+    /**
+     * 引擎对应的熔断器
+     * @param engine textin或tesseract，不区分大小写
+     */
+    public CircuitBreaker get(String engine) {
+        return breakers.get(engine.toLowerCase());
+    }
+
+    /**
+     * 引擎当前是否放行调用，熔断未开启时总是放行
+     */
+    public boolean isCallPermitted(String engine) {
+        return !enabled || get(engine).isCallPermitted();
+    }
+
+    /**
+     * 各引擎的熔断状态
+     */
+    public Map<String, String> getStates() {
+        Map<String, String> states = new TreeMap<>();
+        for (Map.Entry<String, CircuitBreaker> entry : breakers.entrySet()) {
+            states.put(entry.getKey(), enabled ? entry.getValue().getState().name() : "DISABLED");
+        }
+        return states;
+    }
+
+    /**
+     * 获取统计信息
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        for (Map.Entry<String, CircuitBreaker> entry : breakers.entrySet()) {
+            stats.put(entry.getKey(), entry.getValue().getStatistics());
+        }
+        return stats;
+    }
+
+    /**
+     * 重置统计信息，不改变熔断状态
+     */
+    public void resetStatistics() {
+        for (CircuitBreaker breaker : breakers.values()) {
+            breaker.resetStatistics();
+        }
+    }
+}
@@ -0,0 +1,289 @@
+package cn.laobayou.siyubao.service;
+
+import cn.laobayou.siyubao.bean.OcrResult;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 对冲识别
+ * 先调用主引擎，超过主引擎近期耗时的百分位（如P95）仍未返回时再调用备用引擎，取先成功的结果，另一个取消。
+ * 主引擎提前失败时立即调用备用引擎，不再等到截止时间。
+ * 截止时间由最近一段时间主引擎的耗时计算，样本不足时使用初始值
+ */
+@Slf4j
+@Service
+public class OcrHedger {
+
+    @Value("${ocr.hedge.enabled:false}")
+    private boolean enabled;
+
+    @Value("${ocr.hedge.percentile:95}")
+    private double percentile; // 主引擎耗时超过该百分位时启动备用引擎
+
+    @Value("${ocr.hedge.initial-delay-ms:3000}")
+    private long initialDelayMs; // 样本不足时的截止时间
+
+    @Value("${ocr.hedge.min-delay-ms:500}")
+    private long minDelayMs;
+
+    @Value("${ocr.hedge.max-delay-ms:15000}")
+    private long maxDelayMs;
+
+    @Value("${ocr.hedge.window-size:200}")
+    private int windowSize; // 参与计算百分位的最近样本数
+
+    @Value("${ocr.hedge.min-samples:20}")
+    private int minSamples;
+
+    private ExecutorService hedgeExecutor;
+
+    /**
+     * 主引擎最近的耗时（毫秒），环形缓冲
+     */
+    private long[] samples;
+    private int nextSample;
+    private int sampleCount;
+
+    // 统计信息
+    private final AtomicLong requestCount = new AtomicLong(0);
+    private final AtomicLong hedgedCount = new AtomicLong(0); // 启动了备用引擎的次数，即额外调用次数
+    private final AtomicLong earlyFailureCount = new AtomicLong(0); // 主引擎在截止时间前失败的次数
+    private final AtomicLong primaryWinCount = new AtomicLong(0);
+    private final AtomicLong secondaryWinCount = new AtomicLong(0);
+    private final AtomicLong bothFailedCount = new AtomicLong(0);
+    private final AtomicLong extraEngineMs = new AtomicLong(0); // 备用引擎运行的总时长
+
+    @PostConstruct
+    public void init() {
+        samples = new long[Math.max(1, windowSize)];
+        AtomicInteger threadNumber = new AtomicInteger(1);
+        hedgeExecutor = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "OCR-Hedge-" + threadNumber.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        });
+        if (enabled) {
+            log.info("对冲识别已开启: P{}截止, 初始{} ms, 范围[{}, {}] ms", percentile, initialDelayMs, minDelayMs, maxDelayMs);
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        hedgeExecutor.shutdownNow();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 对冲调用两个引擎
+     * @param primaryEngine 主引擎名称
+     * @param primary 主引擎调用
+     * @param secondaryEngine 备用引擎名称
+     * @param secondary 备用引擎调用
+     * @return 先成功的结果
+     * @throws Exception 两个引擎都失败时抛出主引擎的异常
+     */
+    public Outcome execute(String primaryEngine, Callable<OcrResult> primary,
+                           String secondaryEngine, Callable<OcrResult> secondary) throws Exception {
+        requestCount.incrementAndGet();
+        long startTime = System.currentTimeMillis();
+        long delay = currentDelayMs();
+
+        CompletionService<OcrResult> completion = new ExecutorCompletionService<>(hedgeExecutor);
+        Future<OcrResult> primaryFuture = completion.submit(primary);
+        Future<OcrResult> secondaryFuture = null;
+        long secondaryStart = 0;
+        Exception primaryError = null;
+        Exception secondaryError = null;
+        try {
+            int pending = 1;
+            while (pending > 0) {
+                Future<OcrResult> done;
+                if (secondaryFuture == null) {
+                    long remaining = startTime + delay - System.currentTimeMillis();
+                    done = remaining > 0 ? completion.poll(remaining, TimeUnit.MILLISECONDS) : null;
+                } else {
+                    done = completion.take();
+                }
+
+                if (done == null) {
+                    // 主引擎超过截止时间，启动备用引擎
+                    log.info("{}超过{} ms未返回，启动{}", primaryEngine, delay, secondaryEngine);
+                    hedgedCount.incrementAndGet();
+                    secondaryStart = System.currentTimeMillis();
+                    secondaryFuture = completion.submit(secondary);
+                    pending++;
+                    continue;
+                }
+                pending--;
+
+                boolean isPrimary = done == primaryFuture;
+                try {
+                    OcrResult result = done.get();
+                    if (isPrimary) {
+                        recordSample(System.currentTimeMillis() - startTime);
+                        if (secondaryFuture != null) {
+                            primaryWinCount.incrementAndGet();
+                        }
+                        return new Outcome(result, primaryEngine, secondaryFuture != null);
+                    }
+                    secondaryWinCount.incrementAndGet();
+                    log.info("{}先于{}返回结果", secondaryEngine, primaryEngine);
+                    return new Outcome(result, secondaryEngine, true);
+                } catch (ExecutionException e) {
+                    Exception cause = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+                    if (isPrimary) {
+                        primaryError = cause;
+                        if (secondaryFuture == null) {
+                            // 主引擎提前失败，不必等到截止时间
+                            log.warn("{}识别失败，改用{}: {}", primaryEngine, secondaryEngine, cause.getMessage());
+                            earlyFailureCount.incrementAndGet();
+                            hedgedCount.incrementAndGet();
+                            secondaryStart = System.currentTimeMillis();
+                            secondaryFuture = completion.submit(secondary);
+                            pending++;
+                        }
+                    } else {
+                        secondaryError = cause;
+                        log.warn("备用引擎{}识别失败: {}", secondaryEngine, cause.getMessage());
+                    }
+                }
+            }
+            bothFailedCount.incrementAndGet();
+            if (primaryError != null) {
+                if (secondaryError != null) {
+                    primaryError.addSuppressed(secondaryError);
+                }
+                throw primaryError;
+            }
+            throw secondaryError;
+        } finally {
+            if (!primaryFuture.isDone()) {
+                // 主引擎落后被取消，耗时至少是当前值，同样计入样本，避免百分位只统计快的请求
+                recordSample(System.currentTimeMillis() - startTime);
+                primaryFuture.cancel(true);
+            }
+            if (secondaryFuture != null) {
+                secondaryFuture.cancel(true);
+                extraEngineMs.addAndGet(System.currentTimeMillis() - secondaryStart);
+            }
+        }
+    }
+
+    /**
+     * 当前的截止时间：主引擎近期耗时的百分位，限制在[min-delay-ms, max-delay-ms]之间
+     */
+    public long currentDelayMs() {
+        long[] window;
+        synchronized (this) {
+            if (sampleCount < minSamples) {
+                return initialDelayMs;
+            }
+            window = Arrays.copyOf(samples, sampleCount);
+        }
+        Arrays.sort(window);
+        int index = (int) Math.ceil(percentile / 100.0 * window.length) - 1;
+        long value = window[Math.max(0, Math.min(window.length - 1, index))];
+        return Math.max(minDelayMs, Math.min(maxDelayMs, value));
+    }
+
+    private synchronized void recordSample(long elapsedMs) {
+        samples[nextSample] = elapsedMs;
+        nextSample = (nextSample + 1) % samples.length;
+        if (sampleCount < samples.length) {
+            sampleCount++;
+        }
+    }
+
+    /**
+     * 获取统计信息
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new HashMap<>();
+        long requests = requestCount.get();
+        long hedged = hedgedCount.get();
+        stats.put("enabled", enabled);
+        stats.put("percentile", percentile);
+        stats.put("currentDelayMs", currentDelayMs());
+        stats.put("requestCount", requests);
+        stats.put("hedgedCount", hedged);
+        stats.put("hedgeRate", requests > 0 ? String.format("%.2f%%", hedged * 100.0 / requests) : "N/A");
+        stats.put("earlyFailureCount", earlyFailureCount.get());
+        stats.put("primaryWinCount", primaryWinCount.get());
+        stats.put("secondaryWinCount", secondaryWinCount.get());
+        stats.put("bothFailedCount", bothFailedCount.get());
+        // 额外开销：每次启动备用引擎都是一次额外调用
+        stats.put("extraCallCount", hedged);
+        stats.put("extraEngineMs", extraEngineMs.get());
+        synchronized (this) {
+            stats.put("sampleCount", sampleCount);
+        }
+        return stats;
+    }
+
+    /**
+     * 重置统计信息，保留耗时样本
+     */
+    public void resetStatistics() {
+        requestCount.set(0);
+        hedgedCount.set(0);
+        earlyFailureCount.set(0);
+        primaryWinCount.set(0);
+        secondaryWinCount.set(0);
+        bothFailedCount.set(0);
+        extraEngineMs.set(0);
+    }
+
+    /**
+     * 对冲识别的结果
+     */
+    public static final class Outcome {
+
+        private final OcrResult result;
+        private final String engine;
+        private final boolean hedged;
+
+        Outcome(OcrResult result, String engine, boolean hedged) {
+            this.result = result;
+            this.engine = engine;
+            this.hedged = hedged;
+        }
+
+        public OcrResult getResult() {
+            return result;
+        }
+
+        /**
+         * 给出结果的引擎
+         */
+        public String getEngine() {
+            return engine;
+        }
+
+        /**
+         * 是否启动了备用引擎
+         */
+        public boolean isHedged() {
+            return hedged;
+        }
+    }
+}
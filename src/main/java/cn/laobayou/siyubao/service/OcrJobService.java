@@ -0,0 +1,255 @@
+package cn.laobayou.siyubao.service;
+
+import cn.laobayou.siyubao.bean.OcrJob;
+import cn.laobayou.siyubao.bean.OcrResult;
+import cn.laobayou.siyubao.util.InMemoryMultipartFile;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 异步OCR任务服务
+ * 提交时只复制上传内容并返回任务ID，识别在独立线程池中进行，HTTP线程不再等待识别完成。
+ * 客户端可以轮询任务状态，也可以订阅SSE事件流接收状态变化和结果；结束的任务保留一段时间后清除
+ */
+@Slf4j
+@Service
+public class OcrJobService {
+
+    @Autowired
+    private OcrService ocrService;
+
+    @Value("${ocr.jobs.threads:2}")
+    private int threads;
+
+    @Value("${ocr.jobs.queue-capacity:50}")
+    private int queueCapacity; // 排队任务上限，超过时拒绝提交
+
+    @Value("${ocr.jobs.result-ttl-seconds:300}")
+    private long resultTtlSeconds; // 结束的任务保留时长
+
+    @Value("${ocr.jobs.sse-timeout-seconds:120}")
+    private long sseTimeoutSeconds;
+
+    private ThreadPoolExecutor jobExecutor;
+    private ScheduledExecutorService cleaner;
+
+    private final Map<String, OcrJob> jobs = new ConcurrentHashMap<>();
+    private final Map<String, List<SseEmitter>> emitters = new ConcurrentHashMap<>();
+
+    // 统计信息
+    private final AtomicLong submittedCount = new AtomicLong(0);
+    private final AtomicLong startedCount = new AtomicLong(0);
+    private final AtomicLong rejectedCount = new AtomicLong(0);
+    private final AtomicLong completedCount = new AtomicLong(0);
+    private final AtomicLong failedCount = new AtomicLong(0);
+    private final AtomicLong expiredCount = new AtomicLong(0);
+    private final AtomicLong totalQueueMs = new AtomicLong(0);
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadNumber = new AtomicInteger(1);
+        int size = Math.max(1, threads);
+        jobExecutor = new ThreadPoolExecutor(size, size, 60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(Math.max(1, queueCapacity)), r -> {
+                    Thread t = new Thread(r, "OCR-Job-" + threadNumber.getAndIncrement());
+                    t.setDaemon(true);
+                    return t;
+                }, new ThreadPoolExecutor.AbortPolicy());
+        cleaner = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "OCR-Job-Cleaner");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Math.max(1, Math.min(60, resultTtlSeconds));
+        cleaner.scheduleWithFixedDelay(this::removeExpired, period, period, TimeUnit.SECONDS);
+        log.info("异步OCR任务: 线程数{}, 排队上限{}, 结果保留{}秒", size, queueCapacity, resultTtlSeconds);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        cleaner.shutdownNow();
+        jobExecutor.shutdownNow();
+        for (List<SseEmitter> list : emitters.values()) {
+            for (SseEmitter emitter : list) {
+                emitter.complete();
+            }
+        }
+        emitters.clear();
+    }
+
+    /**
+     * 提交识别任务，立即返回
+     * @param imageFile 上传的图片，内容会先复制到内存
+     * @return 排队中的任务
+     * @throws IOException 读取上传内容失败
+     * @throws RejectedExecutionException 排队任务已满
+     */
+    public OcrJob submit(MultipartFile imageFile) throws IOException {
+        InMemoryMultipartFile image = InMemoryMultipartFile.copyOf(imageFile);
+        OcrJob job = new OcrJob(UUID.randomUUID().toString().replace("-", ""), image.getOriginalFilename());
+        jobs.put(job.getId(), job);
+        try {
+            jobExecutor.execute(() -> run(job, image));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.getId());
+            rejectedCount.incrementAndGet();
+            throw e;
+        }
+        submittedCount.incrementAndGet();
+        log.info("已提交异步OCR任务{}，文件名: {}, 排队数: {}", job.getId(), job.getFileName(), jobExecutor.getQueue().size());
+        return job;
+    }
+
+    /**
+     * 查询任务，不存在或已过期时返回null
+     */
+    public OcrJob getJob(String jobId) {
+        return jobs.get(jobId);
+    }
+
+    /**
+     * 订阅任务的状态事件：先发送当前状态，之后每次状态变化发送一次，任务结束后关闭连接
+     * @return 事件流，任务不存在时返回null
+     */
+    public SseEmitter subscribe(String jobId) {
+        OcrJob job = jobs.get(jobId);
+        if (job == null) {
+            return null;
+        }
+        SseEmitter emitter = new SseEmitter(TimeUnit.SECONDS.toMillis(sseTimeoutSeconds));
+        List<SseEmitter> list = emitters.computeIfAbsent(jobId, id -> new CopyOnWriteArrayList<>());
+        list.add(emitter);
+        emitter.onCompletion(() -> list.remove(emitter));
+        emitter.onTimeout(() -> list.remove(emitter));
+        emitter.onError(e -> list.remove(emitter));
+
+        // 先登记再发送当前状态：任务在两步之间结束时，结束事件会经由登记的列表发出，这里重复发送一次也无妨
+        send(emitter, job);
+        if (job.isFinished()) {
+            emitter.complete();
+        }
+        return emitter;
+    }
+
+    private void run(OcrJob job, MultipartFile image) {
+        job.setStartTime(System.currentTimeMillis());
+        job.setStatus(OcrJob.STATUS_RUNNING);
+        startedCount.incrementAndGet();
+        totalQueueMs.addAndGet(job.getStartTime() - job.getSubmitTime());
+        publish(job);
+        try {
+            OcrResult result = ocrService.recognize(image);
+            job.setResult(result);
+            boolean hasText = result.getText() != null && !result.getText().trim().isEmpty();
+            job.setMessage(hasText ? "识别成功" : "未识别到文字内容");
+            completedCount.incrementAndGet();
+            job.setFinishTime(System.currentTimeMillis());
+            job.setStatus(OcrJob.STATUS_COMPLETED);
+            log.info("异步OCR任务{}完成，耗时: {} ms", job.getId(), job.getFinishTime() - job.getStartTime());
+        } catch (Exception e) {
+            log.error("异步OCR任务{}失败", job.getId(), e);
+            job.setMessage("识别失败: " + e.getMessage());
+            failedCount.incrementAndGet();
+            job.setFinishTime(System.currentTimeMillis());
+            job.setStatus(OcrJob.STATUS_FAILED);
+        }
+        publish(job);
+    }
+
+    /**
+     * 把任务当前状态推送给所有订阅者，任务结束时关闭它们
+     */
+    private void publish(OcrJob job) {
+        List<SseEmitter> list = job.isFinished() ? emitters.remove(job.getId()) : emitters.get(job.getId());
+        if (list == null) {
+            return;
+        }
+        for (SseEmitter emitter : list) {
+            if (send(emitter, job) && job.isFinished()) {
+                emitter.complete();
+            }
+        }
+    }
+
+    private boolean send(SseEmitter emitter, OcrJob job) {
+        try {
+            emitter.send(SseEmitter.event().name(job.getStatus()).data(job.toMap()));
+            return true;
+        } catch (IOException | IllegalStateException e) {
+            // 客户端已断开
+            log.debug("推送OCR任务{}状态失败: {}", job.getId(), e.getMessage());
+            emitter.completeWithError(e);
+            return false;
+        }
+    }
+
+    /**
+     * 清除超过保留时长的已结束任务
+     */
+    private void removeExpired() {
+        long deadline = System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(resultTtlSeconds);
+        Iterator<OcrJob> it = jobs.values().iterator();
+        while (it.hasNext()) {
+            OcrJob job = it.next();
+            if (job.isFinished() && job.getFinishTime() < deadline) {
+                it.remove();
+                emitters.remove(job.getId());
+                expiredCount.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * 获取统计信息
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("submittedCount", submittedCount.get());
+        stats.put("rejectedCount", rejectedCount.get());
+        stats.put("completedCount", completedCount.get());
+        stats.put("failedCount", failedCount.get());
+        stats.put("expiredCount", expiredCount.get());
+        stats.put("running", jobExecutor.getActiveCount());
+        stats.put("queued", jobExecutor.getQueue().size());
+        stats.put("retained", jobs.size());
+        long started = startedCount.get();
+        stats.put("averageQueueMs", started > 0 ? String.format("%.2f", (double) totalQueueMs.get() / started) : "N/A");
+        return stats;
+    }
+
+    /**
+     * 重置统计信息
+     */
+    public void resetStatistics() {
+        submittedCount.set(0);
+        startedCount.set(0);
+        rejectedCount.set(0);
+        completedCount.set(0);
+        failedCount.set(0);
+        expiredCount.set(0);
+        totalQueueMs.set(0);
+    }
+}
@@ -0,0 +1,141 @@
+package cn.laobayou.siyubao.service;
+
+import cn.laobayou.siyubao.util.LatencyHistogram;
+import cn.laobayou.siyubao.util.RollingLatencyHistogram;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * OCR各环节的延迟分布，按引擎和环节分别统计
+ * 环节包括解码、背景检测、每个预处理阶段、引擎调用、结果后处理以及整次识别，
+ * 每个环节一个滚动窗口直方图，统计信息中给出各窗口内的p50/p90/p99。
+ * 选择引擎之前的环节（接收时解码、感知哈希）记在intake下。
+ * 按聊天气泡识别时，每个气泡的编码、引擎调用和后处理记在bubble-*环节下，
+ * encode/engine/postprocess环节每个请求只记一次
+ */
+@Slf4j
+@Service
+public class OcrLatencyMetrics {
+
+    public static final String INTAKE = "intake";
+
+    public static final String PHASE_TOTAL = "total";
+    public static final String PHASE_DECODE = "decode";
+    public static final String PHASE_CLEAN_CHECK = "clean-check";
+    public static final String PHASE_BACKGROUND = "background";
+    public static final String PHASE_STAGE_PREFIX = "stage.";
+    public static final String PHASE_SEGMENT = "bubble-segment";
+    public static final String PHASE_ENCODE = "encode";
+    public static final String PHASE_ENGINE = "engine";
+    public static final String PHASE_POSTPROCESS = "postprocess";
+    public static final String PHASE_HASH = "near-duplicate-hash";
+    public static final String PHASE_BUBBLE_ENCODE = "bubble-encode";
+    public static final String PHASE_BUBBLE_ENGINE = "bubble-engine";
+    public static final String PHASE_BUBBLE_POSTPROCESS = "bubble-postprocess";
+
+    @Value("${ocr.metrics.enabled:true}")
+    private boolean enabled;
+
+    @Value("${ocr.metrics.slot-seconds:10}")
+    private long slotSeconds; // 直方图分段时长，窗口按段滚动
+
+    @Value("${ocr.metrics.windows:60,300}")
+    private String windowsConfig; // 统计窗口（秒），逗号分隔
+
+    private long[] windowSeconds;
+    private int slotCount;
+
+    /**
+     * 引擎 -> 环节 -> 直方图
+     */
+    private final Map<String, Map<String, RollingLatencyHistogram>> histograms = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        List<Long> windows = new ArrayList<>();
+        for (String part : windowsConfig.split(",")) {
+            if (!part.trim().isEmpty()) {
+                windows.add(Math.max(1, Long.parseLong(part.trim())));
+            }
+        }
+        if (windows.isEmpty()) {
+            windows.add(60L);
+        }
+        windowSeconds = new long[windows.size()];
+        long longest = 0;
+        for (int i = 0; i < windowSeconds.length; i++) {
+            windowSeconds[i] = windows.get(i);
+            longest = Math.max(longest, windowSeconds[i]);
+        }
+        slotSeconds = Math.max(1, slotSeconds);
+        slotCount = (int) ((longest + slotSeconds - 1) / slotSeconds);
+        log.info("OCR延迟统计: {}, 窗口{}秒，分段{}秒", enabled ? "开启" : "关闭", windows, slotSeconds);
+    }
+
+    /**
+     * 记录一个环节的耗时
+     * @param engine textin或tesseract
+     * @param phase 环节名称
+     * @param nanos 耗时（纳秒）
+     */
+    public void record(String engine, String phase, long nanos) {
+        if (!enabled) {
+            return;
+        }
+        histograms.computeIfAbsent(engine, e -> new ConcurrentHashMap<>())
+                .computeIfAbsent(phase, p -> new RollingLatencyHistogram(slotSeconds * 1000, slotCount))
+                .recordNanos(nanos);
+    }
+
+    /**
+     * 获取统计信息：引擎 -> 环节 -> 窗口 -> 分位数（毫秒）
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new TreeMap<>();
+        for (Map.Entry<String, Map<String, RollingLatencyHistogram>> engine : histograms.entrySet()) {
+            Map<String, Object> phases = new TreeMap<>();
+            for (Map.Entry<String, RollingLatencyHistogram> phase : engine.getValue().entrySet()) {
+                Map<String, Object> windows = new LinkedHashMap<>();
+                for (long window : windowSeconds) {
+                    windows.put(formatWindow(window), toMap(phase.getValue().snapshot(window * 1000)));
+                }
+                phases.put(phase.getKey(), windows);
+            }
+            stats.put(engine.getKey(), phases);
+        }
+        return stats;
+    }
+
+    /**
+     * 清空所有直方图
+     */
+    public void reset() {
+        histograms.clear();
+    }
+
+    private static Map<String, Object> toMap(LatencyHistogram.Snapshot snapshot) {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("count", snapshot.getCount());
+        if (snapshot.getCount() > 0) {
+            map.put("p50Ms", String.format("%.2f", snapshot.getPercentileMs(50)));
+            map.put("p90Ms", String.format("%.2f", snapshot.getPercentileMs(90)));
+            map.put("p99Ms", String.format("%.2f", snapshot.getPercentileMs(99)));
+            map.put("maxMs", String.format("%.2f", snapshot.getMaxMs()));
+            map.put("meanMs", String.format("%.2f", snapshot.getMeanMs()));
+        }
+        return map;
+    }
+
+    private static String formatWindow(long seconds) {
+        return seconds % 60 == 0 ? seconds / 60 + "m" : seconds + "s";
+    }
+}
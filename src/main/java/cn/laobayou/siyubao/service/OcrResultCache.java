@@ -0,0 +1,283 @@
+package cn.laobayou.siyubao.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 按内容寻址的OCR结果缓存
+ * 键为图像字节与引擎、配置指纹一起计算的SHA-256，同一张截图重复上传时直接返回上次的识别结果。
+ * 内存层是按条数限制的LRU；磁盘层可选，每个结果一个文件，按总字节数淘汰最久未访问的文件，重启后仍然有效
+ */
+@Slf4j
+@Service
+public class OcrResultCache {
+
+    private static final String FILE_SUFFIX = ".txt";
+
+    @Value("${ocr.cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${ocr.cache.max-entries:1000}")
+    private int maxEntries;
+
+    @Value("${ocr.cache.disk.enabled:false}")
+    private boolean diskEnabled;
+
+    @Value("${ocr.cache.disk.directory:./data/ocr-cache}")
+    private String diskDirectory;
+
+    @Value("${ocr.cache.disk.max-bytes:104857600}")
+    private long diskMaxBytes;
+
+    private Map<String, String> memory;
+
+    /**
+     * 磁盘层索引：键到文件大小，按访问顺序排列，最前面的最久未访问
+     */
+    private final LinkedHashMap<String, Long> diskIndex = new LinkedHashMap<>(16, 0.75f, true);
+    private File directory;
+    private long diskBytes;
+
+    // 统计信息
+    private final AtomicLong memoryHitCount = new AtomicLong(0);
+    private final AtomicLong diskHitCount = new AtomicLong(0);
+    private final AtomicLong missCount = new AtomicLong(0);
+    private final AtomicLong putCount = new AtomicLong(0);
+    private final AtomicLong memoryEvictionCount = new AtomicLong(0);
+    private final AtomicLong diskEvictionCount = new AtomicLong(0);
+
+    @PostConstruct
+    public void init() {
+        int capacity = Math.max(1, maxEntries);
+        memory = new LinkedHashMap<String, String>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                if (size() > capacity) {
+                    memoryEvictionCount.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+        if (!enabled) {
+            log.info("OCR结果缓存未开启");
+            return;
+        }
+        if (diskEnabled) {
+            loadDiskIndex();
+        }
+        log.info("OCR结果缓存: 内存{}条, 磁盘层{}", capacity,
+                diskEnabled ? directory.getAbsolutePath() + "（已有" + diskIndex.size() + "条）" : "未开启");
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 计算缓存键
+     * @param imageBytes 上传的原始图像字节
+     * @param fingerprint 引擎与识别相关配置的指纹，配置变化后旧结果自然失效
+     */
+    public String key(byte[] imageBytes, String fingerprint) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(fingerprint.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(imageBytes);
+            StringBuilder key = new StringBuilder(64);
+            for (byte b : digest.digest()) {
+                key.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return key.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256不可用", e);
+        }
+    }
+
+    /**
+     * 查找缓存的识别结果，先查内存再查磁盘，磁盘命中时放回内存
+     * @return 识别结果，未命中时返回null
+     */
+    public String get(String key) {
+        String text;
+        synchronized (memory) {
+            text = memory.get(key);
+        }
+        if (text != null) {
+            memoryHitCount.incrementAndGet();
+            return text;
+        }
+        if (diskEnabled) {
+            text = readDisk(key);
+            if (text != null) {
+                diskHitCount.incrementAndGet();
+                synchronized (memory) {
+                    memory.put(key, text);
+                }
+                return text;
+            }
+        }
+        missCount.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * 保存识别结果
+     */
+    public void put(String key, String text) {
+        putCount.incrementAndGet();
+        synchronized (memory) {
+            memory.put(key, text);
+        }
+        if (diskEnabled) {
+            writeDisk(key, text);
+        }
+    }
+
+    /**
+     * 获取统计信息
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new HashMap<>();
+        long hits = memoryHitCount.get() + diskHitCount.get();
+        long lookups = hits + missCount.get();
+        stats.put("enabled", enabled);
+        stats.put("memoryHitCount", memoryHitCount.get());
+        stats.put("diskHitCount", diskHitCount.get());
+        stats.put("missCount", missCount.get());
+        stats.put("hitRate", lookups > 0 ? String.format("%.2f%%", hits * 100.0 / lookups) : "N/A");
+        stats.put("putCount", putCount.get());
+        stats.put("memoryEvictionCount", memoryEvictionCount.get());
+        synchronized (memory) {
+            stats.put("memoryEntries", memory.size());
+        }
+        stats.put("diskEnabled", diskEnabled);
+        if (diskEnabled) {
+            synchronized (diskIndex) {
+                stats.put("diskEntries", diskIndex.size());
+                stats.put("diskBytes", diskBytes);
+                stats.put("diskEvictionCount", diskEvictionCount.get());
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * 重置命中统计，不清空缓存内容
+     */
+    public void resetStatistics() {
+        memoryHitCount.set(0);
+        diskHitCount.set(0);
+        missCount.set(0);
+        putCount.set(0);
+        memoryEvictionCount.set(0);
+        diskEvictionCount.set(0);
+    }
+
+    private void loadDiskIndex() {
+        directory = new File(diskDirectory);
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            log.warn("无法创建OCR结果缓存目录{}，磁盘层停用", directory.getAbsolutePath());
+            diskEnabled = false;
+            return;
+        }
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(FILE_SUFFIX));
+        if (files == null) {
+            return;
+        }
+        // 按修改时间从旧到新载入，保持淘汰顺序
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        synchronized (diskIndex) {
+            for (File file : files) {
+                String name = file.getName();
+                diskIndex.put(name.substring(0, name.length() - FILE_SUFFIX.length()), file.length());
+                diskBytes += file.length();
+            }
+            evictDisk();
+        }
+    }
+
+    private String readDisk(String key) {
+        synchronized (diskIndex) {
+            if (diskIndex.get(key) == null) {
+                return null;
+            }
+        }
+        File file = new File(directory, key + FILE_SUFFIX);
+        try {
+            String text = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+            // 更新修改时间，重启后仍按最近访问顺序淘汰
+            file.setLastModified(System.currentTimeMillis());
+            return text;
+        } catch (IOException e) {
+            log.warn("读取OCR结果缓存文件失败: {}", e.getMessage());
+            synchronized (diskIndex) {
+                Long size = diskIndex.remove(key);
+                if (size != null) {
+                    diskBytes -= size;
+                }
+            }
+            return null;
+        }
+    }
+
+    private void writeDisk(String key, String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        File file = new File(directory, key + FILE_SUFFIX);
+        try {
+            // 先写临时文件再原子替换，进程中途退出不会留下半个结果
+            File temp = File.createTempFile(key, ".tmp", directory);
+            Files.write(temp.toPath(), bytes);
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("写入OCR结果缓存文件失败: {}", e.getMessage());
+            return;
+        }
+        synchronized (diskIndex) {
+            Long previous = diskIndex.put(key, (long) bytes.length);
+            diskBytes += bytes.length - (previous != null ? previous : 0);
+            evictDisk();
+        }
+    }
+
+    /**
+     * 淘汰最久未访问的文件直到总大小不超过上限，调用方持有diskIndex锁
+     */
+    private void evictDisk() {
+        List<String> evicted = new ArrayList<>();
+        Iterator<Map.Entry<String, Long>> it = diskIndex.entrySet().iterator();
+        while (diskBytes > diskMaxBytes && it.hasNext()) {
+            Map.Entry<String, Long> eldest = it.next();
+            diskBytes -= eldest.getValue();
+            evicted.add(eldest.getKey());
+            it.remove();
+        }
+        for (String key : evicted) {
+            File file = new File(directory, key + FILE_SUFFIX);
+            if (!file.delete() && file.exists()) {
+                log.warn("删除OCR结果缓存文件失败: {}", file.getAbsolutePath());
+            }
+            diskEvictionCount.incrementAndGet();
+        }
+    }
+}
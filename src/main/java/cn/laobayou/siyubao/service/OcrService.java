@@ -1,6 +1,20 @@
 package cn.laobayou.siyubao.service;
 
+import cn.laobayou.siyubao.bean.OcrBubble;
+import cn.laobayou.siyubao.bean.OcrResult;
+import cn.laobayou.siyubao.exception.InvalidImageException;
+import cn.laobayou.siyubao.exception.OcrEngineUnavailableException;
+import cn.laobayou.siyubao.util.BackgroundProfile;
+import cn.laobayou.siyubao.util.ChatBubble;
+import cn.laobayou.siyubao.util.ChatBubbleSegmenter;
+import cn.laobayou.siyubao.util.CleanImageClassifier;
+import cn.laobayou.siyubao.util.DebugImageSink;
+import cn.laobayou.siyubao.util.DecodedImage;
 import cn.laobayou.siyubao.util.ImagePreprocessor;
+import cn.laobayou.siyubao.util.PerceptualHash;
+import cn.laobayou.siyubao.util.PnmEncoder;
+import cn.laobayou.siyubao.util.PreprocessPipeline;
+import cn.laobayou.siyubao.util.RasterBufferPool;
 import cn.laobayou.siyubao.util.CharacterEncodingUtils;
 import lombok.extern.slf4j.Slf4j;
 import net.sourceforge.tess4j.ITesseract;
@@ -13,11 +27,13 @@ import org.springframework.web.multipart.MultipartFile;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
-import javax.imageio.ImageIO;
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
 import java.io.*;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -36,9 +52,59 @@ public class OcrService {
     @Autowired
     private TextInMcpService textInMcpService;
 
+    @Autowired
+    private RasterBufferPool bufferPool;
+
+    @Autowired
+    private PreprocessPipeline preprocessPipeline;
+
+    @Autowired
+    private TesseractWorkerPool tesseractWorkerPool;
+
+    @Autowired
+    private OcrResultCache resultCache;
+
+    @Autowired
+    private NearDuplicateIndex nearDuplicateIndex;
+
+    @Autowired
+    private OcrHedger ocrHedger;
+
+    @Autowired
+    private OcrCircuitBreakers circuitBreakers;
+
+    @Autowired
+    private OcrLatencyMetrics latencyMetrics;
+
+    @Autowired
+    private DebugImageSink debugImageSink;
+
     @Value("${ocr.engine:textin}")
     private String ocrEngine; // "tesseract" 或 "textin"
 
+    @Value("${ocr.intake.max-source-pixels:100000000}")
+    private long maxSourcePixels; // 原图像素数上限，超过时不解码直接拒绝
+
+    @Value("${ocr.intake.max-dimension:4000}")
+    private int maxImageDimension; // OCR引擎接受的最大边长，解码时超过该边长的图片按整数步长采样到限制以内
+
+    @Value("${ocr.bubble-segmentation.enabled:false}")
+    private boolean bubbleSegmentationEnabled; // 是否只识别分割出的聊天气泡区域
+
+    @Value("${ocr.bubble-segmentation.min-text-coverage:0.8}")
+    private double bubbleMinTextCoverage; // 文字落在气泡内的比例低于该值时识别整幅图像
+
+    @Value("${ocr.bubble-segmentation.max-bubbles:20}")
+    private int bubbleMaxCount; // 气泡数超过该值时识别整幅图像，避免逐个识别超时
+
+    @Value("${ocr.cache.config-version:1}")
+    private String cacheConfigVersion; // 预处理参数或识别逻辑变化时递增，使缓存的旧结果失效
+
+    @Value("${ocr.tesseract.language:chi_sim+eng}")
+    private String tesseractLanguage;
+
+    private String cacheFingerprint; // 引擎与识别相关配置的指纹，参与缓存键计算
+
     private ITesseract tesseract;
     
     // 线程池用于隔离OCR操作
@@ -49,15 +115,29 @@ public class OcrService {
     private final AtomicInteger failureCount = new AtomicInteger(0);
     private final AtomicLong lastSuccessTime = new AtomicLong(0);
     private final AtomicLong lastFailureTime = new AtomicLong(0);
+    private final AtomicLong invalidImageCount = new AtomicLong(0); // 调用方上传的图片无效，不算引擎失败
+    private final AtomicLong decodedImageCount = new AtomicLong(0);
+    private final AtomicLong preprocessSkipCount = new AtomicLong(0);
+    
+    // 启动或重置统计时的堆内存和GC次数，用于对比前后变化
+    private volatile long baselineHeapUsed;
+    private volatile long baselineGcCount;
+    private volatile long baselineGcTime;
     
     // 配置参数
     private static final int OCR_TIMEOUT_SECONDS = 30;
     private static final int MAX_CONCURRENT_OCR = 2;
     private static final long MAX_FILE_SIZE = 10 * 1024 * 1024; // 10MB
-    private static final int MAX_IMAGE_DIMENSION = 4000;
 
     @PostConstruct
     public void init() {
+        recordMemoryBaseline();
+        cacheFingerprint = String.join("|", ocrEngine.toLowerCase(), cacheConfigVersion, tesseractLanguage,
+                bubbleSegmentationEnabled + ":" + bubbleMinTextCoverage + ":" + bubbleMaxCount, new TreeMap<>(preprocessPipeline.getPipelines()).toString());
+        if (ocrHedger.isEnabled()) {
+            // 对冲时结果可能来自另一个引擎，与单引擎的结果分开缓存
+            cacheFingerprint += "|hedge";
+        }
         try {
             // 初始化线程池
             ocrExecutor = new ThreadPoolExecutor(
@@ -98,8 +178,8 @@ public class OcrService {
         try {
             tesseract = new Tesseract();
             
-            // 设置语言为中文和英文
-            tesseract.setLanguage("chi_sim+eng");
+            // 设置识别语言，与工作进程和命令行使用同一配置
+            tesseract.setLanguage(tesseractLanguage);
             
             // 设置OCR引擎模式 (LSTM OCR Engine)
             tesseract.setOcrEngineMode(1);
@@ -192,18 +272,183 @@ public class OcrService {
      * @throws TesseractException OCR异常
      */
     public String recognizeText(MultipartFile imageFile) throws IOException, TesseractException {
+        return recognize(imageFile).getText();
+    }
+
+    /**
+     * 识别图片中的文字，并返回结果来源（引擎识别、内容缓存或近似截图）
+     * @param imageFile 图片文件
+     * @return 识别结果
+     * @throws IOException IO异常
+     * @throws TesseractException OCR异常
+     */
+    public OcrResult recognize(MultipartFile imageFile) throws IOException, TesseractException {
         long startTime = System.currentTimeMillis();
         log.info("开始OCR识别，引擎: {}, 文件名: {}, 文件大小: {} bytes", 
                 ocrEngine, imageFile.getOriginalFilename(), imageFile.getSize());
         
-        // 根据配置选择OCR引擎
-        if ("textin".equalsIgnoreCase(ocrEngine)) {
-            return recognizeTextWithTextIn(imageFile);
+        // 同一张图像在相同配置下的识别结果直接取缓存
+        String cacheKey = null;
+        if (resultCache.isEnabled()) {
+            cacheKey = resultCache.key(imageFile.getBytes(), cacheFingerprint);
+            String cached = resultCache.get(cacheKey);
+            if (cached != null) {
+                log.info("命中OCR结果缓存，耗时: {} ms，结果长度: {}", System.currentTimeMillis() - startTime, cached.length());
+                return new OcrResult(cached, OcrResult.SOURCE_CACHE);
+            }
+        }
+        
+        // 重新压缩、缩放过的同一张截图按感知哈希查找
+        // 哈希需要像素，接收时解码一次，tesseract识别直接使用这份解码结果，不再重复解码
+        PerceptualHash hash = null;
+        NearDuplicateIndex.Match match = null;
+        DecodedImage decodedImage = null;
+        if (nearDuplicateIndex.isEnabled()) {
+            decodedImage = decodeAtIntake(imageFile.getBytes());
+            if (decodedImage != null) {
+                long phaseStart = System.nanoTime();
+                hash = nearDuplicateIndex.hash(decodedImage);
+                latencyMetrics.record(OcrLatencyMetrics.INTAKE, OcrLatencyMetrics.PHASE_HASH, System.nanoTime() - phaseStart);
+                match = nearDuplicateIndex.find(hash, cacheFingerprint);
+            }
+            if (match != null && nearDuplicateIndex.isReuse()) {
+                log.info("发现近似截图（距离{}），复用识别结果，耗时: {} ms", match.getDistance(), System.currentTimeMillis() - startTime);
+                OcrResult reused = new OcrResult(match.getText(), OcrResult.SOURCE_NEAR_DUPLICATE);
+                reused.setDuplicateDistance(match.getDistance());
+                // 复用的结果不写入内容缓存：万一误判，重新上传时还能交给引擎识别
+                return reused;
+            }
+        }
+        
+        // 根据配置选择OCR引擎，开启对冲时主引擎过慢或失败会再调用另一个引擎；
+        // 已熔断的引擎不参与对冲，主引擎熔断时在允许回退的情况下直接改用另一个引擎
+        OcrResult ocrResult;
+        String engine = primaryEngine();
+        String otherEngine = otherEngine(engine);
+        if (ocrHedger.isEnabled() && circuitBreakers.isCallPermitted(engine) && circuitBreakers.isCallPermitted(otherEngine)) {
+            ocrResult = recognizeHedged(imageFile, decodedImage).getResult();
         } else {
-            return recognizeTextWithTesseract(imageFile);
+            if (!circuitBreakers.isCallPermitted(engine) && canFallback() && circuitBreakers.isCallPermitted(otherEngine)) {
+                log.warn("OCR引擎{}已熔断，改用{}", engine, otherEngine);
+                engine = otherEngine;
+            }
+            ocrResult = recognizeWithEngine(engine, imageFile, decodedImage);
+        }
+        String result = ocrResult.getText();
+        
+        // 空结果可能是引擎的临时问题，不缓存；
+        // 缓存和近似截图索引只保存文字，按气泡识别的结果不缓存，保证同一张图像每次返回相同结构的结果
+        if (result != null && !result.trim().isEmpty() && ocrResult.getBubbles().isEmpty()) {
+            if (cacheKey != null) {
+                resultCache.put(cacheKey, result);
+            }
+            if (hash != null) {
+                nearDuplicateIndex.add(hash, cacheFingerprint, result);
+            }
+        }
+        if (match != null) {
+            log.info("发现近似截图（距离{}），已重新识别", match.getDistance());
+            ocrResult.setDuplicateDistance(match.getDistance());
+        }
+        return ocrResult;
+    }
+
+    /**
+     * 对冲识别：以配置的引擎为主引擎，另一个为备用引擎
+     */
+    private OcrHedger.Outcome recognizeHedged(MultipartFile imageFile, DecodedImage decodedImage)
+            throws IOException, TesseractException {
+        String primary = primaryEngine();
+        String secondary = otherEngine(primary);
+        try {
+            return ocrHedger.execute(primary, () -> recognizeWithEngine(primary, imageFile, decodedImage),
+                    secondary, () -> recognizeWithEngine(secondary, imageFile, decodedImage));
+        } catch (IOException | TesseractException e) {
+            throw e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TesseractException("OCR识别被中断", e);
+        } catch (Exception e) {
+            throw new TesseractException("OCR识别失败: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 接收时解码，供感知哈希和tesseract识别共用
+     * ImageIO不支持的格式（如WebP）仍可交给TextIn识别，所以这里解码失败只返回null，由引擎各自报错
+     */
+    private DecodedImage decodeAtIntake(byte[] imageBytes) {
+        long phaseStart = System.nanoTime();
+        try {
+            return DecodedImage.read(imageBytes, maxImageDimension, maxSourcePixels);
+        } catch (IOException e) {
+            log.debug("图片无法解码，跳过近似截图检测: {}", e.getMessage());
+            return null;
+        } finally {
+            latencyMetrics.record(OcrLatencyMetrics.INTAKE, OcrLatencyMetrics.PHASE_DECODE, System.nanoTime() - phaseStart);
+        }
+    }
+
+    /**
+     * 经过熔断器调用指定引擎：熔断打开时直接拒绝，调用结果和耗时计入该引擎的熔断统计
+     * @param decodedImage 接收时已解码的图像，没有时为null
+     */
+    private OcrResult recognizeWithEngine(String engine, MultipartFile imageFile, DecodedImage decodedImage)
+            throws IOException, TesseractException {
+        CircuitBreaker breaker = circuitBreakers.get(engine);
+        boolean guarded = circuitBreakers.isEnabled();
+        if (guarded && !breaker.tryAcquire()) {
+            log.warn("OCR引擎{}已熔断，直接拒绝，{} ms后重新探测", engine, breaker.getRetryAfterMs());
+            throw new OcrEngineUnavailableException(engine, breaker.getRetryAfterMs());
+        }
+        long startTime = System.currentTimeMillis();
+        long startNanos = System.nanoTime();
+        boolean success = false;
+        boolean invalidImage = false;
+        try {
+            OcrResult result = OcrCircuitBreakers.ENGINE_TEXTIN.equals(engine)
+                    ? new OcrResult(recognizeTextWithTextIn(imageFile), OcrResult.SOURCE_ENGINE)
+                    : recognizeTextWithTesseract(imageFile, decodedImage);
+            result.setEngine(engine);
+            success = true;
+            return result;
+        } catch (InvalidImageException e) {
+            invalidImage = true;
+            throw e;
+        } finally {
+            latencyMetrics.record(engine, OcrLatencyMetrics.PHASE_TOTAL, System.nanoTime() - startNanos);
+            if (guarded) {
+                long elapsed = System.currentTimeMillis() - startTime;
+                if (success) {
+                    breaker.onSuccess(elapsed);
+                } else if (invalidImage || Thread.currentThread().isInterrupted()) {
+                    // 图片本身不合格，或对冲中落后被取消，都不代表引擎出错
+                    breaker.onIgnored();
+                } else {
+                    breaker.onFailure(elapsed);
+                }
+            }
         }
     }
 
+    /**
+     * 配置的主引擎，ocr.engine不是textin时按tesseract处理
+     */
+    private String primaryEngine() {
+        return "textin".equalsIgnoreCase(ocrEngine) ? OcrCircuitBreakers.ENGINE_TEXTIN : OcrCircuitBreakers.ENGINE_TESSERACT;
+    }
+
+    private String otherEngine(String engine) {
+        return OcrCircuitBreakers.ENGINE_TEXTIN.equals(engine) ? OcrCircuitBreakers.ENGINE_TESSERACT : OcrCircuitBreakers.ENGINE_TEXTIN;
+    }
+
+    /**
+     * 主引擎熔断时是否可以改用另一个引擎
+     */
+    private boolean canFallback() {
+        return ocrHedger.isEnabled() || circuitBreakers.isFallbackToOtherEngine();
+    }
+
     /**
      * 使用TextIn MCP进行文字识别
      */
@@ -226,8 +471,7 @@ public class OcrService {
             
         } catch (Exception e) {
             log.error("TextIn MCP识别失败: {}", e.getMessage(), e);
-            failureCount.incrementAndGet();
-            lastFailureTime.set(System.currentTimeMillis());
+            recordFailure(e);
             
             if (e instanceof IOException) {
                 throw (IOException) e;
@@ -240,7 +484,8 @@ public class OcrService {
     /**
      * 使用Tesseract进行文字识别（原有方法）
      */
-    private String recognizeTextWithTesseract(MultipartFile imageFile) throws IOException, TesseractException {
+    private OcrResult recognizeTextWithTesseract(MultipartFile imageFile, DecodedImage decodedImage)
+            throws IOException, TesseractException {
         long startTime = System.currentTimeMillis();
         log.info("使用Tesseract进行文字识别（进程隔离）");
         
@@ -255,31 +500,29 @@ public class OcrService {
         // 验证文件大小
         if (imageFile.getSize() > MAX_FILE_SIZE) {
             log.error("图片文件过大: {} bytes，限制: {} bytes", imageFile.getSize(), MAX_FILE_SIZE);
-            failureCount.incrementAndGet();
-            lastFailureTime.set(System.currentTimeMillis());
-            throw new IOException("图片文件过大，请上传小于10MB的图片");
+            invalidImageCount.incrementAndGet();
+            throw new InvalidImageException("图片文件过大，请上传小于10MB的图片");
         }
 
         // 验证文件类型
         String contentType = imageFile.getContentType();
         if (contentType == null || !contentType.startsWith("image/")) {
             log.error("不支持的文件类型: {}", contentType);
-            failureCount.incrementAndGet();
-            lastFailureTime.set(System.currentTimeMillis());
-            throw new IOException("不支持的文件类型，请上传图片文件");
+            invalidImageCount.incrementAndGet();
+            throw new InvalidImageException("不支持的文件类型，请上传图片文件");
         }
 
         // 在独立线程中执行进程隔离的OCR识别
-        Future<String> future = ocrExecutor.submit(new Callable<String>() {
+        Future<OcrResult> future = ocrExecutor.submit(new Callable<OcrResult>() {
             @Override
-            public String call() throws Exception {
-                return recognizeTextWithProcess(imageFile);
+            public OcrResult call() throws Exception {
+                return recognizeTextWithProcess(imageFile, decodedImage);
             }
         });
 
         try {
             log.info("等待OCR识别结果，超时时间: {} 秒", OCR_TIMEOUT_SECONDS);
-            String result = future.get(OCR_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            OcrResult result = future.get(OCR_TIMEOUT_SECONDS, TimeUnit.SECONDS);
             
             // 记录成功统计
             successCount.incrementAndGet();
@@ -287,9 +530,9 @@ public class OcrService {
             
             long duration = System.currentTimeMillis() - startTime;
             log.info("OCR识别成功完成，耗时: {} ms，结果长度: {}", 
-                    duration, result != null ? result.length() : 0);
+                    duration, result.getText() != null ? result.getText().length() : 0);
             
-            if (result != null && result.trim().isEmpty()) {
+            if (result.getText() != null && result.getText().trim().isEmpty()) {
                 log.warn("OCR识别结果为空");
             }
             
@@ -305,8 +548,7 @@ public class OcrService {
         } catch (ExecutionException e) {
             Throwable cause = e.getCause();
             log.error("OCR识别执行异常: {}", cause.getMessage(), cause);
-            failureCount.incrementAndGet();
-            lastFailureTime.set(System.currentTimeMillis());
+            recordFailure(cause);
             
             if (cause instanceof TesseractException) {
                 throw (TesseractException) cause;
@@ -326,72 +568,272 @@ public class OcrService {
         }
     }
 
+    /**
+     * 记录一次识别失败，调用方上传的图片无效时单独计数，不计入引擎失败
+     */
+    private void recordFailure(Throwable cause) {
+        if (cause instanceof InvalidImageException) {
+            invalidImageCount.incrementAndGet();
+        } else {
+            failureCount.incrementAndGet();
+            lastFailureTime.set(System.currentTimeMillis());
+        }
+    }
+
     /**
      * 使用外部进程进行OCR识别（避免JVM崩溃）
+     * @param intakeImage 接收时已解码的图像，没有时在这里解码
      */
-    private String recognizeTextWithProcess(MultipartFile imageFile) throws IOException, TesseractException {
-        File tempImageFile = null;
-        File tempOutputFile = null;
+    private OcrResult recognizeTextWithProcess(MultipartFile imageFile, DecodedImage intakeImage)
+            throws IOException, TesseractException {
+        // 本次请求的像素缓冲区从池中借出，识别结束后统一归还
+        RasterBufferPool.Lease buffers = bufferPool.lease();
         
         try {
-            // 创建临时图片文件
-            String originalFilename = imageFile.getOriginalFilename();
-            String extension = originalFilename != null && originalFilename.contains(".") 
-                ? originalFilename.substring(originalFilename.lastIndexOf("."))
-                : ".png";
-            
-            tempImageFile = File.createTempFile("ocr_input_", extension);
-            tempOutputFile = File.createTempFile("ocr_output_", ".txt");
-            
-            log.debug("创建临时文件: 输入={}, 输出={}", tempImageFile.getAbsolutePath(), tempOutputFile.getAbsolutePath());
-            
             // 获取原始图像数据
             byte[] originalImageBytes = imageFile.getBytes();
             
-            // 检测是否为彩色背景图像并进行预处理
-            byte[] processedImageBytes = originalImageBytes;
+            // 只解码一次，感知哈希、背景检测、预处理和尺寸校验共享同一份解码结果
+            // 解码前先读取文件头：像素数过大直接拒绝，边长超过限制时采样解码到限制以内
+            long phaseStart;
+            DecodedImage decodedImage = intakeImage;
+            if (decodedImage == null) {
+                phaseStart = System.nanoTime();
+                try {
+                    decodedImage = DecodedImage.read(originalImageBytes, maxImageDimension, maxSourcePixels);
+                } catch (InvalidImageException e) {
+                    throw e;
+                } catch (IOException e) {
+                    // 文件已在内存中，解码出错只可能是文件本身损坏
+                    throw new InvalidImageException("无法读取图片文件，请确保文件格式正确", e);
+                }
+                recordTesseractPhase(OcrLatencyMetrics.PHASE_DECODE, phaseStart);
+            }
+            if (decodedImage == null) {
+                throw new InvalidImageException("无法读取图片文件，请确保文件格式正确");
+            }
+            decodedImage.useBuffers(buffers);
+            if (decodedImage.isSubsampled()) {
+                log.info("图片原始尺寸{}x{}超过限制，已采样解码为{}x{}",
+                        decodedImage.getSourceWidth(), decodedImage.getSourceHeight(),
+                        decodedImage.getWidth(), decodedImage.getHeight());
+            }
+            
+            // 干净的浅底深字截图直接交给OCR引擎，其余一次采样建立背景画像，据此选择预处理分支
+            BufferedImage image = decodedImage.getImage();
+            decodedImageCount.incrementAndGet();
             try {
-                if (imagePreprocessor.hasBlueBackground(originalImageBytes)) {
-                    log.info("检测到蓝色背景图像，应用专门的蓝色背景预处理算法");
-                    processedImageBytes = imagePreprocessor.preprocessForBlueBackground(originalImageBytes);
-                } else if (imagePreprocessor.hasGreenBackground(originalImageBytes)) {
-                    log.info("检测到绿色背景图像，应用专门的绿色背景预处理算法");
-                    processedImageBytes = imagePreprocessor.preprocessForGreenBackground(originalImageBytes);
-                } else if (imagePreprocessor.hasColoredBackground(originalImageBytes)) {
-                    log.info("检测到彩色背景图像，应用通用彩色背景预处理算法");
-                    processedImageBytes = imagePreprocessor.preprocessForColoredBackground(originalImageBytes);
+                phaseStart = System.nanoTime();
+                CleanImageClassifier cleanness = CleanImageClassifier.classify(decodedImage);
+                recordTesseractPhase(OcrLatencyMetrics.PHASE_CLEAN_CHECK, phaseStart);
+                if (cleanness.isClean()) {
+                    log.info("干净截图，跳过预处理: {}", cleanness);
+                    preprocessSkipCount.incrementAndGet();
                 } else {
-                    log.debug("未检测到彩色背景，使用原始图像");
+                    log.debug("非干净截图: {}", cleanness);
+                    image = preprocessImage(decodedImage);
                 }
             } catch (Exception e) {
                 log.warn("图像预处理失败，使用原始图像: {}", e.getMessage());
-                processedImageBytes = originalImageBytes;
+                image = decodedImage.getImage();
             }
             
-            // 保存预处理后的图片到临时文件
-            try (FileOutputStream fos = new FileOutputStream(tempImageFile)) {
-                fos.write(processedImageBytes);
+            // 验证图片尺寸
+            log.info("图片解析成功，尺寸: {}x{}", image.getWidth(), image.getHeight());
+            
+            if (image.getWidth() > maxImageDimension || image.getHeight() > maxImageDimension) {
+                throw new InvalidImageException(String.format("图片尺寸过大，请上传小于%dx%d像素的图片",
+                        maxImageDimension, maxImageDimension));
             }
             
-            // 验证图片尺寸
-            BufferedImage image = ImageIO.read(tempImageFile);
-            if (image == null) {
-                throw new IOException("无法读取图片文件，请确保文件格式正确");
+            // 按原图颜色分割聊天气泡，文字基本都在气泡内时只识别气泡区域，否则识别整幅图像
+            if (bubbleSegmentationEnabled) {
+                phaseStart = System.nanoTime();
+                ChatBubbleSegmenter.Segmentation segmentation = ChatBubbleSegmenter.segment(decodedImage);
+                recordTesseractPhase(OcrLatencyMetrics.PHASE_SEGMENT, phaseStart);
+                List<ChatBubble> bubbles = segmentation.getBubbles();
+                if (bubbles.isEmpty()) {
+                    log.debug("未分割出聊天气泡，识别整幅图像");
+                } else if (segmentation.getTextCoverage() < bubbleMinTextCoverage) {
+                    log.info("{}个气泡只覆盖{}%的文字，识别整幅图像", bubbles.size(),
+                            String.format("%.1f", segmentation.getTextCoverage() * 100));
+                } else if (bubbles.size() > bubbleMaxCount || !tesseractWorkerPool.isAvailable()) {
+                    // 没有常驻工作进程时每个气泡都要启动一次tesseract，在同一个超时内容易超时
+                    log.info("{}个气泡，工作进程池{}，识别整幅图像", bubbles.size(),
+                            tesseractWorkerPool.isAvailable() ? "可用" : "不可用");
+                } else {
+                    return recognizeBubbles(image, decodedImage, bubbles);
+                }
             }
             
-            log.info("图片解析成功，尺寸: {}x{}", image.getWidth(), image.getHeight());
+            // 未经预处理且未采样时直接交给引擎原始字节，否则编码为未压缩的PNM
+            boolean preprocessed = image != decodedImage.getImage() || decodedImage.isSubsampled();
+            return new OcrResult(runTesseract(preprocessed ? encode(image, null) : originalImageBytes, null),
+                    OcrResult.SOURCE_ENGINE);
             
-            if (image.getWidth() > MAX_IMAGE_DIMENSION || image.getHeight() > MAX_IMAGE_DIMENSION) {
-                throw new IOException("图片尺寸过大，请上传小于4000x4000像素的图片");
+        } finally {
+            buffers.close();
+        }
+    }
+
+    /**
+     * 按背景画像选择预处理流水线，各背景类型的阶段列表在ocr.pipeline.profiles中配置
+     */
+    private BufferedImage preprocessImage(DecodedImage decodedImage) {
+        long phaseStart = System.nanoTime();
+        BackgroundProfile profile = imagePreprocessor.profileBackground(decodedImage);
+        recordTesseractPhase(OcrLatencyMetrics.PHASE_BACKGROUND, phaseStart);
+        log.info("背景画像: {}", profile);
+        String pipeline;
+        if (profile.isBlueBackground()) {
+            log.info("检测到蓝色背景图像，应用蓝色背景预处理流水线");
+            pipeline = "blue";
+        } else if (profile.isGreenBackground()) {
+            log.info("检测到绿色背景图像，应用绿色背景预处理流水线");
+            pipeline = "green";
+        } else if (profile.isColoredBackground()) {
+            log.info("检测到彩色背景图像，应用彩色背景预处理流水线");
+            pipeline = "colored";
+        } else {
+            log.debug("未检测到彩色背景，应用普通背景预处理流水线");
+            pipeline = "plain";
+        }
+        return preprocessPipeline.run(pipeline, decodedImage, (stage, nanos) -> latencyMetrics.record(
+                OcrCircuitBreakers.ENGINE_TESSERACT, OcrLatencyMetrics.PHASE_STAGE_PREFIX + stage, nanos));
+    }
+
+    /**
+     * 逐个识别聊天气泡区域，结果中按从上到下的顺序给出每个气泡的方向和文字
+     * 气泡位置按原图坐标给出，预处理缩放过的图像按比例换算后裁剪
+     */
+    private OcrResult recognizeBubbles(BufferedImage image, DecodedImage decodedImage, List<ChatBubble> bubbles)
+            throws IOException, TesseractException {
+        double scaleX = (double) image.getWidth() / decodedImage.getWidth();
+        double scaleY = (double) image.getHeight() / decodedImage.getHeight();
+        long bubblePixels = 0;
+        
+        OcrResult ocrResult = new OcrResult();
+        StringBuilder result = new StringBuilder();
+        BubblePhases phases = new BubblePhases();
+        for (ChatBubble bubble : bubbles) {
+            Rectangle bounds = bubble.getBounds();
+            int x = (int) (bounds.x * scaleX);
+            int y = (int) (bounds.y * scaleY);
+            int width = Math.min(image.getWidth() - x, (int) Math.ceil(bounds.width * scaleX));
+            int height = Math.min(image.getHeight() - y, (int) Math.ceil(bounds.height * scaleY));
+            if (width <= 0 || height <= 0) {
+                continue;
             }
+            bubblePixels += (long) width * height;
+            
+            bubble.setText(runTesseract(encode(image.getSubimage(x, y, width, height), phases), phases));
             
-            // 构建tesseract命令
+            if (!bubble.getText().isEmpty()) {
+                log.debug("{} 识别结果: {}", bubble, bubble.getText());
+                result.append(bubble.getText()).append("\n");
+                ocrResult.getBubbles().add(new OcrBubble(bubble.getSide() == ChatBubble.Side.LEFT
+                        ? OcrBubble.SIDE_LEFT : OcrBubble.SIDE_RIGHT, bubble.getText()));
+            }
+        }
+        
+        // 整次请求的编码、引擎调用和后处理各记一次，与识别整幅图像的请求可以直接比较
+        latencyMetrics.record(OcrCircuitBreakers.ENGINE_TESSERACT, OcrLatencyMetrics.PHASE_ENCODE, phases.encodeNanos);
+        latencyMetrics.record(OcrCircuitBreakers.ENGINE_TESSERACT, OcrLatencyMetrics.PHASE_ENGINE, phases.engineNanos);
+        latencyMetrics.record(OcrCircuitBreakers.ENGINE_TESSERACT, OcrLatencyMetrics.PHASE_POSTPROCESS,
+                phases.postprocessNanos);
+        
+        log.info("按聊天气泡识别完成: {}个气泡，识别像素占整图的{}%", bubbles.size(),
+                String.format("%.1f", bubblePixels * 100.0 / ((long) image.getWidth() * image.getHeight())));
+        ocrResult.setText(result.toString().trim());
+        return ocrResult;
+    }
+
+    /**
+     * 识别编码后的图像：优先交给常驻工作进程，进程池不可用时每次启动tesseract进程
+     * @param imageBytes leptonica能读取的图像字节（PNM、PNG、JPEG等）
+     * @param phases 识别单个气泡时累计耗时的对象，识别整幅图像时为null
+     */
+    private String runTesseract(byte[] imageBytes, BubblePhases phases) throws IOException, TesseractException {
+        long phaseStart = System.nanoTime();
+        String resultText = null;
+        if (tesseractWorkerPool.isAvailable()) {
+            try {
+                resultText = tesseractWorkerPool.recognize(imageBytes,
+                        TimeUnit.SECONDS.toMillis(OCR_TIMEOUT_SECONDS));
+            } catch (TesseractException e) {
+                // 进程池因连续启动失败被停用时本次也回退到命令行，其他错误照常抛出
+                if (tesseractWorkerPool.isAvailable()) {
+                    throw e;
+                }
+                log.warn("Tesseract工作进程池不可用，回退到命令行识别: {}", e.getMessage());
+            }
+        }
+        if (resultText == null) {
+            resultText = runTesseractProcess(imageBytes);
+        }
+        if (phases == null) {
+            recordTesseractPhase(OcrLatencyMetrics.PHASE_ENGINE, phaseStart);
+        } else {
+            phases.engineNanos += recordTesseractPhase(OcrLatencyMetrics.PHASE_BUBBLE_ENGINE, phaseStart);
+        }
+        
+        phaseStart = System.nanoTime();
+        resultText = resultText.trim();
+        log.debug("OCR识别完成，结果长度: {}", resultText.length());
+        
+        // 字符编码修复：确保中文字符正确显示
+        if (!resultText.isEmpty()) {
+            // 使用专门的字符编码工具类进行修复
+            resultText = CharacterEncodingUtils.detectAndFixEncoding(resultText);
+            log.debug("字符编码修复后，结果长度: {}, 语言类型: {}", 
+                    resultText.length(), CharacterEncodingUtils.detectLanguage(resultText));
+        }
+        if (phases == null) {
+            recordTesseractPhase(OcrLatencyMetrics.PHASE_POSTPROCESS, phaseStart);
+        } else {
+            phases.postprocessNanos += recordTesseractPhase(OcrLatencyMetrics.PHASE_BUBBLE_POSTPROCESS, phaseStart);
+        }
+        
+        return resultText;
+    }
+
+    /**
+     * 编码为交给tesseract的PNM图像
+     * @param phases 编码单个气泡时累计耗时的对象，编码整幅图像时为null
+     */
+    private byte[] encode(BufferedImage image, BubblePhases phases) {
+        long phaseStart = System.nanoTime();
+        byte[] bytes = PnmEncoder.encode(image);
+        if (phases == null) {
+            recordTesseractPhase(OcrLatencyMetrics.PHASE_ENCODE, phaseStart);
+        } else {
+            phases.encodeNanos += recordTesseractPhase(OcrLatencyMetrics.PHASE_BUBBLE_ENCODE, phaseStart);
+        }
+        return bytes;
+    }
+
+    /**
+     * 记录tesseract的一个环节
+     * @return 环节耗时（纳秒）
+     */
+    private long recordTesseractPhase(String phase, long startNanos) {
+        long nanos = System.nanoTime() - startNanos;
+        latencyMetrics.record(OcrCircuitBreakers.ENGINE_TESSERACT, phase, nanos);
+        return nanos;
+    }
+
+    /**
+     * 执行一次tesseract进程，图像从标准输入写入，识别结果从标准输出读取，返回未经处理的识别结果
+     */
+    private String runTesseractProcess(byte[] imageBytes) throws IOException, TesseractException {
+        try {
+            // 构建tesseract命令，stdin/stdout表示从标准输入读取图像、结果写到标准输出
             List<String> command = new ArrayList<>();
             command.add("tesseract");
-            command.add(tempImageFile.getAbsolutePath());
-            command.add(tempOutputFile.getAbsolutePath().replace(".txt", "")); // tesseract会自动添加.txt
+            command.add("stdin");
+            command.add("stdout");
             command.add("-l");
-            command.add("chi_sim+eng");
+            command.add(tesseractLanguage);
             command.add("--oem");
             command.add("1");
             command.add("--psm");
@@ -415,21 +857,21 @@ public class OcrService {
             command.add("-c");
             command.add("textord_really_old_xheight=1"); // 改进行高检测 // 设置DPI提高识别精度
             
-            log.debug("执行tesseract命令: {}", String.join(" ", command));
+            log.debug("执行tesseract命令: {}，输入{}字节", String.join(" ", command), imageBytes.length);
             
             // 执行tesseract命令
             ProcessBuilder pb = new ProcessBuilder(command);
-            pb.redirectErrorStream(true);
-            
             Process process = pb.start();
             
-            // 读取命令输出
-            StringBuilder output = new StringBuilder();
-            try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    output.append(line).append("\n");
-                }
+            // 标准输出和标准错误各在单独线程中读取，避免管道缓冲区写满使进程阻塞，超时也能及时生效
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            ByteArrayOutputStream errorOutput = new ByteArrayOutputStream();
+            Thread outputReader = startReader(process.getInputStream(), output, "OCR-Process-Stdout");
+            Thread errorReader = startReader(process.getErrorStream(), errorOutput, "OCR-Process-Stderr");
+            
+            // tesseract读完整个标准输入后才开始识别
+            try (OutputStream stdin = process.getOutputStream()) {
+                stdin.write(imageBytes);
             }
             
             // 等待进程完成
@@ -439,63 +881,42 @@ public class OcrService {
                 process.destroyForcibly();
                 throw new TesseractException("OCR进程超时");
             }
+            outputReader.join();
+            errorReader.join();
             
             int exitCode = process.exitValue();
             if (exitCode != 0) {
-                log.error("tesseract进程异常退出，退出码: {}, 输出: {}", exitCode, output.toString());
+                log.error("tesseract进程异常退出，退出码: {}, 输出: {}", exitCode,
+                        new String(errorOutput.toByteArray(), StandardCharsets.UTF_8));
                 throw new TesseractException("OCR识别失败，退出码: " + exitCode);
             }
             
-            // 读取识别结果
-            if (!tempOutputFile.exists()) {
-                log.warn("OCR输出文件不存在，可能识别结果为空");
-                return "";
-            }
-            
-            StringBuilder result = new StringBuilder();
-            try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(tempOutputFile), StandardCharsets.UTF_8))) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    result.append(line).append("\n");
-                }
-            }
-            
-            String resultText = result.toString().trim();
-            log.debug("OCR识别完成，结果长度: {}", resultText.length());
-            
-            // 字符编码修复：确保中文字符正确显示
-            if (resultText != null && !resultText.isEmpty()) {
-                // 使用专门的字符编码工具类进行修复
-                resultText = CharacterEncodingUtils.detectAndFixEncoding(resultText);
-                log.debug("字符编码修复后，结果长度: {}, 语言类型: {}", 
-                        resultText.length(), CharacterEncodingUtils.detectLanguage(resultText));
-            }
-            
-            return resultText;
+            return new String(output.toByteArray(), StandardCharsets.UTF_8);
             
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
             throw new TesseractException("OCR进程被中断", e);
-        } finally {
-            // 清理临时文件
-            if (tempImageFile != null && tempImageFile.exists()) {
-                try {
-                    Files.delete(tempImageFile.toPath());
-                    log.debug("删除临时输入文件: {}", tempImageFile.getAbsolutePath());
-                } catch (IOException e) {
-                    log.warn("删除临时输入文件失败: {}", e.getMessage());
-                }
-            }
-            
-            if (tempOutputFile != null && tempOutputFile.exists()) {
-                try {
-                    Files.delete(tempOutputFile.toPath());
-                    log.debug("删除临时输出文件: {}", tempOutputFile.getAbsolutePath());
-                } catch (IOException e) {
-                    log.warn("删除临时输出文件失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 在后台线程中把进程输出读到内存，进程退出、管道关闭后线程结束
+     */
+    private static Thread startReader(InputStream in, ByteArrayOutputStream out, String name) {
+        Thread reader = new Thread(() -> {
+            byte[] buffer = new byte[8192];
+            try (InputStream input = in) {
+                int n;
+                while ((n = input.read(buffer)) > 0) {
+                    out.write(buffer, 0, n);
                 }
+            } catch (IOException e) {
+                log.debug("读取tesseract进程输出中断: {}", e.getMessage());
             }
-        }
+        }, name);
+        reader.setDaemon(true);
+        reader.start();
+        return reader;
     }
     
     /**
@@ -508,7 +929,7 @@ public class OcrService {
         if (tesseract != null) {
             try {
                 // 获取当前语言设置
-                String language = "chi_sim+eng"; // 默认语言
+                String language = tesseractLanguage;
                 instance.setLanguage(language);
                 instance.setOcrEngineMode(1);
                 instance.setPageSegMode(1);
@@ -542,12 +963,12 @@ public class OcrService {
             }
         }
         
-        // 检查最近的失败率
-        long totalRequests = successCount.get() + failureCount.get();
-        if (totalRequests > 10) {
-            double failureRate = (double) failureCount.get() / totalRequests;
-            if (failureRate > 0.5) { // 失败率超过50%
-                log.warn("OCR服务健康状况不佳，失败率: {:.2f}%", failureRate * 100);
+        // 近期失败率由熔断器按时间窗口判断：主引擎熔断且没有可回退的引擎时不健康，冷却后自动恢复探测
+        String engine = primaryEngine();
+        if (circuitBreakers.isEnabled() && circuitBreakers.get(engine).getState() == CircuitBreaker.State.OPEN) {
+            String otherEngine = otherEngine(engine);
+            if (!canFallback() || circuitBreakers.get(otherEngine).getState() == CircuitBreaker.State.OPEN) {
+                log.warn("OCR服务健康状况不佳，引擎{}已熔断", engine);
                 return false;
             }
         }
@@ -555,6 +976,13 @@ public class OcrService {
         return true;
     }
 
+    /**
+     * 各引擎的熔断状态
+     */
+    public Map<String, String> getEngineStates() {
+        return circuitBreakers.getStates();
+    }
+
     /**
      * 获取OCR服务统计信息
      */
@@ -565,6 +993,7 @@ public class OcrService {
         stats.put("failureCount", failureCount.get());
         stats.put("lastSuccessTime", lastSuccessTime.get());
         stats.put("lastFailureTime", lastFailureTime.get());
+        stats.put("invalidImageCount", invalidImageCount.get());
         stats.put("isHealthy", isServiceHealthy());
         
         // 添加引擎特定的状态信息
@@ -591,6 +1020,45 @@ public class OcrService {
             stats.put("successRate", "N/A");
         }
         
+        // 干净截图跳过预处理的比例
+        long decodedImages = decodedImageCount.get();
+        stats.put("preprocessSkipCount", preprocessSkipCount.get());
+        if (decodedImages > 0) {
+            double skipRate = (double) preprocessSkipCount.get() / decodedImages;
+            stats.put("preprocessSkipRate", String.format("%.2f%%", skipRate * 100));
+        } else {
+            stats.put("preprocessSkipRate", "N/A");
+        }
+        
+        // 堆内存与GC：当前值和启动（或上次重置）以来的变化
+        MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        long[] gcTotals = gcTotals();
+        Map<String, Object> memory = new HashMap<>();
+        memory.put("heapUsed", heap.getUsed());
+        memory.put("heapCommitted", heap.getCommitted());
+        memory.put("heapMax", heap.getMax());
+        memory.put("baselineHeapUsed", baselineHeapUsed);
+        memory.put("gcCount", gcTotals[0]);
+        memory.put("gcTimeMs", gcTotals[1]);
+        memory.put("gcCountSinceBaseline", gcTotals[0] - baselineGcCount);
+        memory.put("gcTimeMsSinceBaseline", gcTotals[1] - baselineGcTime);
+        Map<String, Object> collectors = new HashMap<>();
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            collectors.put(gc.getName(), gc.getCollectionCount() + "次/" + gc.getCollectionTime() + "ms");
+        }
+        memory.put("collectors", collectors);
+        stats.put("memory", memory);
+        stats.put("bufferPool", bufferPool.getStatistics());
+        stats.put("preprocessPipelines", preprocessPipeline.getPipelines());
+        stats.put("preprocessStages", preprocessPipeline.getStatistics());
+        stats.put("tesseractWorkers", tesseractWorkerPool.getStatistics());
+        stats.put("resultCache", resultCache.getStatistics());
+        stats.put("nearDuplicate", nearDuplicateIndex.getStatistics());
+        stats.put("hedge", ocrHedger.getStatistics());
+        stats.put("circuitBreakers", circuitBreakers.getStatistics());
+        stats.put("latency", latencyMetrics.getStatistics());
+        stats.put("debugImages", debugImageSink.getStatistics());
+        
         return stats;
     }
 
@@ -602,9 +1070,39 @@ public class OcrService {
         failureCount.set(0);
         lastSuccessTime.set(0);
         lastFailureTime.set(0);
+        invalidImageCount.set(0);
+        decodedImageCount.set(0);
+        preprocessSkipCount.set(0);
+        recordMemoryBaseline();
+        preprocessPipeline.resetStatistics();
+        resultCache.resetStatistics();
+        nearDuplicateIndex.resetStatistics();
+        ocrHedger.resetStatistics();
+        circuitBreakers.resetStatistics();
+        latencyMetrics.reset();
         log.info("OCR服务统计信息已重置");
     }
 
+    private void recordMemoryBaseline() {
+        long[] gcTotals = gcTotals();
+        baselineHeapUsed = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+        baselineGcCount = gcTotals[0];
+        baselineGcTime = gcTotals[1];
+    }
+
+    /**
+     * 所有垃圾收集器的累计次数和耗时（毫秒）
+     */
+    private static long[] gcTotals() {
+        long count = 0;
+        long time = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, gc.getCollectionCount());
+            time += Math.max(0, gc.getCollectionTime());
+        }
+        return new long[]{count, time};
+    }
+
     /**
      * 强制垃圾回收和内存清理
      */
@@ -629,7 +1127,17 @@ public class OcrService {
         }
         
         // 返回配置的语言信息
-        return "当前支持的语言: chi_sim+eng (中文简体+英文)";
+        return "当前支持的语言: " + tesseractLanguage;
+    }
+
+    /**
+     * 按气泡识别时累计的各环节耗时
+     * 每个气泡的耗时记在bubble-*环节下，全部气泡识别完后合计值作为整次请求记一次
+     */
+    private static final class BubblePhases {
+        private long encodeNanos;
+        private long engineNanos;
+        private long postprocessNanos;
     }
     
 }
\ No newline at end of file
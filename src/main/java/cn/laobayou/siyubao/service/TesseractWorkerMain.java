@@ -0,0 +1,163 @@
+package cn.laobayou.siyubao.service;
+
+import com.ochafik.lang.jnaerator.runtime.NativeSize;
+import com.sun.jna.Pointer;
+import com.sun.jna.StringArray;
+import com.sun.jna.ptr.PointerByReference;
+import net.sourceforge.lept4j.Leptonica1;
+import net.sourceforge.lept4j.Pix;
+import net.sourceforge.lept4j.util.LeptUtils;
+import net.sourceforge.tess4j.ITessAPI.TessBaseAPI;
+import net.sourceforge.tess4j.TessAPI1;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 常驻Tesseract工作进程的入口
+ * 由{@link TesseractWorkerPool}以独立JVM启动，启动时加载一次语言模型，之后通过标准输入输出逐个处理图像，
+ * 原生库崩溃只影响本进程。参数依次为语言、tessdata目录（可省略，省略时使用tesseract的默认目录）。
+ *
+ * 协议（DataInput/DataOutput，大端）：
+ * 请求为 int长度 + 图像字节（PNG/JPEG等leptonica能读取的格式），长度为0表示退出；
+ * 响应为 int魔数 + byte状态 + int长度 + UTF-8文本，状态为OK时文本是识别结果，否则是错误信息。
+ * 模型加载完成后先发送一个响应作为就绪信号
+ */
+public final class TesseractWorkerMain {
+
+    static final int MAGIC = 0x4F435231; // "OCR1"
+    static final byte STATUS_OK = 0;
+    static final byte STATUS_ERROR = 1;
+
+    static final int OCR_ENGINE_MODE = 1; // LSTM
+    static final int PAGE_SEG_MODE = 6; // 单一文本块
+
+    /**
+     * 与命令行调用时的-c参数一致，其中词典相关参数只能在初始化前设置，因此写入配置文件随初始化加载
+     */
+    static final String[][] VARIABLES = {
+            {"preserve_interword_spaces", "1"},
+            {"user_defined_dpi", "300"},
+            {"tessedit_pageseg_mode", "6"},
+            {"tessedit_ocr_engine_mode", "1"},
+            {"load_system_dawg", "0"},
+            {"load_freq_dawg", "0"},
+            {"textord_really_old_xheight", "1"}
+    };
+
+    private TesseractWorkerMain() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        String language = args.length > 0 ? args[0] : "chi_sim+eng";
+        String datapath = args.length > 1 && !args[1].isEmpty() ? args[1] : null;
+
+        // 标准输出专用于协议，其他输出一律转到标准错误
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out)));
+        System.setOut(new PrintStream(new FileOutputStream(FileDescriptor.err), true));
+        DataInputStream in = new DataInputStream(new BufferedInputStream(System.in));
+
+        TessBaseAPI handle;
+        try {
+            handle = createApi(datapath, language);
+        } catch (Exception | LinkageError e) {
+            writeResponse(out, STATUS_ERROR, "Tesseract初始化失败: " + e);
+            return;
+        }
+        writeResponse(out, STATUS_OK, language);
+
+        try {
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    return;
+                }
+                if (length <= 0) {
+                    return;
+                }
+                byte[] image = new byte[length];
+                in.readFully(image);
+                try {
+                    writeResponse(out, STATUS_OK, recognize(handle, image));
+                } catch (Exception e) {
+                    writeResponse(out, STATUS_ERROR, String.valueOf(e.getMessage()));
+                }
+            }
+        } finally {
+            TessAPI1.TessBaseAPIEnd(handle);
+            TessAPI1.TessBaseAPIDelete(handle);
+        }
+    }
+
+    private static TessBaseAPI createApi(String datapath, String language) throws IOException {
+        File config = File.createTempFile("ocr_worker_", ".config");
+        config.deleteOnExit();
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(config), StandardCharsets.UTF_8)) {
+            for (String[] variable : VARIABLES) {
+                writer.write(variable[0] + " " + variable[1] + "\n");
+            }
+        }
+
+        TessBaseAPI handle = TessAPI1.TessBaseAPICreate();
+        PointerByReference configs = new PointerByReference();
+        configs.setPointer(new StringArray(new String[]{config.getAbsolutePath()}));
+        int result = TessAPI1.TessBaseAPIInit1(handle, datapath, language, OCR_ENGINE_MODE, configs, 1);
+        if (result != 0) {
+            TessAPI1.TessBaseAPIDelete(handle);
+            throw new IOException("TessBaseAPIInit1返回" + result + "，语言: " + language);
+        }
+        TessAPI1.TessBaseAPISetPageSegMode(handle, PAGE_SEG_MODE);
+        return handle;
+    }
+
+    /**
+     * 用leptonica解码图像并识别，与命令行读取图像文件的方式一致
+     */
+    private static String recognize(TessBaseAPI handle, byte[] image) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(image.length);
+        buffer.put(image);
+        buffer.flip();
+        Pix pix = Leptonica1.pixReadMem(buffer, new NativeSize(image.length));
+        if (pix == null) {
+            throw new IOException("无法解码图像");
+        }
+        try {
+            TessAPI1.TessBaseAPISetImage2(handle, pix);
+            Pointer text = TessAPI1.TessBaseAPIGetUTF8Text(handle);
+            if (text == null) {
+                return "";
+            }
+            try {
+                return text.getString(0, "UTF-8");
+            } finally {
+                TessAPI1.TessDeleteText(text);
+            }
+        } finally {
+            TessAPI1.TessBaseAPIClear(handle);
+            LeptUtils.dispose(pix);
+        }
+    }
+
+    static void writeResponse(DataOutputStream out, byte status, String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(MAGIC);
+        out.writeByte(status);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+        out.flush();
+    }
+}
@@ -0,0 +1,462 @@
+package cn.laobayou.siyubao.service;
+
+import lombok.extern.slf4j.Slf4j;
+import net.sourceforge.tess4j.TesseractException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.jar.JarFile;
+
+/**
+ * 常驻Tesseract工作进程池
+ * 每个工作进程是一个独立JVM（{@link TesseractWorkerMain}），启动时加载一次语言模型，之后通过管道逐个识别图像，
+ * 省去每次识别都启动tesseract进程、重新加载traineddata的开销，同时保留进程隔离：
+ * 工作进程崩溃或超时只会被销毁重建，不影响服务本身。
+ * 每个工作进程处理max-jobs个任务后主动退役，避免原生内存缓慢增长；连续启动失败时停用进程池，回退到每次启动tesseract进程
+ */
+@Slf4j
+@Service
+public class TesseractWorkerPool {
+
+    /**
+     * 连续启动失败这么多次后停用进程池
+     */
+    private static final int MAX_START_FAILURES = 3;
+
+    /**
+     * 单个响应的长度上限，超出视为协议错误
+     */
+    private static final int MAX_RESPONSE_BYTES = 16 * 1024 * 1024;
+
+    /**
+     * 通知退役进程退出后等待它自行退出的时间，到期仍未退出则强制结束
+     */
+    private static final long RETIRE_GRACE_SECONDS = 2;
+
+    @Value("${ocr.tesseract.worker.enabled:true}")
+    private boolean enabled;
+
+    @Value("${ocr.tesseract.worker.pool-size:2}")
+    private int poolSize;
+
+    @Value("${ocr.tesseract.worker.max-jobs:200}")
+    private int maxJobs;
+
+    @Value("${ocr.tesseract.worker.start-timeout-seconds:60}")
+    private int startTimeoutSeconds;
+
+    @Value("${ocr.tesseract.worker.java-opts:-Xmx256m}")
+    private String javaOpts;
+
+    @Value("${ocr.tesseract.worker.datapath:}")
+    private String datapath;
+
+    @Value("${ocr.tesseract.language:chi_sim+eng}")
+    private String language;
+
+    @Value("${ocr.engine:textin}")
+    private String ocrEngine;
+
+    private final BlockingQueue<Worker> idleWorkers = new LinkedBlockingQueue<>();
+    private Semaphore permits;
+    private ScheduledExecutorService watchdog;
+    private volatile boolean closed;
+    private final AtomicInteger consecutiveStartFailures = new AtomicInteger(0);
+    private final AtomicInteger workerNumber = new AtomicInteger(1);
+
+    // 统计信息
+    private final AtomicInteger liveWorkers = new AtomicInteger(0);
+    private final AtomicLong startedCount = new AtomicLong(0);
+    private final AtomicLong startFailureCount = new AtomicLong(0);
+    private final AtomicLong totalStartMs = new AtomicLong(0);
+    private final AtomicLong retiredCount = new AtomicLong(0);
+    private final AtomicLong crashCount = new AtomicLong(0);
+    private final AtomicLong timeoutCount = new AtomicLong(0);
+    private final AtomicLong jobCount = new AtomicLong(0);
+    private final AtomicLong jobErrorCount = new AtomicLong(0);
+
+    @PostConstruct
+    public void init() {
+        permits = new Semaphore(Math.max(1, poolSize));
+        watchdog = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "OCR-Worker-Watchdog");
+            t.setDaemon(true);
+            return t;
+        });
+        if (!enabled) {
+            log.info("Tesseract工作进程池未开启，每次识别启动tesseract进程");
+            return;
+        }
+        log.info("Tesseract工作进程池: 进程数{}, 每个进程最多处理{}个任务, 语言: {}", poolSize, maxJobs, language);
+        if ("tesseract".equalsIgnoreCase(ocrEngine)) {
+            // 后台预热，避免第一个请求承担模型加载耗时
+            Thread warmup = new Thread(this::prestart, "OCR-Worker-Warmup");
+            warmup.setDaemon(true);
+            warmup.start();
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        closed = true;
+        Worker worker;
+        while ((worker = idleWorkers.poll()) != null) {
+            retire(worker);
+        }
+        if (watchdog != null) {
+            watchdog.shutdownNow();
+        }
+    }
+
+    /**
+     * 进程池是否可用，不可用时调用方应回退到每次启动tesseract进程
+     */
+    public boolean isAvailable() {
+        return enabled && !closed && consecutiveStartFailures.get() < MAX_START_FAILURES;
+    }
+
+    /**
+     * 识别一张图像
+     * @param image 编码后的图像字节（PNG/JPEG等）
+     * @param timeoutMs 等待空闲进程和识别的总超时时间
+     * @return 识别出的原始文本
+     */
+    public String recognize(byte[] image, long timeoutMs) throws TesseractException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        try {
+            if (!permits.tryAcquire(timeoutMs, TimeUnit.MILLISECONDS)) {
+                timeoutCount.incrementAndGet();
+                throw new TesseractException("等待OCR工作进程超时");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TesseractException("OCR识别被中断", e);
+        }
+
+        Worker worker = idleWorkers.poll();
+        try {
+            if (worker != null && !worker.process.isAlive()) {
+                log.warn("{}已退出，重新启动", worker.name);
+                discard(worker);
+                crashCount.incrementAndGet();
+                worker = null;
+            }
+            if (worker == null) {
+                worker = startWorker();
+            }
+
+            String text = worker.recognize(image, Math.max(1, deadline - System.currentTimeMillis()));
+            jobCount.incrementAndGet();
+            return text;
+        } catch (WorkerErrorException e) {
+            // 工作进程正常返回的错误（如图像无法解码），进程本身仍可继续使用
+            jobErrorCount.incrementAndGet();
+            throw new TesseractException("OCR识别失败: " + e.getMessage());
+        } catch (IOException e) {
+            if (worker != null && worker.timedOut) {
+                timeoutCount.incrementAndGet();
+                log.error("{}识别超时，已销毁", worker.name);
+                discard(worker);
+                worker = null;
+                throw new TesseractException("OCR进程超时");
+            }
+            String reason = e instanceof EOFException ? "工作进程意外退出" : e.getMessage();
+            if (worker != null) {
+                crashCount.incrementAndGet();
+                log.error("{}通信失败，已销毁: {}", worker.name, reason);
+                discard(worker);
+                worker = null;
+            }
+            throw new TesseractException("OCR工作进程异常: " + reason, e);
+        } finally {
+            Worker retiring = null;
+            if (worker != null) {
+                if (closed || worker.jobs >= maxJobs) {
+                    retiring = worker;
+                } else {
+                    idleWorkers.offer(worker);
+                }
+            }
+            // 先归还名额，退役交给看门狗线程，请求线程不等待进程退出
+            permits.release();
+            if (retiring != null) {
+                log.debug("{}已处理{}个任务，退役", retiring.name, retiring.jobs);
+                retireInBackground(retiring);
+            }
+        }
+    }
+
+    /**
+     * 获取统计信息
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new HashMap<>();
+        long started = startedCount.get();
+        stats.put("enabled", enabled);
+        stats.put("available", isAvailable());
+        stats.put("poolSize", poolSize);
+        stats.put("maxJobs", maxJobs);
+        stats.put("liveWorkers", liveWorkers.get());
+        stats.put("idleWorkers", idleWorkers.size());
+        stats.put("startedCount", started);
+        stats.put("startFailureCount", startFailureCount.get());
+        stats.put("avgStartMs", started > 0 ? totalStartMs.get() / started : 0);
+        stats.put("retiredCount", retiredCount.get());
+        stats.put("crashCount", crashCount.get());
+        stats.put("timeoutCount", timeoutCount.get());
+        stats.put("jobCount", jobCount.get());
+        stats.put("jobErrorCount", jobErrorCount.get());
+        return stats;
+    }
+
+    private void prestart() {
+        for (int i = 0; i < poolSize && isAvailable(); i++) {
+            if (!permits.tryAcquire()) {
+                return;
+            }
+            try {
+                idleWorkers.offer(startWorker());
+            } catch (TesseractException e) {
+                log.warn("预热Tesseract工作进程失败: {}", e.getMessage());
+            } finally {
+                permits.release();
+            }
+        }
+    }
+
+    private Worker startWorker() throws TesseractException {
+        if (!isAvailable()) {
+            throw new TesseractException("Tesseract工作进程池不可用");
+        }
+        String name = "OCR工作进程#" + workerNumber.getAndIncrement();
+        long start = System.currentTimeMillis();
+        Process process = null;
+        try {
+            ProcessBuilder pb = new ProcessBuilder(launchCommand());
+            pb.redirectError(ProcessBuilder.Redirect.INHERIT);
+            process = pb.start();
+            Worker worker = new Worker(name, process);
+            liveWorkers.incrementAndGet();
+            try {
+                String ready = worker.readResponse(TimeUnit.SECONDS.toMillis(startTimeoutSeconds));
+                long elapsed = System.currentTimeMillis() - start;
+                startedCount.incrementAndGet();
+                totalStartMs.addAndGet(elapsed);
+                consecutiveStartFailures.set(0);
+                log.info("{}已就绪，语言: {}，启动耗时: {}ms", name, ready, elapsed);
+                return worker;
+            } catch (IOException | WorkerErrorException e) {
+                discard(worker);
+                throw e;
+            }
+        } catch (IOException | WorkerErrorException e) {
+            if (process != null) {
+                process.destroyForcibly();
+            }
+            startFailureCount.incrementAndGet();
+            if (consecutiveStartFailures.incrementAndGet() >= MAX_START_FAILURES) {
+                log.error("Tesseract工作进程连续{}次启动失败，停用进程池: {}", MAX_START_FAILURES, e.getMessage());
+            } else {
+                log.warn("{}启动失败: {}", name, e.getMessage());
+            }
+            throw new TesseractException("OCR工作进程启动失败: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 工作进程启动命令：沿用当前JVM和类路径；以Spring Boot可执行jar运行时通过PropertiesLauncher指定入口类
+     */
+    private List<String> launchCommand() throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        for (String opt : javaOpts.trim().split("\\s+")) {
+            if (!opt.isEmpty()) {
+                command.add(opt);
+            }
+        }
+        String jnaLibraryPath = System.getProperty("jna.library.path");
+        if (jnaLibraryPath != null) {
+            command.add("-Djna.library.path=" + jnaLibraryPath);
+        }
+        String classPath = System.getProperty("java.class.path");
+        command.add("-cp");
+        command.add(classPath);
+        if (isBootJar(classPath)) {
+            command.add("-Dloader.main=" + TesseractWorkerMain.class.getName());
+            command.add("org.springframework.boot.loader.PropertiesLauncher");
+        } else {
+            command.add(TesseractWorkerMain.class.getName());
+        }
+        command.add(language);
+        command.add(datapath);
+        return command;
+    }
+
+    private static boolean isBootJar(String classPath) throws IOException {
+        if (classPath.contains(File.pathSeparator) || !classPath.endsWith(".jar")) {
+            return false;
+        }
+        try (JarFile jar = new JarFile(classPath)) {
+            return jar.getEntry("BOOT-INF/") != null;
+        }
+    }
+
+    /**
+     * 正常退役：通知进程退出，短暂等待后强制结束（关闭进程池时在当前线程执行）
+     */
+    private void retire(Worker worker) {
+        retiredCount.incrementAndGet();
+        requestExit(worker);
+        try {
+            worker.process.waitFor(RETIRE_GRACE_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        discard(worker);
+    }
+
+    /**
+     * 在看门狗线程上退役：通知进程退出后不阻塞等待，到期再检查并强制结束，
+     * 看门狗线程还负责识别超时，不能被退役占住
+     */
+    private void retireInBackground(Worker worker) {
+        try {
+            watchdog.execute(() -> {
+                retiredCount.incrementAndGet();
+                requestExit(worker);
+                watchdog.schedule(() -> discard(worker), RETIRE_GRACE_SECONDS, TimeUnit.SECONDS);
+            });
+        } catch (RejectedExecutionException e) {
+            // 进程池已关闭
+            discard(worker);
+        }
+    }
+
+    /**
+     * 发送长度为0的请求，通知工作进程退出
+     */
+    private void requestExit(Worker worker) {
+        try {
+            worker.input.writeInt(0);
+            worker.input.flush();
+        } catch (IOException e) {
+            log.debug("通知{}退出失败: {}", worker.name, e.getMessage());
+        }
+    }
+
+    /**
+     * 直接销毁进程
+     */
+    private void discard(Worker worker) {
+        if (worker.process.isAlive()) {
+            worker.process.destroyForcibly();
+        }
+        if (!worker.discarded) {
+            worker.discarded = true;
+            liveWorkers.decrementAndGet();
+        }
+    }
+
+    /**
+     * 工作进程返回的错误响应
+     */
+    private static class WorkerErrorException extends Exception {
+        WorkerErrorException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * 一个工作进程，同一时刻只由一个借出它的线程使用
+     */
+    private final class Worker {
+
+        private final String name;
+        private final Process process;
+        private final DataOutputStream input;
+        private final DataInputStream output;
+        private int jobs;
+        private volatile boolean timedOut;
+        private boolean discarded;
+
+        Worker(String name, Process process) {
+            this.name = name;
+            this.process = process;
+            this.input = new DataOutputStream(new BufferedOutputStream(process.getOutputStream()));
+            this.output = new DataInputStream(new BufferedInputStream(process.getInputStream()));
+        }
+
+        String recognize(byte[] image, long timeoutMs) throws IOException, WorkerErrorException {
+            jobs++;
+            // 写入请求也放在看门狗的保护下，进程卡死时管道写满同样会被超时结束
+            ScheduledFuture<?> kill = scheduleKill(timeoutMs);
+            try {
+                input.writeInt(image.length);
+                input.write(image);
+                input.flush();
+                return readFrame();
+            } finally {
+                kill.cancel(false);
+            }
+        }
+
+        String readResponse(long timeoutMs) throws IOException, WorkerErrorException {
+            ScheduledFuture<?> kill = scheduleKill(timeoutMs);
+            try {
+                return readFrame();
+            } finally {
+                kill.cancel(false);
+            }
+        }
+
+        private ScheduledFuture<?> scheduleKill(long timeoutMs) {
+            return watchdog.schedule(() -> {
+                timedOut = true;
+                process.destroyForcibly();
+            }, timeoutMs, TimeUnit.MILLISECONDS);
+        }
+
+        private String readFrame() throws IOException, WorkerErrorException {
+            int magic = output.readInt();
+            if (magic != TesseractWorkerMain.MAGIC) {
+                throw new IOException(String.format("协议错误，魔数: %08X", magic));
+            }
+            byte status = output.readByte();
+            int length = output.readInt();
+            if (length < 0 || length > MAX_RESPONSE_BYTES) {
+                throw new IOException("协议错误，响应长度: " + length);
+            }
+            byte[] bytes = new byte[length];
+            output.readFully(bytes);
+            String text = new String(bytes, StandardCharsets.UTF_8);
+            if (status != TesseractWorkerMain.STATUS_OK) {
+                throw new WorkerErrorException(text);
+            }
+            return text;
+        }
+    }
+}
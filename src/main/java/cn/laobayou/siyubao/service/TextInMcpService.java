@@ -1,9 +1,11 @@
 package cn.laobayou.siyubao.service;
 
+import cn.laobayou.siyubao.exception.InvalidImageException;
 import cn.laobayou.siyubao.util.CharacterEncodingUtils;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
@@ -44,6 +46,9 @@ public class TextInMcpService {
     @Value("${ocr.textin.app.secret:}")
     private String appSecret;
 
+    @Autowired
+    private OcrLatencyMetrics latencyMetrics;
+
     private ObjectMapper objectMapper;
 
     @PostConstruct
@@ -99,17 +104,17 @@ public class TextInMcpService {
      */
     private void validateImageFile(MultipartFile imageFile) throws IOException {
         if (imageFile.isEmpty()) {
-            throw new IOException("图片文件不能为空");
+            throw new InvalidImageException("图片文件不能为空");
         }
 
         String contentType = imageFile.getContentType();
         if (contentType == null || !contentType.startsWith("image/")) {
-            throw new IOException("不支持的文件类型，请上传图片文件");
+            throw new InvalidImageException("不支持的文件类型，请上传图片文件");
         }
 
         // 限制文件大小为10MB
         if (imageFile.getSize() > 10 * 1024 * 1024) {
-            throw new IOException("图片文件过大，请上传小于10MB的图片");
+            throw new InvalidImageException("图片文件过大，请上传小于10MB的图片");
         }
     }
 
@@ -138,6 +143,7 @@ public class TextInMcpService {
     private String callTextInApi(Path imagePath) throws Exception {
         // 读取图片文件
         byte[] imageData = Files.readAllBytes(imagePath);
+        long phaseStart = System.nanoTime();
         
         // 创建HTTP连接
         URL url = new URL(TEXTIN_API_URL);
@@ -187,8 +193,13 @@ public class TextInMcpService {
             
             log.info("TextIn API响应成功，状态码: {}, 响应长度: {}, 响应内容: {}", responseCode, response.length(), response.toString());
             
+            latencyMetrics.record(OcrCircuitBreakers.ENGINE_TEXTIN, OcrLatencyMetrics.PHASE_ENGINE, System.nanoTime() - phaseStart);
+            
             // 解析API响应
-            return parseTextInApiResponse(response.toString());
+            phaseStart = System.nanoTime();
+            String text = parseTextInApiResponse(response.toString());
+            latencyMetrics.record(OcrCircuitBreakers.ENGINE_TEXTIN, OcrLatencyMetrics.PHASE_POSTPROCESS, System.nanoTime() - phaseStart);
+            return text;
             
         } finally {
             connection.disconnect();
@@ -0,0 +1,147 @@
+package cn.laobayou.siyubao.util;
+
+/**
+ * 图像背景画像
+ * 由一次跨步采样得到：蓝色/绿色/彩色背景占比、主色直方图以及文字与背景的对比度，
+ * 用于选择预处理分支，替代原来分别做全图扫描的多个背景检测方法。
+ * 原来按20x20网格采样的判定（聊天背景类型、彩色背景）仍按该网格统计，其余按最多256x256的网格统计
+ */
+public class BackgroundProfile {
+
+    /**
+     * 蓝色、绿色背景的判定阈值（采样点占比）
+     */
+    static final double BLUE_THRESHOLD = 0.15;
+    static final double GREEN_THRESHOLD = 0.15;
+
+    /**
+     * 彩色背景的判定阈值（采样点占比）
+     */
+    static final double COLORED_THRESHOLD = 0.3;
+
+    private final int sampleCount;
+    private final double blueRatio;
+    private final double greenRatio;
+    private final double obviousGreenRatio;
+    private final double chatBlueRatio;
+    private final double chatGreenRatio;
+    private final double coloredRatio;
+    private final int dominantColor;
+    private final double dominantColorRatio;
+    private final int backgroundLuminance;
+    private final int textContrast;
+
+    BackgroundProfile(int sampleCount, double blueRatio, double greenRatio, double obviousGreenRatio,
+                      double chatBlueRatio, double chatGreenRatio, double coloredRatio,
+                      int dominantColor, double dominantColorRatio, int backgroundLuminance, int textContrast) {
+        this.sampleCount = sampleCount;
+        this.blueRatio = blueRatio;
+        this.greenRatio = greenRatio;
+        this.obviousGreenRatio = obviousGreenRatio;
+        this.chatBlueRatio = chatBlueRatio;
+        this.chatGreenRatio = chatGreenRatio;
+        this.coloredRatio = coloredRatio;
+        this.dominantColor = dominantColor;
+        this.dominantColorRatio = dominantColorRatio;
+        this.backgroundLuminance = backgroundLuminance;
+        this.textContrast = textContrast;
+    }
+
+    /**
+     * 是否为蓝色背景图像（明显蓝色背景的采样点超过15%）
+     */
+    public boolean isBlueBackground() {
+        return blueRatio > BLUE_THRESHOLD;
+    }
+
+    /**
+     * 是否为绿色背景图像（微信绿色背景的采样点超过15%）
+     */
+    public boolean isGreenBackground() {
+        return greenRatio > GREEN_THRESHOLD;
+    }
+
+    /**
+     * 是否为彩色背景图像（20x20网格中绿、蓝、红任一明显背景的采样点超过30%）
+     */
+    public boolean isColoredBackground() {
+        return coloredRatio > COLORED_THRESHOLD;
+    }
+
+    /**
+     * 聊天截图的背景类型：blue、green或general（按20x20网格，不是蓝色的采样点才计入绿色）
+     */
+    public String getChatBackgroundType() {
+        if (chatBlueRatio > BLUE_THRESHOLD) {
+            return "blue";
+        } else if (chatGreenRatio > GREEN_THRESHOLD) {
+            return "green";
+        } else {
+            return "general";
+        }
+    }
+
+    public int getSampleCount() {
+        return sampleCount;
+    }
+
+    public double getBlueRatio() {
+        return blueRatio;
+    }
+
+    public double getGreenRatio() {
+        return greenRatio;
+    }
+
+    public double getObviousGreenRatio() {
+        return obviousGreenRatio;
+    }
+
+    public double getChatBlueRatio() {
+        return chatBlueRatio;
+    }
+
+    public double getChatGreenRatio() {
+        return chatGreenRatio;
+    }
+
+    public double getColoredRatio() {
+        return coloredRatio;
+    }
+
+    /**
+     * 主色（按每通道4位量化后出现最多的颜色，取量化区间中心，0xRRGGBB）
+     */
+    public int getDominantColor() {
+        return dominantColor;
+    }
+
+    /**
+     * 主色在采样点中的占比
+     */
+    public double getDominantColorRatio() {
+        return dominantColorRatio;
+    }
+
+    /**
+     * 主色的灰度值
+     */
+    public int getBackgroundLuminance() {
+        return backgroundLuminance;
+    }
+
+    /**
+     * 文字与背景的对比度：背景灰度与采样灰度分布两端（1%/99%分位）的最大差值
+     */
+    public int getTextContrast() {
+        return textContrast;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("BackgroundProfile{samples=%d, blue=%.2f, green=%.2f, obviousGreen=%.2f, chatBlue=%.2f, "
+                        + "chatGreen=%.2f, colored=%.2f, dominant=#%06X(%.2f), bgLuminance=%d, contrast=%d}",
+                sampleCount, blueRatio, greenRatio, obviousGreenRatio, chatBlueRatio, chatGreenRatio, coloredRatio,
+                dominantColor, dominantColorRatio, backgroundLuminance, textContrast);
+    }
+}
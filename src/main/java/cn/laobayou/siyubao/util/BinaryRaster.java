@@ -0,0 +1,212 @@
+package cn.laobayou.siyubao.util;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.IndexColorModel;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+
+/**
+ * 按位压缩的二值图像（每像素1位）
+ * 每行按字节对齐，行跨度为(width+7)/8字节，行内高位在前；位为1表示白色，0表示黑色。
+ * 行末不足一个字节的填充位始终为0
+ *
+ * 形态学运算直接在压缩数据上按字节做位运算：膨胀为邻域内按位或，腐蚀为按位与，
+ * 结果与在0/255灰度平面上做最小/最大值滤波完全一致
+ */
+public final class BinaryRaster implements ImageRaster {
+
+    private static final IndexColorModel BLACK_WHITE = new IndexColorModel(1, 2,
+            new byte[]{0, (byte) 0xFF}, new byte[]{0, (byte) 0xFF}, new byte[]{0, (byte) 0xFF});
+
+    private final int width;
+    private final int height;
+    private final int stride;
+    private final byte[] data;
+
+    /**
+     * 创建全黑的二值图像
+     */
+    public BinaryRaster(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.stride = (width + 7) >> 3;
+        this.data = new byte[stride * height];
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * 每行字节数
+     */
+    public int getStride() {
+        return stride;
+    }
+
+    /**
+     * 压缩数据，直接返回内部数组
+     */
+    public byte[] getData() {
+        return data;
+    }
+
+    @Override
+    public int getByteSize() {
+        return data.length;
+    }
+
+    /**
+     * 设置像素颜色，white为true时为白色，否则为黑色
+     * 不同的行位于不同的字节，按行带并行写入时无需同步
+     */
+    public void set(int x, int y, boolean white) {
+        int index = y * stride + (x >> 3);
+        int mask = 0x80 >>> (x & 7);
+        data[index] = (byte) (white ? data[index] | mask : data[index] & ~mask);
+    }
+
+    public boolean isWhite(int x, int y) {
+        return (data[y * stride + (x >> 3)] & (0x80 >>> (x & 7))) != 0;
+    }
+
+    /**
+     * 膨胀：(2*radius+1)^2 邻域内有白色像素则为白色
+     */
+    public BinaryRaster dilate(int radius) {
+        BinaryRaster result = this;
+        for (int i = 0; i < radius; i++) {
+            result = result.filter3x3(false);
+        }
+        return result == this ? copy() : result;
+    }
+
+    /**
+     * 腐蚀：(2*radius+1)^2 邻域内全部为白色才为白色
+     */
+    public BinaryRaster erode(int radius) {
+        BinaryRaster result = this;
+        for (int i = 0; i < radius; i++) {
+            result = result.filter3x3(true);
+        }
+        return result == this ? copy() : result;
+    }
+
+    /**
+     * 闭运算：先膨胀后腐蚀
+     */
+    public BinaryRaster close(int radius) {
+        return dilate(radius).erode(radius);
+    }
+
+    /**
+     * 开运算：先腐蚀后膨胀
+     */
+    public BinaryRaster open(int radius) {
+        return erode(radius).dilate(radius);
+    }
+
+    /**
+     * 展开为0/255的灰度平面
+     */
+    public byte[] toGrayPlane() {
+        byte[] plane = new byte[width * height];
+        for (int y = 0; y < height; y++) {
+            int row = y * stride;
+            int dst = y * width;
+            for (int x = 0; x < width; x++) {
+                if ((data[row + (x >> 3)] & (0x80 >>> (x & 7))) != 0) {
+                    plane[dst + x] = (byte) 0xFF;
+                }
+            }
+        }
+        return plane;
+    }
+
+    @Override
+    public int[] toRgbPixels() {
+        int[] pixels = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            int row = y * stride;
+            int dst = y * width;
+            for (int x = 0; x < width; x++) {
+                if ((data[row + (x >> 3)] & (0x80 >>> (x & 7))) != 0) {
+                    pixels[dst + x] = 0xFFFFFF;
+                }
+            }
+        }
+        return pixels;
+    }
+
+    /**
+     * 包装为TYPE_BYTE_BINARY图像（不复制数据）
+     */
+    @Override
+    public BufferedImage toBufferedImage() {
+        WritableRaster raster = Raster.createPackedRaster(new DataBufferByte(data, data.length),
+                width, height, 1, null);
+        return new BufferedImage(BLACK_WHITE, raster, false, null);
+    }
+
+    private BinaryRaster copy() {
+        BinaryRaster result = new BinaryRaster(width, height);
+        System.arraycopy(data, 0, result.data, 0, data.length);
+        return result;
+    }
+
+    /**
+     * 3x3邻域的按位与（腐蚀）或按位或（膨胀），图像外的像素不参与计算
+     */
+    private BinaryRaster filter3x3(boolean erode) {
+        // 1. 行方向：每个位与左右相邻位合并
+        byte[] horizontal = new byte[data.length];
+        int tailBits = width & 7;
+        int tailMask = tailBits == 0 ? 0xFF : (0xFF << (8 - tailBits)) & 0xFF;
+        int pad = erode ? 0xFF : 0;
+        for (int y = 0; y < height; y++) {
+            int row = y * stride;
+            for (int i = 0; i < stride; i++) {
+                int current = data[row + i] & 0xFF;
+                if (erode && i == stride - 1) {
+                    // 腐蚀时行末填充位视为白色，不影响最后一个像素
+                    current |= ~tailMask & 0xFF;
+                }
+                int previous = i > 0 ? data[row + i - 1] & 0xFF : pad;
+                int next = i < stride - 1 ? data[row + i + 1] & 0xFF : pad;
+                int left = ((previous << 7) | (current >>> 1)) & 0xFF;
+                int right = ((current << 1) | (next >>> 7)) & 0xFF;
+                int value = erode ? current & left & right : current | left | right;
+                horizontal[row + i] = (byte) (i == stride - 1 ? value & tailMask : value);
+            }
+        }
+
+        // 2. 列方向：与上下相邻行合并
+        BinaryRaster result = new BinaryRaster(width, height);
+        byte[] out = result.data;
+        for (int y = 0; y < height; y++) {
+            int row = y * stride;
+            int above = y > 0 ? row - stride : -1;
+            int below = y < height - 1 ? row + stride : -1;
+            for (int i = 0; i < stride; i++) {
+                int value = horizontal[row + i] & 0xFF;
+                if (above >= 0) {
+                    int v = horizontal[above + i] & 0xFF;
+                    value = erode ? value & v : value | v;
+                }
+                if (below >= 0) {
+                    int v = horizontal[below + i] & 0xFF;
+                    value = erode ? value & v : value | v;
+                }
+                out[row + i] = (byte) value;
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,62 @@
+package cn.laobayou.siyubao.util;
+
+import java.awt.Rectangle;
+
+/**
+ * 聊天截图中的一个消息气泡
+ * 位置以原图像素坐标表示；side表示气泡靠左（对方发送）还是靠右（自己发送）
+ */
+public class ChatBubble {
+
+    /**
+     * 气泡所在的一侧
+     */
+    public enum Side {
+        LEFT,
+        RIGHT
+    }
+
+    private final Rectangle bounds;
+    private final Side side;
+    private final int fillColor;
+
+    /**
+     * 识别出的文字，OCR完成后填入
+     */
+    private String text;
+
+    public ChatBubble(Rectangle bounds, Side side, int fillColor) {
+        this.bounds = bounds;
+        this.side = side;
+        this.fillColor = fillColor;
+    }
+
+    public Rectangle getBounds() {
+        return bounds;
+    }
+
+    public Side getSide() {
+        return side;
+    }
+
+    /**
+     * 气泡填充色（0xRRGGBB，按4位量化后的颜色）
+     */
+    public int getFillColor() {
+        return fillColor;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public void setText(String text) {
+        this.text = text;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ChatBubble{%s, x=%d, y=%d, %dx%d, fill=#%06X}",
+                side, bounds.x, bounds.y, bounds.width, bounds.height, fillColor);
+    }
+}
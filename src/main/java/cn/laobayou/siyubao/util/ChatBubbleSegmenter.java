@@ -0,0 +1,307 @@
+package cn.laobayou.siyubao.util;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * 聊天气泡分割
+ * 1. 颜色按每通道4位量化为4096种，出现最多的颜色视为背景色，其余占比足够大的颜色视为气泡填充色；
+ * 2. 按4x4像素分块，块内3/4以上像素为填充色的块标记为气泡块，压到文字笔画的块不是气泡块；
+ * 3. 气泡块按四连通合并为区域，区域外接矩形内填充块足够多、内部有文字留下的空洞、尺寸合适的区域即为一个气泡，
+ *    靠近左边缘的为对方消息，靠近右边缘的为自己的消息。
+ * 头像、图片等非纯色区域的填充块占比低，纯色头像内部没有空洞，横跨整幅图像的标题栏、输入栏按宽度排除。
+ * 评论区等不是聊天界面的截图中，单独一个带字的输入框、按钮也会被当成气泡，
+ * 因此同时给出文字覆盖率：与背景色明显不同的像素（文字、图标等）所在的非气泡块落在气泡内的比例，
+ * 覆盖率低说明大部分文字在气泡外，调用方应识别整幅图像。大段文字的颜色本身也可能占到填充色的比例，所以不按填充色排除
+ */
+public final class ChatBubbleSegmenter {
+
+    private static final int BLOCK_SIZE = 4;
+
+    /**
+     * 颜色占全图像素的比例达到该值才可能是气泡填充色
+     */
+    private static final double MIN_FILL_COLOR_RATIO = 0.01;
+
+    /**
+     * 外接矩形内填充块的最小占比（气泡内的文字会占去一部分）
+     */
+    private static final double MIN_FILL_DENSITY = 0.5;
+
+    /**
+     * 外接矩形内部（不含边缘一圈）至少要有这么多个非气泡块，即气泡里有文字
+     */
+    private static final int MIN_TEXT_BLOCKS = 2;
+
+    private static final int MIN_BUBBLE_WIDTH = 32;
+    private static final int MIN_BUBBLE_HEIGHT = 20;
+
+    /**
+     * 宽度超过图像宽度该比例的区域视为标题栏、输入栏等界面元素
+     */
+    private static final double MAX_BUBBLE_WIDTH_RATIO = 0.9;
+
+    /**
+     * 量化后任一通道与背景色相差至少这么多级（每级16）才算前景像素，避免压缩噪点计入文字
+     */
+    private static final int MIN_FOREGROUND_LEVELS = 2;
+
+    private ChatBubbleSegmenter() {
+    }
+
+    /**
+     * 分割已解码图像中的聊天气泡
+     */
+    public static Segmentation segment(DecodedImage image) {
+        return segment(image.getRgbPixels(), image.getWidth(), image.getHeight());
+    }
+
+    /**
+     * 分割聊天气泡
+     * @param pixels RGB像素（行优先，0xRRGGBB）
+     * @param width 宽度
+     * @param height 高度
+     * @return 按从上到下排列的气泡及文字覆盖率，没有找到气泡时气泡列表为空
+     */
+    public static Segmentation segment(int[] pixels, int width, int height) {
+        List<ChatBubble> bubbles = new ArrayList<>();
+        int gridWidth = width / BLOCK_SIZE;
+        int gridHeight = height / BLOCK_SIZE;
+        if (gridWidth == 0 || gridHeight == 0) {
+            return new Segmentation(bubbles, 0);
+        }
+
+        // 1. 量化颜色直方图，找出背景色和候选填充色
+        int[] histogram = new int[4096];
+        for (int i = 0; i < width * height; i++) {
+            histogram[quantize(pixels[i])]++;
+        }
+        int backgroundBin = 0;
+        for (int i = 1; i < histogram.length; i++) {
+            if (histogram[i] > histogram[backgroundBin]) {
+                backgroundBin = i;
+            }
+        }
+        boolean[] fillBins = new boolean[4096];
+        int minFillCount = (int) (width * height * MIN_FILL_COLOR_RATIO);
+        boolean hasFillColor = false;
+        for (int i = 0; i < histogram.length; i++) {
+            if (i != backgroundBin && histogram[i] >= minFillCount) {
+                fillBins[i] = true;
+                hasFillColor = true;
+            }
+        }
+        if (!hasFillColor) {
+            return new Segmentation(bubbles, 0);
+        }
+
+        // 2. 标记气泡块，记录每块的主要填充色，同时标记含有文字等前景像素的块
+        int[] blockColors = new int[gridWidth * gridHeight];
+        boolean[] contentBlocks = new boolean[blockColors.length];
+        int[] counts = new int[BLOCK_SIZE * BLOCK_SIZE];
+        int[] bins = new int[BLOCK_SIZE * BLOCK_SIZE];
+        int minFillPixels = BLOCK_SIZE * BLOCK_SIZE * 3 / 4;
+        for (int gy = 0; gy < gridHeight; gy++) {
+            for (int gx = 0; gx < gridWidth; gx++) {
+                int distinct = 0;
+                int fillPixels = 0;
+                boolean foreground = false;
+                int bestBin = -1;
+                int bestCount = 0;
+                for (int dy = 0; dy < BLOCK_SIZE; dy++) {
+                    int row = (gy * BLOCK_SIZE + dy) * width + gx * BLOCK_SIZE;
+                    for (int dx = 0; dx < BLOCK_SIZE; dx++) {
+                        int bin = quantize(pixels[row + dx]);
+                        if (!foreground && isForeground(bin, backgroundBin)) {
+                            foreground = true;
+                        }
+                        if (!fillBins[bin]) {
+                            continue;
+                        }
+                        fillPixels++;
+                        int k = 0;
+                        while (k < distinct && bins[k] != bin) {
+                            k++;
+                        }
+                        if (k == distinct) {
+                            bins[distinct] = bin;
+                            counts[distinct++] = 0;
+                        }
+                        if (++counts[k] > bestCount) {
+                            bestCount = counts[k];
+                            bestBin = bin;
+                        }
+                    }
+                }
+                blockColors[gy * gridWidth + gx] = fillPixels >= minFillPixels ? bestBin : -1;
+                contentBlocks[gy * gridWidth + gx] = foreground && fillPixels < minFillPixels;
+            }
+        }
+
+        // 3. 四连通区域
+        boolean[] visited = new boolean[blockColors.length];
+        int[] stack = new int[blockColors.length];
+        int[] regionHistogram = new int[4096];
+        for (int start = 0; start < blockColors.length; start++) {
+            if (visited[start] || blockColors[start] < 0) {
+                continue;
+            }
+            int minX = gridWidth, minY = gridHeight, maxX = -1, maxY = -1;
+            int blockCount = 0;
+            int top = 0;
+            stack[top++] = start;
+            visited[start] = true;
+            while (top > 0) {
+                int block = stack[--top];
+                int gx = block % gridWidth;
+                int gy = block / gridWidth;
+                minX = Math.min(minX, gx);
+                maxX = Math.max(maxX, gx);
+                minY = Math.min(minY, gy);
+                maxY = Math.max(maxY, gy);
+                blockCount++;
+                regionHistogram[blockColors[block]]++;
+                if (gx > 0) {
+                    top = push(blockColors, visited, stack, top, block - 1);
+                }
+                if (gx < gridWidth - 1) {
+                    top = push(blockColors, visited, stack, top, block + 1);
+                }
+                if (gy > 0) {
+                    top = push(blockColors, visited, stack, top, block - gridWidth);
+                }
+                if (gy < gridHeight - 1) {
+                    top = push(blockColors, visited, stack, top, block + gridWidth);
+                }
+            }
+
+            int fillBin = 0;
+            for (int i = 0; i < regionHistogram.length; i++) {
+                if (regionHistogram[i] > regionHistogram[fillBin]) {
+                    fillBin = i;
+                }
+                regionHistogram[i] = 0;
+            }
+
+            int spanX = maxX - minX + 1;
+            int spanY = maxY - minY + 1;
+            Rectangle bounds = new Rectangle(minX * BLOCK_SIZE, minY * BLOCK_SIZE,
+                    spanX * BLOCK_SIZE, spanY * BLOCK_SIZE);
+            if (bounds.width < MIN_BUBBLE_WIDTH || bounds.height < MIN_BUBBLE_HEIGHT
+                    || bounds.width > width * MAX_BUBBLE_WIDTH_RATIO
+                    || blockCount < spanX * spanY * MIN_FILL_DENSITY
+                    || countInteriorHoles(blockColors, gridWidth, minX, minY, maxX, maxY) < MIN_TEXT_BLOCKS) {
+                continue;
+            }
+            int leftGap = bounds.x;
+            int rightGap = width - bounds.x - bounds.width;
+            ChatBubble.Side side = leftGap <= rightGap ? ChatBubble.Side.LEFT : ChatBubble.Side.RIGHT;
+            bubbles.add(new ChatBubble(bounds, side, binColor(fillBin)));
+        }
+
+        bubbles.sort(Comparator.comparingInt((ChatBubble b) -> b.getBounds().y)
+                .thenComparingInt(b -> b.getBounds().x));
+        return new Segmentation(bubbles, textCoverage(contentBlocks, gridWidth, bubbles));
+    }
+
+    /**
+     * 含前景像素的块中落在气泡内的比例，没有前景像素时为0
+     * 气泡圆角和抗锯齿边缘在外接矩形外一圈，按外扩一块计算
+     */
+    private static double textCoverage(boolean[] contentBlocks, int gridWidth, List<ChatBubble> bubbles) {
+        int total = 0;
+        int covered = 0;
+        for (int block = 0; block < contentBlocks.length; block++) {
+            if (!contentBlocks[block]) {
+                continue;
+            }
+            total++;
+            int x = block % gridWidth * BLOCK_SIZE;
+            int y = block / gridWidth * BLOCK_SIZE;
+            for (ChatBubble bubble : bubbles) {
+                Rectangle bounds = bubble.getBounds();
+                if (x >= bounds.x - BLOCK_SIZE && x < bounds.x + bounds.width + BLOCK_SIZE
+                        && y >= bounds.y - BLOCK_SIZE && y < bounds.y + bounds.height + BLOCK_SIZE) {
+                    covered++;
+                    break;
+                }
+            }
+        }
+        return total == 0 ? 0 : (double) covered / total;
+    }
+
+    /**
+     * 外接矩形内部（不含边缘一圈）的非气泡块数
+     */
+    private static int countInteriorHoles(int[] blockColors, int gridWidth, int minX, int minY, int maxX, int maxY) {
+        int holes = 0;
+        for (int gy = minY + 1; gy < maxY; gy++) {
+            for (int gx = minX + 1; gx < maxX; gx++) {
+                if (blockColors[gy * gridWidth + gx] < 0) {
+                    holes++;
+                }
+            }
+        }
+        return holes;
+    }
+
+    private static int push(int[] blockColors, boolean[] visited, int[] stack, int top, int block) {
+        if (!visited[block] && blockColors[block] >= 0) {
+            visited[block] = true;
+            stack[top++] = block;
+        }
+        return top;
+    }
+
+    private static boolean isForeground(int bin, int backgroundBin) {
+        return Math.abs((bin >> 8) - (backgroundBin >> 8)) >= MIN_FOREGROUND_LEVELS
+                || Math.abs(((bin >> 4) & 0xF) - ((backgroundBin >> 4) & 0xF)) >= MIN_FOREGROUND_LEVELS
+                || Math.abs((bin & 0xF) - (backgroundBin & 0xF)) >= MIN_FOREGROUND_LEVELS;
+    }
+
+    private static int quantize(int rgb) {
+        return ((rgb >> 12) & 0xF00) | ((rgb >> 8) & 0xF0) | ((rgb >> 4) & 0xF);
+    }
+
+    /**
+     * 量化颜色还原为该区间的中心颜色
+     */
+    private static int binColor(int bin) {
+        return (((bin >> 8) << 4 | 8) << 16) | ((((bin >> 4) & 0xF) << 4 | 8) << 8) | ((bin & 0xF) << 4 | 8);
+    }
+
+    /**
+     * 分割结果
+     */
+    public static final class Segmentation {
+
+        private final List<ChatBubble> bubbles;
+        private final double textCoverage;
+
+        Segmentation(List<ChatBubble> bubbles, double textCoverage) {
+            this.bubbles = bubbles;
+            this.textCoverage = textCoverage;
+        }
+
+        /**
+         * 按从上到下排列的气泡
+         */
+        public List<ChatBubble> getBubbles() {
+            return bubbles;
+        }
+
+        /**
+         * 文字等前景所在的块落在气泡内的比例（0~1）
+         */
+        public double getTextCoverage() {
+            return textCoverage;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Segmentation{bubbles=%d, textCoverage=%.2f}", bubbles.size(), textCoverage);
+        }
+    }
+}
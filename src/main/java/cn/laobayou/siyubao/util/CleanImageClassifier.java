@@ -0,0 +1,183 @@
+package cn.laobayou.siyubao.util;
+
+/**
+ * 干净截图判定
+ * 在缩小的采样网格上计算灰度直方图，用Otsu方法求全局阈值，并以类间方差占总方差的比例衡量双峰程度。
+ * 近乎无彩色、浅色背景占多数、深浅两类分离明显的图像（白底黑字截图）判为干净图像，
+ * 不需要背景检测和文字增强，可以直接交给OCR引擎
+ */
+public final class CleanImageClassifier {
+
+    /**
+     * 采样网格的边长上限
+     */
+    private static final int SAMPLE_GRID_SIZE = 128;
+
+    /**
+     * 最大通道与最小通道差超过该值的像素视为有彩色
+     */
+    private static final int CHROMA_THRESHOLD = 48;
+
+    private static final double MAX_COLORFUL_RATIO = 0.1;
+    private static final double MIN_BIMODALITY = 0.8;
+    private static final int MIN_BACKGROUND_LUMINANCE = 180;
+    private static final double MIN_BACKGROUND_RATIO = 0.6;
+    private static final int MIN_CONTRAST = 100;
+
+    private final int threshold;
+    private final double bimodality;
+    private final double colorfulRatio;
+    private final double backgroundRatio;
+    private final int backgroundLuminance;
+    private final int contrast;
+
+    private CleanImageClassifier(int threshold, double bimodality, double colorfulRatio,
+                                 double backgroundRatio, int backgroundLuminance, int contrast) {
+        this.threshold = threshold;
+        this.bimodality = bimodality;
+        this.colorfulRatio = colorfulRatio;
+        this.backgroundRatio = backgroundRatio;
+        this.backgroundLuminance = backgroundLuminance;
+        this.contrast = contrast;
+    }
+
+    /**
+     * 对已解码图像做一次采样判定
+     */
+    public static CleanImageClassifier classify(DecodedImage image) {
+        return classify(image.getRgbPixels(), image.getWidth(), image.getHeight());
+    }
+
+    /**
+     * 对RGB像素做一次采样判定
+     * @param pixels RGB像素（行优先，0xRRGGBB）
+     * @param width 宽度
+     * @param height 高度
+     */
+    public static CleanImageClassifier classify(int[] pixels, int width, int height) {
+        int stepX = Math.max(1, width / SAMPLE_GRID_SIZE);
+        int stepY = Math.max(1, height / SAMPLE_GRID_SIZE);
+        int[] histogram = new int[256];
+        int samples = 0;
+        int colorful = 0;
+        for (int y = stepY / 2; y < height; y += stepY) {
+            int row = y * width;
+            for (int x = stepX / 2; x < width; x += stepX) {
+                int rgb = pixels[row + x];
+                int r = (rgb >> 16) & 0xFF;
+                int g = (rgb >> 8) & 0xFF;
+                int b = rgb & 0xFF;
+                if (Math.max(r, Math.max(g, b)) - Math.min(r, Math.min(g, b)) > CHROMA_THRESHOLD) {
+                    colorful++;
+                }
+                histogram[(int) (0.299 * r + 0.587 * g + 0.114 * b)]++;
+                samples++;
+            }
+        }
+        if (samples == 0) {
+            return new CleanImageClassifier(0, 0, 0, 0, 0, 0);
+        }
+
+        // Otsu：选使类间方差最大的阈值
+        long totalSum = 0;
+        for (int i = 0; i < 256; i++) {
+            totalSum += (long) i * histogram[i];
+        }
+        double mean = (double) totalSum / samples;
+        double totalVariance = 0;
+        for (int i = 0; i < 256; i++) {
+            totalVariance += histogram[i] * (i - mean) * (i - mean);
+        }
+        totalVariance /= samples;
+
+        int bestThreshold = 0;
+        double bestBetween = 0;
+        long lowCount = 0;
+        long lowSum = 0;
+        for (int t = 0; t < 255; t++) {
+            lowCount += histogram[t];
+            lowSum += (long) t * histogram[t];
+            long highCount = samples - lowCount;
+            if (lowCount == 0 || highCount == 0) {
+                continue;
+            }
+            double lowMean = (double) lowSum / lowCount;
+            double highMean = (double) (totalSum - lowSum) / highCount;
+            double between = (double) lowCount * highCount * (lowMean - highMean) * (lowMean - highMean)
+                    / ((double) samples * samples);
+            if (between > bestBetween) {
+                bestBetween = between;
+                bestThreshold = t;
+            }
+        }
+
+        // 阈值以上为浅色类（背景），以下为深色类（文字）
+        long darkCount = 0;
+        long darkSum = 0;
+        for (int i = 0; i <= bestThreshold; i++) {
+            darkCount += histogram[i];
+            darkSum += (long) i * histogram[i];
+        }
+        long lightCount = samples - darkCount;
+        int lightMean = lightCount > 0 ? (int) ((totalSum - darkSum) / lightCount) : 0;
+        int darkMean = darkCount > 0 ? (int) (darkSum / darkCount) : lightMean;
+
+        return new CleanImageClassifier(bestThreshold,
+                totalVariance > 0 ? bestBetween / totalVariance : 0,
+                (double) colorful / samples,
+                (double) lightCount / samples,
+                lightMean,
+                lightMean - darkMean);
+    }
+
+    /**
+     * 是否为干净的浅底深字图像，可以跳过预处理
+     */
+    public boolean isClean() {
+        return colorfulRatio <= MAX_COLORFUL_RATIO
+                && bimodality >= MIN_BIMODALITY
+                && backgroundLuminance >= MIN_BACKGROUND_LUMINANCE
+                && backgroundRatio >= MIN_BACKGROUND_RATIO
+                && contrast >= MIN_CONTRAST;
+    }
+
+    /**
+     * Otsu全局阈值
+     */
+    public int getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * 双峰程度：类间方差占总方差的比例（0~1）
+     */
+    public double getBimodality() {
+        return bimodality;
+    }
+
+    public double getColorfulRatio() {
+        return colorfulRatio;
+    }
+
+    public double getBackgroundRatio() {
+        return backgroundRatio;
+    }
+
+    public int getBackgroundLuminance() {
+        return backgroundLuminance;
+    }
+
+    /**
+     * 深浅两类的平均灰度差
+     */
+    public int getContrast() {
+        return contrast;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("CleanImageClassifier{clean=%s, threshold=%d, bimodality=%.2f, colorful=%.2f, "
+                        + "background=%.2f, backgroundLuminance=%d, contrast=%d}",
+                isClean(), threshold, bimodality, colorfulRatio, backgroundRatio, backgroundLuminance, contrast);
+    }
+}
@@ -0,0 +1,334 @@
+package cn.laobayou.siyubao.util;
+
+import java.awt.Color;
+import java.util.stream.IntStream;
+
+/**
+ * 像素颜色分类
+ * 背景/文字颜色判断只依赖像素的RGB值，启动时对全部2^24种颜色预先求值，
+ * 结果按位压缩成查找表（每张表2MB），处理像素时只需一次数组读取
+ *
+ * 原始判断逻辑保留在is*Color方法中，用于建表和校验查找表
+ */
+public final class ColorClassifier {
+
+    /**
+     * 24位颜色按位压缩后的long数组长度
+     */
+    private static final int TABLE_LENGTH = (1 << 24) >>> 6;
+
+    private ColorClassifier() {
+    }
+
+    /**
+     * 查找表放在单独的holder类中：建表时并行线程会调用ColorClassifier的判断方法，
+     * 如果在ColorClassifier自身的静态初始化中建表，这些线程会等待类初始化完成而死锁
+     */
+    private static final class Tables {
+        static final long[] OBVIOUS_BLUE = buildTable(ColorClassifier::isObviousBlueColor);
+        static final long[] SMART_GREEN = buildTable(ColorClassifier::isSmartGreenColor);
+        static final long[] COLORED_BACKGROUND = buildTable(ColorClassifier::isColoredBackgroundColor);
+        static final long[] WHITE_TEXT_ON_BLUE = buildTable(ColorClassifier::isWhiteTextOnBlueColor);
+    }
+
+    /**
+     * 颜色判断函数
+     */
+    @FunctionalInterface
+    interface ColorPredicate {
+        boolean test(int r, int g, int b, float[] hsv);
+    }
+
+    /**
+     * 触发查找表构建，供启动时调用，避免第一次请求承担建表耗时
+     */
+    public static void initialize() {
+        lookup(Tables.OBVIOUS_BLUE, 0);
+    }
+
+    /**
+     * 是否为明显的蓝色背景（含聊天蓝色#4696F6及其变体）
+     */
+    public static boolean isObviousBlueBackground(int rgb) {
+        return lookup(Tables.OBVIOUS_BLUE, rgb);
+    }
+
+    /**
+     * 是否为明显的绿色背景，只有几次整数比较，直接计算不查表
+     */
+    public static boolean isObviousGreenBackground(int rgb) {
+        return isObviousGreenColor((rgb >> 16) & 0xFF, (rgb >> 8) & 0xFF, rgb & 0xFF);
+    }
+
+    /**
+     * 是否为微信绿色背景（保守检测，避免误判文字）
+     */
+    public static boolean isSmartGreenBackground(int rgb) {
+        return lookup(Tables.SMART_GREEN, rgb);
+    }
+
+    /**
+     * 是否为明显的绿色、蓝色或红色背景
+     */
+    public static boolean isColoredBackground(int rgb) {
+        return lookup(Tables.COLORED_BACKGROUND, rgb);
+    }
+
+    /**
+     * 是否为蓝色背景上的白色文字（含聊天蓝色背景上的白字）
+     */
+    public static boolean isWhiteTextOnBlue(int rgb) {
+        return lookup(Tables.WHITE_TEXT_ON_BLUE, rgb);
+    }
+
+    private static boolean lookup(long[] table, int rgb) {
+        int color = rgb & 0xFFFFFF;
+        return (table[color >>> 6] & (1L << color)) != 0;
+    }
+
+    /**
+     * 对全部颜色求值建表，按红色分量并行，每个红色分量对应表中连续的1024个long
+     */
+    static long[] buildTable(ColorPredicate predicate) {
+        long[] table = new long[TABLE_LENGTH];
+        IntStream.range(0, 256).parallel().forEach(r -> {
+            float[] hsv = new float[3];
+            for (int g = 0; g < 256; g++) {
+                for (int b = 0; b < 256; b++) {
+                    if (predicate.test(r, g, b, hsv)) {
+                        int color = (r << 16) | (g << 8) | b;
+                        table[color >>> 6] |= 1L << color;
+                    }
+                }
+            }
+        });
+        return table;
+    }
+
+    /**
+     * 检测是否为明显的绿色背景（调整后支持微信绿色）
+     */
+    static boolean isObviousGreenColor(int r, int g, int b) {
+        // 微信绿色 RGB(149, 236, 105) 的特征：
+        // 1. 绿色分量明显高于红色和蓝色分量
+        // 2. 绿色分量要足够高
+        // 3. 放宽红色和蓝色分量的限制以支持微信绿色
+        return g > r + 60 && g > b + 100 && g > 200 && r < 180 && b < 130;
+    }
+
+    /**
+     * 检测是否为明显的红色背景
+     */
+    static boolean isObviousRedColor(int r, int g, int b) {
+        // 红色分量必须大幅高于绿色和蓝色分量
+        return r > g + 60 && r > b + 60 && r > 180 && g < 100 && b < 100;
+    }
+
+    /**
+     * 是否为明显的绿色、蓝色或红色背景
+     */
+    static boolean isColoredBackgroundColor(int r, int g, int b, float[] hsv) {
+        return isObviousGreenColor(r, g, b) || isObviousBlueColor(r, g, b, hsv) || isObviousRedColor(r, g, b);
+    }
+
+    /**
+     * 检测是否为明显的蓝色背景（优化聊天截图识别）
+     */
+    static boolean isObviousBlueColor(int r, int g, int b, float[] hsv) {
+        // 专门检测聊天应用蓝色 #4696F6 (70, 150, 246) 及类似颜色
+
+        // 1. 精确匹配聊天蓝色 #4696F6 及其变体（容差范围）
+        boolean isChatBlue = isChatBlueColor(r, g, b);
+
+        // 2. 基本蓝色条件：蓝色分量占主导（降低阈值）
+        boolean basicBlue = b > r + 20 && b > g + 10 && b > 100;
+
+        // 3. 计算蓝色占比（降低阈值）
+        float blueRatio = (float) b / (r + g + b);
+        boolean blueRatioDominant = blueRatio > 0.35;
+
+        // 4. HSV检测作为辅助（放宽条件）
+        Color.RGBtoHSB(r, g, b, hsv);
+        float hue = hsv[0] * 360;
+        float saturation = hsv[1];
+        float brightness = hsv[2];
+
+        // 蓝色色相范围：180-280度（扩大范围）
+        boolean hsvBlue = (hue >= 180 && hue <= 280) &&
+                         (saturation >= 0.2) &&
+                         (brightness >= 0.3);
+
+        // 5. 任何偏蓝的像素
+        boolean anyBlueish = b > Math.max(r, g) && b > 80;
+
+        // 6. 相对蓝色（蓝色分量相对较高）
+        boolean relativeBlue = b > (r + g) / 2 + 20 && b > 60;
+
+        // 7. 新增：强蓝色检测（针对高饱和度蓝色）
+        boolean strongBlue = b > 200 && b > r + 50 && b > g + 50;
+
+        return isChatBlue || basicBlue || (blueRatioDominant && hsvBlue) || anyBlueish || relativeBlue || strongBlue;
+    }
+
+    /**
+     * 专门检测聊天应用的蓝色背景 #4696F6 (70, 150, 246) 及其变体
+     */
+    static boolean isChatBlueColor(int r, int g, int b) {
+        // #4696F6 的RGB值：(70, 150, 246)
+        // 允许一定的容差范围来匹配相似的蓝色
+
+        // 方法1：直接范围匹配（最精确）
+        boolean directMatch = (r >= 50 && r <= 90) &&     // 红色分量 70±20
+                             (g >= 130 && g <= 170) &&    // 绿色分量 150±20
+                             (b >= 220 && b <= 255);      // 蓝色分量 246±9
+
+        // 方法2：比例匹配（更灵活）
+        // #4696F6 的比例特征：蓝色远大于绿色，绿色大于红色
+        boolean proportionMatch = b > g + 80 &&           // 蓝色比绿色大80以上
+                                 g > r + 60 &&            // 绿色比红色大60以上
+                                 b > 200 &&               // 蓝色分量足够高
+                                 r < 100;                 // 红色分量相对较低
+
+        // 方法3：相对差值匹配
+        int bgDiff = b - g;  // 蓝绿差值，#4696F6中约为96
+        int grDiff = g - r;  // 绿红差值，#4696F6中约为80
+        boolean relativeMatch = bgDiff >= 70 && bgDiff <= 120 &&  // 蓝绿差值在合理范围
+                               grDiff >= 60 && grDiff <= 100 &&   // 绿红差值在合理范围
+                               b > 180;                           // 蓝色分量足够高
+
+        return directMatch || proportionMatch || relativeMatch;
+    }
+
+    /**
+     * 智能绿色背景检测（更保守的方法，避免误判文字）
+     */
+    static boolean isSmartGreenColor(int r, int g, int b, float[] hsv) {
+        // 微信绿色的RGB值大约是 (149, 236, 105)，即 #95ec69
+        // 使用更严格的条件来避免误判文字
+
+        // 1. 首先检查是否接近微信绿色
+        int wechatR = 149, wechatG = 236, wechatB = 105;
+        double distance = Math.sqrt((r - wechatR) * (r - wechatR) + (g - wechatG) * (g - wechatG) + (b - wechatB) * (b - wechatB));
+
+        // 如果颜色距离微信绿色很近（阈值40），认为是绿色背景
+        if (distance < 40) {
+            return true;
+        }
+
+        // 2. 检查是否为高饱和度的绿色（避免低饱和度的绿色文字）
+        Color.RGBtoHSB(r, g, b, hsv);
+        float hue = hsv[0] * 360;
+        float saturation = hsv[1];
+        float brightness = hsv[2];
+
+        // 严格的HSV绿色检测：高饱和度、适中亮度、绿色色相
+        boolean isHighSaturationGreen = (hue >= 100 && hue <= 120) &&
+                                       (saturation >= 0.6) && // 提高饱和度要求
+                                       (brightness >= 0.7 && brightness <= 0.95);
+
+        // 3. RGB检测：绿色分量必须显著高于红蓝分量，且绿色值较高
+        boolean isRgbGreen = (g > r + 50) && (g > b + 50) && (g >= 200);
+
+        // 4. 排除可能的文字颜色（通常饱和度较低或亮度极端）
+        boolean isNotText = saturation >= 0.5 && brightness >= 0.6 && brightness <= 0.9;
+
+        return (isHighSaturationGreen || isRgbGreen) && isNotText;
+    }
+
+    /**
+     * 检测是否为蓝色背景上的白色文字（专门针对聊天蓝色#4696F6优化）
+     */
+    static boolean isWhiteTextOnBlueColor(int r, int g, int b, float[] hsv) {
+        // 1. 首先检查是否为聊天蓝色背景上的白字
+        boolean isChatWhiteText = isWhiteTextOnChatBlueColor(r, g, b);
+
+        // 2. 通用白字检测（保留原有逻辑）
+        // 计算亮度
+        int brightness = (int) (0.299 * r + 0.587 * g + 0.114 * b);
+
+        // 计算RGB的标准差，判断是否均衡
+        double mean = (r + g + b) / 3.0;
+        double variance = ((r - mean) * (r - mean) + (g - mean) * (g - mean) + (b - mean) * (b - mean)) / 3.0;
+        double stdDev = Math.sqrt(variance);
+
+        // 检查是否偏向蓝色（大幅放宽限制）
+        boolean notBlueBiased = b <= r + 60 && b <= g + 60;
+
+        // 极度敏感的多层次检测（大幅降低所有阈值）：
+
+        // 1. 高亮度白字（接近纯白）- 降低阈值
+        boolean pureWhiteText = brightness > 150 && stdDev < 40 && Math.min(Math.min(r, g), b) > 120;
+
+        // 2. 中等亮度白字（稍微偏灰的白字）- 大幅降低阈值
+        boolean grayishWhiteText = brightness > 100 && brightness <= 150 &&
+                                  stdDev < 60 && Math.min(Math.min(r, g), b) > 70 && notBlueBiased;
+
+        // 3. 相对白字（相对于蓝色背景较亮的像素）- 大幅降低阈值
+        boolean relativeWhiteText = brightness > 80 &&
+                                   Math.min(Math.min(r, g), b) > 50 &&
+                                   notBlueBiased &&
+                                   (r + g) > b; // 红绿分量之和大于蓝色分量
+
+        // 4. 浅色文字（更低的阈值）- 进一步降低
+        boolean lightText = brightness > 70 &&
+                           Math.max(Math.max(r, g), b) - Math.min(Math.min(r, g), b) < 80 && // 颜色相对均衡
+                           notBlueBiased &&
+                           (r + g + b) > 200; // 总亮度足够
+
+        // 5. 极低阈值检测（针对非常暗的白字）
+        boolean veryLightText = brightness > 60 &&
+                               (r > 50 || g > 50) && // 至少红色或绿色分量不太低
+                               notBlueBiased &&
+                               Math.abs(r - g) < 50; // 红绿分量相对接近
+
+        // 6. 任何相对较亮的非蓝色像素
+        boolean anyLighterPixel = brightness > 50 &&
+                                 (r + g) > b + 10 && // 红绿分量之和略大于蓝色
+                                 Math.max(Math.max(r, g), b) > 60; // 至少有一个分量不太低
+
+        return isChatWhiteText || pureWhiteText || grayishWhiteText || relativeWhiteText || lightText || veryLightText || anyLighterPixel;
+    }
+
+    /**
+     * 专门检测聊天蓝色背景上的白字文本
+     * 针对 #4696F6 (70, 150, 246) 背景优化
+     */
+    static boolean isWhiteTextOnChatBlueColor(int r, int g, int b) {
+        // 聊天应用中白字的特征：
+        // 1. 通常是纯白色或接近白色
+        // 2. RGB值相对均衡且较高
+        // 3. 与蓝色背景形成强烈对比
+
+        // 方法1：纯白色检测（最严格）
+        boolean pureWhite = r >= 240 && g >= 240 && b >= 240 &&
+                           Math.abs(r - g) <= 10 && Math.abs(g - b) <= 10 && Math.abs(r - b) <= 10;
+
+        // 方法2：接近白色检测（稍宽松）
+        boolean nearWhite = r >= 220 && g >= 220 && b >= 220 &&
+                           Math.abs(r - g) <= 20 && Math.abs(g - b) <= 20 && Math.abs(r - b) <= 20;
+
+        // 方法3：浅色文字检测（更宽松，包括浅灰色）
+        boolean lightGray = r >= 180 && g >= 180 && b >= 180 &&
+                           Math.abs(r - g) <= 30 && Math.abs(g - b) <= 30 && Math.abs(r - b) <= 30;
+
+        // 方法4：相对亮色检测（最宽松）
+        // 相对于蓝色背景 #4696F6 (70, 150, 246) 明显更亮的像素
+        boolean relativeBright = (r > 120 || g > 180 || (r > 100 && g > 160)) &&
+                                b < 200 && // 蓝色分量不能太高（避免误判蓝色）
+                                (r + g) > b; // 红绿之和大于蓝色
+
+        // 方法5：高对比度检测
+        // 与典型聊天蓝色形成高对比度的像素
+        int contrastWithChatBlue = Math.abs(r - 70) + Math.abs(g - 150) + Math.abs(b - 246);
+        boolean highContrast = contrastWithChatBlue > 300 && // 与聊天蓝色差异很大
+                              (r > 100 || g > 100) && // 至少有一个分量较高
+                              b < Math.max(r, g) + 50; // 蓝色分量不占绝对优势
+
+        // 方法6：极度宽松检测（针对任何可能的白字）
+        boolean veryLoose = (r > 80 || g > 80) && // 至少红色或绿色分量不太低
+                           b < r + g && // 蓝色分量小于红绿之和
+                           (r + g + b) > 180; // 总亮度足够
+
+        return pureWhite || nearWhite || lightGray || relativeBright || highContrast || veryLoose;
+    }
+}
@@ -0,0 +1,200 @@
+package cn.laobayou.siyubao.util;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 预处理调试图片输出
+ * 默认关闭；开启后按采样率抽取图片，由单独的后台线程写成PNG，不占用请求线程。
+ * 文件按环形槽位循环覆盖，数量和总大小都有上限，写入队列满时直接丢弃
+ */
+@Slf4j
+@Component
+public class DebugImageSink {
+
+    private static final String FILE_PREFIX = "debug_";
+    private static final String FILE_SUFFIX = ".png";
+
+    @Value("${ocr.debug-image.enabled:false}")
+    private boolean enabled;
+
+    @Value("${ocr.debug-image.sample-rate:0.01}")
+    private double sampleRate;
+
+    @Value("${ocr.debug-image.directory:./debug-images}")
+    private String directory;
+
+    @Value("${ocr.debug-image.max-files:50}")
+    private int maxFiles;
+
+    @Value("${ocr.debug-image.max-bytes:104857600}")
+    private long maxBytes;
+
+    @Value("${ocr.debug-image.queue-size:4}")
+    private int queueSize;
+
+    private ThreadPoolExecutor writer;
+    private File outputDirectory;
+
+    // 环形槽位，只在写入线程中访问
+    private File[] slotFiles;
+    private long[] slotSizes;
+    private long nextSequence;
+    private long totalBytes;
+
+    // 统计信息
+    private final AtomicLong writtenCount = new AtomicLong(0);
+    private final AtomicLong droppedCount = new AtomicLong(0);
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            log.info("预处理调试图片输出未开启");
+            return;
+        }
+        outputDirectory = new File(directory);
+        if (!outputDirectory.isDirectory() && !outputDirectory.mkdirs()) {
+            log.warn("无法创建调试图片目录: {}，调试图片输出已关闭", outputDirectory.getAbsolutePath());
+            enabled = false;
+            return;
+        }
+        removeStaleFiles();
+
+        slotFiles = new File[Math.max(1, maxFiles)];
+        slotSizes = new long[slotFiles.length];
+        writer = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueSize)),
+                r -> {
+                    Thread t = new Thread(r, "Debug-Image-Writer");
+                    t.setDaemon(true);
+                    return t;
+                },
+                (r, executor) -> droppedCount.incrementAndGet());
+
+        log.info("预处理调试图片输出已开启: 目录={}, 采样率={}, 最多{}个文件, 总大小上限{}字节",
+                outputDirectory.getAbsolutePath(), sampleRate, slotFiles.length, maxBytes);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (writer != null) {
+            writer.shutdown();
+            try {
+                if (!writer.awaitTermination(5, TimeUnit.SECONDS)) {
+                    writer.shutdownNow();
+                }
+            } catch (InterruptedException e) {
+                writer.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * 是否开启
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 按采样率提交一张调试图片，立即返回
+     * 调用方提交后不能再修改图片内容
+     * @param tag 图片标签（如预处理类型），用于文件名
+     * @param image 预处理后的图片
+     */
+    public void submit(String tag, BufferedImage image) {
+        if (!enabled || image == null) {
+            return;
+        }
+        if (sampleRate < 1.0 && ThreadLocalRandom.current().nextDouble() >= sampleRate) {
+            return;
+        }
+        writer.execute(() -> write(tag, image));
+    }
+
+    /**
+     * 获取统计信息
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("sampleRate", sampleRate);
+        stats.put("writtenCount", writtenCount.get());
+        stats.put("droppedCount", droppedCount.get());
+        return stats;
+    }
+
+    /**
+     * 写入下一个槽位，覆盖该槽位上最旧的文件，超出总大小上限时继续删除最旧的文件
+     */
+    private void write(String tag, BufferedImage image) {
+        int slot = (int) (nextSequence % slotFiles.length);
+        deleteSlot(slot);
+
+        File file = new File(outputDirectory, FILE_PREFIX + tag + "_" + System.currentTimeMillis() + FILE_SUFFIX);
+        try {
+            ImageIO.write(image, "PNG", file);
+        } catch (Exception e) {
+            log.warn("保存调试图片失败: {}", e.getMessage());
+            file.delete();
+            return;
+        }
+
+        slotFiles[slot] = file;
+        slotSizes[slot] = file.length();
+        totalBytes += slotSizes[slot];
+        nextSequence++;
+        writtenCount.incrementAndGet();
+
+        // 从最旧的槽位开始删除，直到总大小不超过上限（保留刚写入的文件）
+        for (int i = 1; i < slotFiles.length && totalBytes > maxBytes; i++) {
+            deleteSlot((slot + i) % slotFiles.length);
+        }
+        log.debug("调试：{}预处理后的图片已保存到: {}", tag, file.getAbsolutePath());
+    }
+
+    private void deleteSlot(int slot) {
+        File file = slotFiles[slot];
+        if (file == null) {
+            return;
+        }
+        if (!file.delete() && file.exists()) {
+            log.warn("删除调试图片失败: {}", file.getAbsolutePath());
+        }
+        totalBytes -= slotSizes[slot];
+        slotFiles[slot] = null;
+        slotSizes[slot] = 0;
+    }
+
+    /**
+     * 启动时清理上次运行留下的调试图片，保证文件数和总大小从零开始计算
+     */
+    private void removeStaleFiles() {
+        File[] staleFiles = outputDirectory.listFiles(
+                (dir, name) -> name.startsWith(FILE_PREFIX) && name.endsWith(FILE_SUFFIX));
+        if (staleFiles == null) {
+            return;
+        }
+        for (File file : staleFiles) {
+            file.delete();
+        }
+        if (staleFiles.length > 0) {
+            log.info("已清理{}个旧的调试图片", staleFiles.length);
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package cn.laobayou.siyubao.util;
+
+import cn.laobayou.siyubao.exception.InvalidImageException;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+
+/**
+ * 解码后的图像
+ * 同一份图像字节只解码一次，背景检测、预处理和尺寸校验共享同一份像素数据
+ *
+ * 解码前先从ImageReader读取文件头中的宽高：像素总数超过上限的图片直接拒绝，
+ * 边长超过上限的图片按整数步长隔行隔列采样解码，只分配目标尺寸的像素，
+ * 无论上传什么图片，解码占用的内存都有上限
+ */
+public class DecodedImage {
+
+    /**
+     * 默认解码后的最大边长
+     */
+    public static final int DEFAULT_MAX_DIMENSION = 4000;
+
+    /**
+     * 默认允许的原始图片最大像素数（超过则不解码直接拒绝）
+     */
+    public static final long DEFAULT_MAX_SOURCE_PIXELS = 100_000_000L;
+
+    private final BufferedImage image;
+    private final String formatName;
+    private final int sourceLength;
+    private final int sourceWidth;
+    private final int sourceHeight;
+
+    /**
+     * 按需提取的RGB像素（行优先，0xRRGGBB），提取后缓存复用
+     */
+    private int[] rgbPixels;
+
+    /**
+     * 本次请求的缓冲区租约，像素数组和各预处理阶段的临时缓冲区都从这里借出
+     */
+    private RasterBufferPool.Lease buffers = RasterBufferPool.unpooled();
+
+    private DecodedImage(BufferedImage image, String formatName, int sourceLength, int sourceWidth, int sourceHeight) {
+        this.image = image;
+        this.formatName = formatName;
+        this.sourceLength = sourceLength;
+        this.sourceWidth = sourceWidth;
+        this.sourceHeight = sourceHeight;
+    }
+
+    /**
+     * 使用默认尺寸限制解码图像字节数组
+     * @param imageBytes 原始图像字节数组
+     * @return 解码后的图像，没有可用的解码器时返回null（与ImageIO.read行为一致）
+     * @throws IOException 图像数据损坏或尺寸超出限制时抛出
+     */
+    public static DecodedImage read(byte[] imageBytes) throws IOException {
+        return read(imageBytes, DEFAULT_MAX_DIMENSION, DEFAULT_MAX_SOURCE_PIXELS);
+    }
+
+    /**
+     * 解码图像字节数组，解码前先读取文件头校验尺寸
+     * @param imageBytes 原始图像字节数组
+     * @param maxDimension 解码后的最大边长，原图超过时按整数步长采样解码
+     * @param maxSourcePixels 原图允许的最大像素数，超过时不解码直接拒绝
+     * @return 解码后的图像，没有可用的解码器时返回null（与ImageIO.read行为一致）
+     * @throws IOException 图像数据损坏或尺寸超出限制时抛出
+     */
+    public static DecodedImage read(byte[] imageBytes, int maxDimension, long maxSourcePixels) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(new ByteArrayInputStream(imageBytes))) {
+            if (input == null) {
+                return null;
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+
+                // 只读取文件头，此时还没有分配像素内存
+                int sourceWidth = reader.getWidth(0);
+                int sourceHeight = reader.getHeight(0);
+                if (sourceWidth <= 0 || sourceHeight <= 0) {
+                    throw new InvalidImageException("无法读取图片尺寸");
+                }
+                if ((long) sourceWidth * sourceHeight > maxSourcePixels) {
+                    throw new InvalidImageException(String.format("图片尺寸过大(%dx%d)，请上传小于%d像素的图片",
+                            sourceWidth, sourceHeight, maxSourcePixels));
+                }
+
+                ImageReadParam param = reader.getDefaultReadParam();
+                int step = subsamplingStep(sourceWidth, sourceHeight, maxDimension);
+                if (step > 1) {
+                    param.setSourceSubsampling(step, step, 0, 0);
+                }
+                BufferedImage image = reader.read(0, param);
+                return new DecodedImage(image, reader.getFormatName(), imageBytes.length, sourceWidth, sourceHeight);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * 包装已经在内存中的图像
+     */
+    public static DecodedImage of(BufferedImage image) {
+        return new DecodedImage(image, null, 0, image.getWidth(), image.getHeight());
+    }
+
+    /**
+     * 计算使两边都不超过maxDimension的最小整数采样步长
+     */
+    static int subsamplingStep(int width, int height, int maxDimension) {
+        int longest = Math.max(width, height);
+        if (maxDimension <= 0 || longest <= maxDimension) {
+            return 1;
+        }
+        return (longest + maxDimension - 1) / maxDimension;
+    }
+
+    public BufferedImage getImage() {
+        return image;
+    }
+
+    public int getWidth() {
+        return image.getWidth();
+    }
+
+    public int getHeight() {
+        return image.getHeight();
+    }
+
+    /**
+     * 文件头中的原始宽度
+     */
+    public int getSourceWidth() {
+        return sourceWidth;
+    }
+
+    /**
+     * 文件头中的原始高度
+     */
+    public int getSourceHeight() {
+        return sourceHeight;
+    }
+
+    /**
+     * 是否经过采样解码（解码后的像素与原始字节不再一致）
+     */
+    public boolean isSubsampled() {
+        return image.getWidth() != sourceWidth || image.getHeight() != sourceHeight;
+    }
+
+    /**
+     * 原始格式名称（如png、jpeg），包装内存图像时为null
+     */
+    public String getFormatName() {
+        return formatName;
+    }
+
+    /**
+     * 原始字节长度
+     */
+    public int getSourceLength() {
+        return sourceLength;
+    }
+
+    /**
+     * 使用请求级的缓冲区租约，需要在提取像素之前设置
+     * 租约关闭后本图像的像素数组和基于它预处理出的结果都不能再使用
+     */
+    public synchronized void useBuffers(RasterBufferPool.Lease buffers) {
+        this.buffers = buffers;
+    }
+
+    /**
+     * 本次请求的缓冲区租约，未设置时直接分配
+     */
+    public RasterBufferPool.Lease getBuffers() {
+        return buffers;
+    }
+
+    /**
+     * 获取RGB像素数组，首次调用时一次性批量提取，之后直接复用
+     * 调用方只能读取，不能修改返回的数组；数组从缓冲区池借出，长度可能大于width*height，只有前width*height个元素有效
+     */
+    public synchronized int[] getRgbPixels() {
+        if (rgbPixels == null) {
+            int width = image.getWidth();
+            int height = image.getHeight();
+            rgbPixels = image.getRGB(0, 0, width, height, buffers.ints(width * height), 0, width);
+        }
+        return rgbPixels;
+    }
+
+    /**
+     * 将图像编码为PNG字节数组
+     */
+    public static byte[] encodePng(BufferedImage image) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ImageIO.write(image, "PNG", baos);
+        return baos.toByteArray();
+    }
+}
@@ -0,0 +1,79 @@
+package cn.laobayou.siyubao.util;
+
+import java.awt.Transparency;
+import java.awt.color.ColorSpace;
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+
+/**
+ * 8位灰度图像（无符号byte，行优先，每像素1字节）
+ * 数组可以来自缓冲区池，长度可能大于width*height，只使用前width*height个元素
+ */
+public final class GrayRaster implements ImageRaster {
+
+    private final int width;
+    private final int height;
+    private final byte[] data;
+
+    public GrayRaster(int width, int height) {
+        this(width, height, new byte[width * height]);
+    }
+
+    public GrayRaster(int width, int height, byte[] data) {
+        if (data.length < width * height) {
+            throw new IllegalArgumentException("灰度数据长度小于图像尺寸");
+        }
+        this.width = width;
+        this.height = height;
+        this.data = data;
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * 灰度数据，直接返回内部数组
+     */
+    public byte[] getData() {
+        return data;
+    }
+
+    @Override
+    public int getByteSize() {
+        return width * height;
+    }
+
+    /**
+     * 包装为TYPE_BYTE_GRAY图像（不复制数据）
+     * 注意getRGB会按灰度色彩空间做转换，需要原始灰度值时应读取Raster
+     */
+    @Override
+    public BufferedImage toBufferedImage() {
+        ComponentColorModel colorModel = new ComponentColorModel(ColorSpace.getInstance(ColorSpace.CS_GRAY),
+                new int[]{8}, false, true, Transparency.OPAQUE, DataBuffer.TYPE_BYTE);
+        WritableRaster raster = Raster.createInterleavedRaster(new DataBufferByte(data, width * height),
+                width, height, width, 1, new int[]{0}, null);
+        return new BufferedImage(colorModel, raster, false, null);
+    }
+
+    @Override
+    public int[] toRgbPixels() {
+        int[] pixels = new int[width * height];
+        for (int i = 0; i < pixels.length; i++) {
+            int gray = data[i] & 0xFF;
+            pixels[i] = (gray << 16) | (gray << 8) | gray;
+        }
+        return pixels;
+    }
+}
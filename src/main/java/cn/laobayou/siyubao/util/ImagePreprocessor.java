@@ -1,24 +1,109 @@
 package cn.laobayou.siyubao.util;
 
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
-import javax.imageio.ImageIO;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.awt.*;
 import java.awt.image.BufferedImage;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.File;
 import java.io.IOException;
 
 /**
  * 图像预处理工具类
  * 专门优化绿色背景文字的OCR识别效果
+ *
+ * 逐像素和邻域处理阶段按行带在ForkJoin线程池中并行执行，输出与顺序执行完全一致
  */
 @Slf4j
 @Component
 public class ImagePreprocessor {
 
+    private static final int WHITE = 0xFFFFFF;
+    private static final int BLACK = 0x000000;
+    private static final int RGB_MASK = 0xFFFFFF;
+
+    /**
+     * 背景画像采样网格的边长上限，每个方向最多采样这么多个点
+     */
+    private static final int PROFILE_GRID_SIZE = 256;
+
+    /**
+     * 聊天背景类型和彩色背景沿用原检测方法的20x20采样网格，判定结果与原来一致
+     */
+    private static final int CHAT_GRID_SIZE = 20;
+
+    /**
+     * 按文字行高缩小时，缩小后的宽度不低于该值
+     */
+    private static final int MIN_SCALED_WIDTH = 480;
+
+    /**
+     * 缩放配置的默认值，直接new出来的预处理器（基准测试等）也使用这些值
+     */
+    public static final int DEFAULT_TARGET_TEXT_HEIGHT = 24;
+    public static final double DEFAULT_MIN_SCALE = 0.25;
+    public static final double DEFAULT_MAX_SCALE = 1.0;
+
+    /**
+     * 预处理并行度，0表示使用CPU核数
+     */
+    @Value("${ocr.preprocess.parallelism:0}")
+    private int parallelism;
+
+    /**
+     * 像素数达到该值的图像才按行带并行处理
+     */
+    @Value("${ocr.preprocess.parallel-min-pixels:250000}")
+    private long parallelMinPixels;
+
+    /**
+     * OCR期望的文字行高（像素），按估计的行高缩放到该高度
+     */
+    @Value("${ocr.preprocess.target-text-height:" + DEFAULT_TARGET_TEXT_HEIGHT + "}")
+    private int targetTextHeight = DEFAULT_TARGET_TEXT_HEIGHT;
+
+    /**
+     * 按文字行高缩放时允许的最小、最大比例
+     */
+    @Value("${ocr.preprocess.min-scale:" + DEFAULT_MIN_SCALE + "}")
+    private double minScale = DEFAULT_MIN_SCALE;
+
+    @Value("${ocr.preprocess.max-scale:" + DEFAULT_MAX_SCALE + "}")
+    private double maxScale = DEFAULT_MAX_SCALE;
+
+    /**
+     * OCR引擎接受的最大边长，与解码和识别前的尺寸校验使用同一配置，放大后不能超过
+     */
+    @Value("${ocr.intake.max-dimension:" + DecodedImage.DEFAULT_MAX_DIMENSION + "}")
+    private int maxImageDimension = DecodedImage.DEFAULT_MAX_DIMENSION;
+
+    @Autowired
+    private DebugImageSink debugImageSink;
+
+    /**
+     * 行带执行器，未经Spring初始化时（直接new）顺序执行
+     */
+    private RowBandExecutor rowBands = RowBandExecutor.sequential();
+
+    @PostConstruct
+    public void init() {
+        int threads = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        rowBands = RowBandExecutor.create(threads, parallelMinPixels);
+        log.info("图像预处理并行度: {}, 并行处理的最小像素数: {}", rowBands.getParallelism(), parallelMinPixels);
+        
+        long start = System.currentTimeMillis();
+        ColorClassifier.initialize();
+        log.info("颜色分类查找表构建完成，耗时: {}ms", System.currentTimeMillis() - start);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        rowBands.shutdown();
+    }
+
     /**
      * 预处理图像以提高绿色背景文字的识别率
      * @param imageBytes 原始图像字节数组
@@ -26,40 +111,38 @@ public class ImagePreprocessor {
      * @throws IOException IO异常
      */
     public byte[] preprocessForGreenBackground(byte[] imageBytes) throws IOException {
+        return DecodedImage.encodePng(preprocessForGreenBackground(readImage(imageBytes)));
+    }
+
+    /**
+     * 预处理已解码的图像以提高绿色背景文字的识别率
+     * @param decodedImage 已解码的图像
+     * @return 预处理后的图像
+     */
+    public BufferedImage preprocessForGreenBackground(DecodedImage decodedImage) {
         log.debug("开始预处理图像以优化绿色背景文字识别");
         
-        // 读取原始图像
-        BufferedImage originalImage = ImageIO.read(new ByteArrayInputStream(imageBytes));
-        if (originalImage == null) {
-            throw new IOException("无法读取图像数据");
-        }
+        int width = decodedImage.getWidth();
+        int height = decodedImage.getHeight();
         
-        log.debug("原始图像尺寸: {}x{}", originalImage.getWidth(), originalImage.getHeight());
+        log.debug("原始图像尺寸: {}x{}", width, height);
         
         // 应用专门的绿色背景处理
-        BufferedImage processedImage = originalImage;
+        int[] pixels = decodedImage.getRgbPixels();
         
         // 1. 绿色背景文字增强（最关键的步骤）
-        processedImage = enhanceGreenBackgroundText(processedImage);
+        GrayRaster enhanced = enhanceGreenBackgroundText(pixels, width, height, decodedImage.getBuffers());
         
         // 2. 轻微的形态学操作来清理噪点
-        processedImage = applyLightMorphology(processedImage);
-        
-        // 转换为字节数组
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        ImageIO.write(processedImage, "PNG", baos);
-        
-        // 调试：保存预处理后的图片
-        try {
-            File debugFile = new File("debug_processed_" + System.currentTimeMillis() + ".png");
-            ImageIO.write(processedImage, "PNG", debugFile);
-            log.info("调试：预处理后的图片已保存到: {}", debugFile.getAbsolutePath());
-        } catch (Exception e) {
-            log.warn("保存调试图片失败: {}", e.getMessage());
-        }
+        GrayRaster cleaned = applyLightMorphology(enhanced);
+        
+        BufferedImage processedImage = cleaned.toBufferedImage();
+        
+        // 调试：按采样率异步保存预处理后的图片
+        saveDebugImage("green", processedImage);
         
         log.debug("图像预处理完成");
-        return baos.toByteArray();
+        return processedImage;
     }
 
 
@@ -71,160 +154,126 @@ public class ImagePreprocessor {
      * @throws IOException IO异常
      */
     public byte[] preprocessForChatBackground(byte[] imageBytes) throws IOException {
+        return DecodedImage.encodePng(preprocessForChatBackground(readImage(imageBytes)));
+    }
+
+    /**
+     * 智能预处理已解码的图像，自动检测背景类型并应用相应的处理算法
+     * @param decodedImage 已解码的图像
+     * @return 预处理后的图像
+     */
+    public BufferedImage preprocessForChatBackground(DecodedImage decodedImage) {
         log.debug("开始智能预处理图像，自动检测背景类型");
         
-        // 读取原始图像
-        BufferedImage originalImage = ImageIO.read(new ByteArrayInputStream(imageBytes));
-        if (originalImage == null) {
-            throw new IOException("无法读取图像数据");
-        }
+        int width = decodedImage.getWidth();
+        int height = decodedImage.getHeight();
+        int[] originalPixels = decodedImage.getRgbPixels();
         
         // 检测背景类型
-        String backgroundType = detectBackgroundType(originalImage);
+        String backgroundType = profileBackground(decodedImage).getChatBackgroundType();
         log.info("检测到背景类型: {}", backgroundType);
         
-        BufferedImage processedImage;
+        // 绿色背景处理输出灰度图，其余输出二值图；之后都做轻微的形态学操作来清理噪点
+        ImageRaster processed;
         
         switch (backgroundType) {
             case "blue":
                 log.debug("应用蓝色背景处理算法");
-                processedImage = enhanceBlueBackgroundText(originalImage);
+                processed = applyLightMorphology(enhanceBlueBackgroundText(originalPixels, width, height, decodedImage.getBuffers()));
                 break;
             case "green":
                 log.debug("应用绿色背景处理算法");
-                processedImage = enhanceGreenBackgroundText(originalImage);
+                processed = applyLightMorphology(enhanceGreenBackgroundText(originalPixels, width, height, decodedImage.getBuffers()));
                 break;
             default:
                 log.debug("应用通用处理算法");
-                processedImage = enhanceGeneralText(originalImage);
+                processed = applyLightMorphology(enhanceGeneralText(originalPixels, width, height, decodedImage.getBuffers()));
                 break;
         }
         
-        // 轻微的形态学操作来清理噪点
-        processedImage = applyLightMorphology(processedImage);
-        
-        // 转换为字节数组
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        ImageIO.write(processedImage, "PNG", baos);
-        
-        // 调试：保存预处理后的图片
-        try {
-            String debugFileName = "debug_" + backgroundType + "_processed_" + System.currentTimeMillis() + ".png";
-            File debugFile = new File(debugFileName);
-            ImageIO.write(processedImage, "PNG", debugFile);
-            log.info("调试：{}背景预处理后的图片已保存到: {}", backgroundType, debugFile.getAbsolutePath());
-        } catch (Exception e) {
-            log.warn("保存调试图片失败: {}", e.getMessage());
-        }
+        BufferedImage processedImage = processed.toBufferedImage();
+        
+        // 调试：按采样率异步保存预处理后的图片
+        saveDebugImage("chat_" + backgroundType, processedImage);
         
         log.debug("智能图像预处理完成");
-        return baos.toByteArray();
+        return processedImage;
     }
     
     /**
      * 专门处理绿色背景，增强文字对比度（优化版本，保护中文字符）
+     * 后续形态学操作以红色通道作为灰度值，这里直接输出处理后像素的红色通道
      */
-    private BufferedImage enhanceGreenBackgroundText(BufferedImage image) {
+    private GrayRaster enhanceGreenBackgroundText(int[] src, int width, int height, RasterBufferPool.Lease buffers) {
         log.debug("应用优化的绿色背景文字增强算法，保护中文字符");
         
-        int width = image.getWidth();
-        int height = image.getHeight();
-        BufferedImage result = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
-        
-        for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++) {
-                Color pixel = new Color(image.getRGB(x, y));
-                int r = pixel.getRed();
-                int g = pixel.getGreen();
-                int b = pixel.getBlue();
-                
-                // 计算灰度值
-                int gray = (int) (0.299 * r + 0.587 * g + 0.114 * b);
-                
-                // 非常保守的绿色背景检测，只处理明显的绿色背景
-                boolean isObviousGreenBg = isObviousGreenBackground(r, g, b);
-                
-                if (isObviousGreenBg) {
-                    // 明显的绿色背景：转换为白色
-                    result.setRGB(x, y, Color.WHITE.getRGB());
-                } else {
-                    // 对于非绿色背景的像素，使用自适应阈值保护中文字符
-                    int threshold = calculateAdaptiveThreshold(image, x, y, 15);
+        byte[] result = new byte[width * height];
+        byte[] grayPlane = toGrayPlane(src, width, height, buffers);
+        IntegralImage graySums = IntegralImage.of(grayPlane, width, height, rowBands, buffers);
+        IntegralImage darkCounts = IntegralImage.ofBelow(grayPlane, width, height, 128, rowBands, buffers);
+        
+        rowBands.forEachBand(height, width, (startRow, endRow) -> {
+            for (int y = startRow; y < endRow; y++) {
+                int row = y * width;
+                for (int x = 0; x < width; x++) {
+                    int rgb = src[row + x];
+                    int r = (rgb >> 16) & 0xFF;
                     
-                    if (gray < threshold) {
-                        // 较暗的像素，很可能是文字，保持黑色
-                        result.setRGB(x, y, Color.BLACK.getRGB());
-                    } else if (gray > 240) {
-                        // 非常亮的颜色，保持白色
-                        result.setRGB(x, y, Color.WHITE.getRGB());
+                    // 计算灰度值
+                    int gray = grayPlane[row + x] & 0xFF;
+                    
+                    // 非常保守的绿色背景检测，只处理明显的绿色背景
+                    boolean isObviousGreenBg = ColorClassifier.isObviousGreenBackground(rgb);
+                    
+                    if (isObviousGreenBg) {
+                        // 明显的绿色背景：转换为白色
+                        result[row + x] = (byte) 0xFF;
                     } else {
-                        // 中等亮度的像素，使用更温和的处理
-                        // 检查是否为中文字符区域（通过周围像素判断）
-                        if (isLikelyChineseCharacterArea(image, x, y)) {
-                            // 中文字符区域，保持原色特征
-                            result.setRGB(x, y, image.getRGB(x, y));
+                        // 对于非绿色背景的像素，使用自适应阈值保护中文字符
+                        int threshold = calculateAdaptiveThreshold(graySums, x, y, 15);
+                        
+                        if (gray < threshold) {
+                            // 较暗的像素，很可能是文字，保持黑色
+                            result[row + x] = 0;
+                        } else if (gray > 240) {
+                            // 非常亮的颜色，保持白色
+                            result[row + x] = (byte) 0xFF;
                         } else {
-                            // 非中文字符区域，轻微增强对比度
-                            int newR, newG, newB;
-                            
-                            if (gray < 128) {
-                                // 偏暗的像素，轻微变暗
-                                double factor = 0.9; // 更温和的处理
-                                newR = (int) Math.max(0, r * factor);
-                                newG = (int) Math.max(0, g * factor);
-                                newB = (int) Math.max(0, b * factor);
+                            // 中等亮度的像素，使用更温和的处理
+                            // 检查是否为中文字符区域（通过周围像素判断）
+                            if (isLikelyChineseCharacterArea(darkCounts, x, y)) {
+                                // 中文字符区域，保持原色特征
+                                result[row + x] = (byte) r;
                             } else {
-                                // 偏亮的像素，轻微变亮
-                                double factor = 1.1; // 更温和的处理
-                                newR = (int) Math.min(255, r * factor);
-                                newG = (int) Math.min(255, g * factor);
-                                newB = (int) Math.min(255, b * factor);
+                                // 非中文字符区域，轻微增强对比度
+                                int newR;
+                                
+                                if (gray < 128) {
+                                    // 偏暗的像素，轻微变暗
+                                    double factor = 0.9; // 更温和的处理
+                                    newR = (int) Math.max(0, r * factor);
+                                } else {
+                                    // 偏亮的像素，轻微变亮
+                                    double factor = 1.1; // 更温和的处理
+                                    newR = (int) Math.min(255, r * factor);
+                                }
+                                
+                                result[row + x] = (byte) newR;
                             }
-                            
-                            result.setRGB(x, y, new Color(newR, newG, newB).getRGB());
                         }
                     }
                 }
             }
-        }
-        
-        return result;
-    }
-    
-    /**
-     * 增强图像对比度（专门用于蓝底白字）
-     */
-    private BufferedImage enhanceContrastForBlueText(BufferedImage image, float factor) {
-        int width = image.getWidth();
-        int height = image.getHeight();
-        BufferedImage result = new BufferedImage(width, height, image.getType());
-        
-        for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++) {
-                int rgb = image.getRGB(x, y);
-                int r = (rgb >> 16) & 0xFF;
-                int g = (rgb >> 8) & 0xFF;
-                int b = rgb & 0xFF;
-                
-                // 应用对比度增强
-                r = Math.min(255, Math.max(0, (int)((r - 128) * factor + 128)));
-                g = Math.min(255, Math.max(0, (int)((g - 128) * factor + 128)));
-                b = Math.min(255, Math.max(0, (int)((b - 128) * factor + 128)));
-                
-                result.setRGB(x, y, (r << 16) | (g << 8) | b);
-            }
-        }
+        });
         
-        return result;
+        return new GrayRaster(width, height, result);
     }
     
     /**
      * 边缘锐化（专门用于提高文字清晰度）
      */
-    private BufferedImage sharpenTextEdges(BufferedImage image) {
-        int width = image.getWidth();
-        int height = image.getHeight();
-        BufferedImage result = new BufferedImage(width, height, image.getType());
+    private int[] sharpenTextEdges(int[] src, int width, int height) {
+        int[] result = new int[width * height];
         
         // 锐化卷积核
         float[] sharpenKernel = {
@@ -233,158 +282,282 @@ public class ImagePreprocessor {
             0, -1, 0
         };
         
-        for (int y = 1; y < height - 1; y++) {
-            for (int x = 1; x < width - 1; x++) {
-                float sum = 0;
-                int index = 0;
+        rowBands.forEachBand(height, width, (startRow, endRow) -> {
+            for (int y = startRow; y < endRow; y++) {
+                int rowStart = y * width;
                 
-                for (int ky = -1; ky <= 1; ky++) {
-                    for (int kx = -1; kx <= 1; kx++) {
-                        int pixel = image.getRGB(x + kx, y + ky);
-                        int gray = (pixel >> 16) & 0xFF; // 取红色通道作为灰度值
-                        sum += gray * sharpenKernel[index++];
+                // 处理边界像素
+                if (y == 0 || y == height - 1) {
+                    for (int x = 0; x < width; x++) {
+                        result[rowStart + x] = src[rowStart + x] & RGB_MASK;
                     }
+                    continue;
                 }
+                result[rowStart] = src[rowStart] & RGB_MASK;
+                result[rowStart + width - 1] = src[rowStart + width - 1] & RGB_MASK;
                 
-                int newValue = Math.min(255, Math.max(0, (int)sum));
-                result.setRGB(x, y, (newValue << 16) | (newValue << 8) | newValue);
-            }
-        }
-        
-        // 处理边界像素
-        for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++) {
-                if (x == 0 || x == width - 1 || y == 0 || y == height - 1) {
-                    result.setRGB(x, y, image.getRGB(x, y));
+                for (int x = 1; x < width - 1; x++) {
+                    float sum = 0;
+                    int index = 0;
+                    
+                    for (int ky = -1; ky <= 1; ky++) {
+                        int row = (y + ky) * width;
+                        for (int kx = -1; kx <= 1; kx++) {
+                            int gray = (src[row + x + kx] >> 16) & 0xFF; // 取红色通道作为灰度值
+                            sum += gray * sharpenKernel[index++];
+                        }
+                    }
+                    
+                    int newValue = Math.min(255, Math.max(0, (int)sum));
+                    result[rowStart + x] = (newValue << 16) | (newValue << 8) | newValue;
                 }
             }
-        }
+        });
         
         return result;
     }
-    
+
+    /**
+     * 流水线阶段：按文字行高缩放到适合OCR的尺寸，不需要缩放时不修改图像
+     */
+    public void scaleStage(PreprocessContext context) {
+        BufferedImage current = context.toBufferedImage();
+        BufferedImage scaled = scaleImageForOCR(current, context.getRgbPixels(), context.getBuffers());
+        if (scaled != current) {
+            context.setRaster(RgbRaster.of(scaled));
+        }
+    }
+
     /**
-     * 应用形态学操作（专门用于清理噪点）
+     * 流水线阶段：自适应阈值二值化
      */
-    private BufferedImage applyMorphologyOperation(BufferedImage image, int kernelSize) {
-        // 先腐蚀后膨胀（开运算）来去除噪点
-        BufferedImage eroded = applyErosion(image, kernelSize);
-        return applyDilation(eroded, kernelSize);
+    public void thresholdStage(PreprocessContext context) {
+        int width = context.getWidth();
+        int height = context.getHeight();
+        context.setRaster(new RgbRaster(width, height, applyAdaptiveThreshold(context.getRgbPixels(), width, height)));
     }
 
     /**
-     * 检测图像的背景类型
+     * 流水线阶段：轻量级闭运算，RGB图像以红色通道作为灰度值
      */
-    private String detectBackgroundType(BufferedImage image) {
-        int width = image.getWidth();
-        int height = image.getHeight();
+    public void morphologyStage(PreprocessContext context) {
+        ImageRaster raster = context.getRaster();
+        if (raster instanceof BinaryRaster) {
+            context.setRaster(applyLightMorphology((BinaryRaster) raster));
+        } else if (raster instanceof GrayRaster) {
+            context.setRaster(applyLightMorphology((GrayRaster) raster));
+        } else {
+            int width = raster.getWidth();
+            int height = raster.getHeight();
+            byte[] redPlane = toRedPlane(raster.toRgbPixels(), width, height);
+            context.setRaster(applyLightMorphology(new GrayRaster(width, height, redPlane)));
+        }
+    }
+
+    /**
+     * 流水线阶段：边缘锐化
+     */
+    public void sharpenStage(PreprocessContext context) {
+        int width = context.getWidth();
+        int height = context.getHeight();
+        context.setRaster(new RgbRaster(width, height, sharpenTextEdges(context.getRgbPixels(), width, height)));
+    }
+
+    /**
+     * 流水线阶段：绿色背景文字增强，输出灰度图
+     */
+    public void greenEnhanceStage(PreprocessContext context) {
+        context.setRaster(enhanceGreenBackgroundText(context.getRgbPixels(), context.getWidth(), context.getHeight(),
+                context.getBuffers()));
+    }
+
+    /**
+     * 流水线阶段：蓝色背景文字增强，输出二值图
+     */
+    public void blueEnhanceStage(PreprocessContext context) {
+        context.setRaster(enhanceBlueBackgroundText(context.getRgbPixels(), context.getWidth(), context.getHeight(),
+                context.getBuffers()));
+    }
+
+    /**
+     * 流水线阶段：彩色背景文字增强，输出二值图
+     */
+    public void coloredEnhanceStage(PreprocessContext context) {
+        context.setRaster(enhanceColoredBackgroundText(context.getRgbPixels(), context.getWidth(), context.getHeight()));
+    }
+
+    /**
+     * 流水线阶段：通用文字增强，输出二值图
+     */
+    public void generalEnhanceStage(PreprocessContext context) {
+        context.setRaster(enhanceGeneralText(context.getRgbPixels(), context.getWidth(), context.getHeight(),
+                context.getBuffers()));
+    }
+
+    /**
+     * 一次跨步采样建立背景画像
+     * 同时统计蓝色、绿色、彩色背景占比、主色直方图（每通道4位量化）和灰度分布
+     * @param decodedImage 已解码的图像
+     * @return 背景画像
+     */
+    public BackgroundProfile profileBackground(DecodedImage decodedImage) {
+        int width = decodedImage.getWidth();
+        int height = decodedImage.getHeight();
+        int[] pixels = decodedImage.getRgbPixels();
         
-        int bluePixels = 0;
-        int greenPixels = 0;
-        int totalSamples = 0;
+        int stepX = Math.max(1, width / PROFILE_GRID_SIZE);
+        int stepY = Math.max(1, height / PROFILE_GRID_SIZE);
         
-        // 采样检测背景类型
-        int stepX = Math.max(1, width / 20);
-        int stepY = Math.max(1, height / 20);
+        int sampleCount = 0;
+        int blueCount = 0;
+        int greenCount = 0;
+        int obviousGreenCount = 0;
+        int[] colorHistogram = new int[4096];
+        int[] grayHistogram = new int[256];
         
         for (int y = 0; y < height; y += stepY) {
+            int row = y * width;
             for (int x = 0; x < width; x += stepX) {
-                int rgb = image.getRGB(x, y);
+                int rgb = pixels[row + x];
                 int r = (rgb >> 16) & 0xFF;
                 int g = (rgb >> 8) & 0xFF;
                 int b = rgb & 0xFF;
                 
-                if (isObviousBlueBackground(r, g, b)) {
-                    bluePixels++;
-                } else if (isObviousGreenBackground(r, g, b)) {
-                    greenPixels++;
+                if (ColorClassifier.isObviousBlueBackground(rgb)) {
+                    blueCount++;
+                }
+                if (ColorClassifier.isObviousGreenBackground(rgb)) {
+                    obviousGreenCount++;
                 }
-                totalSamples++;
+                if (ColorClassifier.isSmartGreenBackground(rgb)) {
+                    greenCount++;
+                }
+                
+                colorHistogram[((r >> 4) << 8) | ((g >> 4) << 4) | (b >> 4)]++;
+                grayHistogram[grayOf(r, g, b)]++;
+                sampleCount++;
             }
         }
         
-        double blueRatio = (double) bluePixels / totalSamples;
-        double greenRatio = (double) greenPixels / totalSamples;
-        
-        log.debug("背景检测结果 - 蓝色比例: {:.2f}, 绿色比例: {:.2f}", blueRatio, greenRatio);
+        // 聊天背景类型和彩色背景按原来的20x20网格判定，最多441个采样点
+        int chatStepX = Math.max(1, width / CHAT_GRID_SIZE);
+        int chatStepY = Math.max(1, height / CHAT_GRID_SIZE);
+        int chatSampleCount = 0;
+        int chatBlueCount = 0;
+        int chatGreenCount = 0;
+        int coloredCount = 0;
+        for (int y = 0; y < height; y += chatStepY) {
+            int row = y * width;
+            for (int x = 0; x < width; x += chatStepX) {
+                int rgb = pixels[row + x];
+                if (ColorClassifier.isObviousBlueBackground(rgb)) {
+                    chatBlueCount++;
+                } else if (ColorClassifier.isObviousGreenBackground(rgb)) {
+                    chatGreenCount++;
+                }
+                if (ColorClassifier.isColoredBackground(rgb)) {
+                    coloredCount++;
+                }
+                chatSampleCount++;
+            }
+        }
         
-        if (blueRatio > 0.15) {
-            return "blue";
-        } else if (greenRatio > 0.15) {
-            return "green";
-        } else {
-            return "general";
+        // 主色：出现最多的量化颜色，取区间中心
+        int dominantBin = 0;
+        for (int i = 1; i < colorHistogram.length; i++) {
+            if (colorHistogram[i] > colorHistogram[dominantBin]) {
+                dominantBin = i;
+            }
+        }
+        int dominantColor = (((dominantBin >> 8) << 4 | 8) << 16)
+                | ((((dominantBin >> 4) & 0xF) << 4 | 8) << 8)
+                | ((dominantBin & 0xF) << 4 | 8);
+        int backgroundLuminance = grayOf(dominantColor);
+        
+        // 对比度：背景灰度与灰度分布两端（1%/99%分位）的最大差值，文字通常只占很少的像素
+        int darkPercentile = grayPercentile(grayHistogram, sampleCount, 0.01);
+        int lightPercentile = grayPercentile(grayHistogram, sampleCount, 0.99);
+        int textContrast = Math.max(backgroundLuminance - darkPercentile, lightPercentile - backgroundLuminance);
+        
+        BackgroundProfile profile = new BackgroundProfile(sampleCount,
+                (double) blueCount / sampleCount,
+                (double) greenCount / sampleCount,
+                (double) obviousGreenCount / sampleCount,
+                (double) chatBlueCount / chatSampleCount,
+                (double) chatGreenCount / chatSampleCount,
+                (double) coloredCount / chatSampleCount,
+                dominantColor,
+                (double) colorHistogram[dominantBin] / sampleCount,
+                backgroundLuminance,
+                Math.max(0, textContrast));
+        log.debug("背景画像: {}", profile);
+        return profile;
+    }
+
+    /**
+     * 灰度直方图的分位数
+     */
+    private static int grayPercentile(int[] histogram, int total, double fraction) {
+        int target = (int) Math.ceil(total * fraction);
+        int accumulated = 0;
+        for (int gray = 0; gray < histogram.length; gray++) {
+            accumulated += histogram[gray];
+            if (accumulated >= Math.max(1, target)) {
+                return gray;
+            }
         }
+        return histogram.length - 1;
     }
 
     /**
      * 通用文字增强处理
      */
-    private BufferedImage enhanceGeneralText(BufferedImage image) {
+    private BinaryRaster enhanceGeneralText(int[] src, int width, int height, RasterBufferPool.Lease buffers) {
         log.debug("应用通用文字增强算法");
         
-        int width = image.getWidth();
-        int height = image.getHeight();
-        BufferedImage result = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        BinaryRaster result = new BinaryRaster(width, height);
+        byte[] grayPlane = toGrayPlane(src, width, height, buffers);
+        IntegralImage graySums = IntegralImage.of(grayPlane, width, height, rowBands, buffers);
         
-        for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++) {
-                int rgb = image.getRGB(x, y);
-                int r = (rgb >> 16) & 0xFF;
-                int g = (rgb >> 8) & 0xFF;
-                int b = rgb & 0xFF;
-                
-                // 计算灰度值
-                int gray = (int) (0.299 * r + 0.587 * g + 0.114 * b);
-                
-                // 使用自适应阈值
-                int threshold = calculateAdaptiveThreshold(image, x, y, 15);
-                
-                if (gray < threshold - 20) {
-                    // 明显的文字像素
-                    result.setRGB(x, y, Color.BLACK.getRGB());
-                } else if (gray > threshold + 30) {
-                    // 明显的背景像素
-                    result.setRGB(x, y, Color.WHITE.getRGB());
-                } else {
-                    // 边界像素，使用更细致的判断
-                    if (gray < threshold) {
-                        result.setRGB(x, y, Color.BLACK.getRGB());
+        rowBands.forEachBand(height, width, (startRow, endRow) -> {
+            for (int y = startRow; y < endRow; y++) {
+                int row = y * width;
+                for (int x = 0; x < width; x++) {
+                    // 计算灰度值
+                    int gray = grayPlane[row + x] & 0xFF;
+                    
+                    // 使用自适应阈值
+                    int threshold = calculateAdaptiveThreshold(graySums, x, y, 15);
+                    
+                    if (gray < threshold - 20) {
+                        // 明显的文字像素
+                        result.set(x, y, false);
+                    } else if (gray > threshold + 30) {
+                        // 明显的背景像素
+                        result.set(x, y, true);
                     } else {
-                        result.setRGB(x, y, Color.WHITE.getRGB());
+                        // 边界像素，使用更细致的判断
+                        if (gray < threshold) {
+                            result.set(x, y, false);
+                        } else {
+                            result.set(x, y, true);
+                        }
                     }
                 }
             }
-        }
+        });
         
         return result;
      }
      
      /**
      * 判断是否为可能的中文字符区域
+     * @param darkCounts 灰度小于128的暗像素积分图
      */
-    private boolean isLikelyChineseCharacterArea(BufferedImage image, int centerX, int centerY) {
-        int width = image.getWidth();
-        int height = image.getHeight();
-        
+    private boolean isLikelyChineseCharacterArea(IntegralImage darkCounts, int centerX, int centerY) {
         // 检查3x3区域内的像素变化
-        int darkPixels = 0;
-        int totalPixels = 0;
-        
-        for (int y = Math.max(0, centerY - 1); y <= Math.min(height - 1, centerY + 1); y++) {
-            for (int x = Math.max(0, centerX - 1); x <= Math.min(width - 1, centerX + 1); x++) {
-                int rgb = image.getRGB(x, y);
-                int r = (rgb >> 16) & 0xFF;
-                int g = (rgb >> 8) & 0xFF;
-                int b = rgb & 0xFF;
-                int gray = (int) (0.299 * r + 0.587 * g + 0.114 * b);
-                
-                if (gray < 128) {
-                    darkPixels++;
-                }
-                totalPixels++;
-            }
-        }
+        int darkPixels = darkCounts.windowSum(centerX, centerY, 1);
+        int totalPixels = darkCounts.windowArea(centerX, centerY, 1);
         
         // 如果区域内有适中的暗像素比例，可能是中文字符
         double darkRatio = (double) darkPixels / totalPixels;
@@ -392,203 +565,18 @@ public class ImagePreprocessor {
     }
     
     /**
-     * 计算颜色与绿色的相似度
-     */
-    private double calculateGreenSimilarity(int r, int g, int b) {
-        // 微信绿色参考值 (149, 236, 105)
-        int refR = 149, refG = 236, refB = 105;
-        
-        // 计算欧几里得距离
-        double distance = Math.sqrt(Math.pow(r - refR, 2) + Math.pow(g - refG, 2) + Math.pow(b - refB, 2));
-        
-        // 最大可能距离（从黑到白）
-        double maxDistance = Math.sqrt(3 * Math.pow(255, 2));
-        
-        // 相似度 = 1 - (距离 / 最大距离)
-        return 1.0 - (distance / maxDistance);
-    }
-    
-    /**
-     * 判断是否为纯绿色背景（更严格的检测）
-     */
-    private boolean isPureGreenBackground(int r, int g, int b) {
-        // 微信绿色的RGB值大约是 (149, 236, 105)，即 #95ec69
-        // 使用更严格的条件来检测纯绿色背景
-        
-        // 检查是否接近微信绿色
-        int wechatR = 149, wechatG = 236, wechatB = 105;
-        double distance = Math.sqrt(Math.pow(r - wechatR, 2) + Math.pow(g - wechatG, 2) + Math.pow(b - wechatB, 2));
-        
-        // 如果颜色距离微信绿色很近（阈值30），认为是纯绿色背景
-        if (distance < 30) {
-            return true;
-        }
-        
-        // 检查是否为其他绿色背景变种
-        // 绿色分量必须明显高于红色和蓝色，且在合理范围内
-        boolean isGreenDominant = (g > r + 60) && (g > b + 60) && (g >= 200);
-        
-        // HSV检测作为辅助
-        float[] hsv = new float[3];
-        Color.RGBtoHSB(r, g, b, hsv);
-        float hue = hsv[0] * 360;
-        float saturation = hsv[1];
-        float brightness = hsv[2];
-        
-        // 严格的HSV绿色检测
-        boolean isHsvGreen = (hue >= 100 && hue <= 120) && 
-                            (saturation >= 0.5) && 
-                            (brightness >= 0.7);
-        
-        return isGreenDominant && isHsvGreen;
-    }
-    
-    /**
-     * 检测是否为明显的绿色背景（调整后支持微信绿色）
-     */
-    private boolean isObviousGreenBackground(int r, int g, int b) {
-        // 微信绿色 RGB(149, 236, 105) 的特征：
-        // 1. 绿色分量明显高于红色和蓝色分量
-        // 2. 绿色分量要足够高
-        // 3. 放宽红色和蓝色分量的限制以支持微信绿色
-        return g > r + 60 && g > b + 100 && g > 200 && r < 180 && b < 130;
-    }
-    
-    /**
-     * 检测是否为明显的蓝色背景（优化聊天截图识别）
-     */
-    private boolean isObviousBlueBackground(int r, int g, int b) {
-        // 专门检测聊天应用蓝色 #4696F6 (70, 150, 246) 及类似颜色
-        
-        // 1. 精确匹配聊天蓝色 #4696F6 及其变体（容差范围）
-        boolean isChatBlue = isChatBlueBackground(r, g, b);
-        
-        // 2. 基本蓝色条件：蓝色分量占主导（降低阈值）
-        boolean basicBlue = b > r + 20 && b > g + 10 && b > 100;
-        
-        // 3. 计算蓝色占比（降低阈值）
-        float blueRatio = (float) b / (r + g + b);
-        boolean blueRatioDominant = blueRatio > 0.35;
-        
-        // 4. HSV检测作为辅助（放宽条件）
-        float[] hsv = new float[3];
-        Color.RGBtoHSB(r, g, b, hsv);
-        float hue = hsv[0] * 360;
-        float saturation = hsv[1];
-        float brightness = hsv[2];
-        
-        // 蓝色色相范围：180-280度（扩大范围）
-        boolean hsvBlue = (hue >= 180 && hue <= 280) && 
-                         (saturation >= 0.2) && 
-                         (brightness >= 0.3);
-        
-        // 5. 任何偏蓝的像素
-        boolean anyBlueish = b > Math.max(r, g) && b > 80;
-        
-        // 6. 相对蓝色（蓝色分量相对较高）
-        boolean relativeBlue = b > (r + g) / 2 + 20 && b > 60;
-        
-        // 7. 新增：强蓝色检测（针对高饱和度蓝色）
-        boolean strongBlue = b > 200 && b > r + 50 && b > g + 50;
-        
-        boolean isBlue = isChatBlue || basicBlue || (blueRatioDominant && hsvBlue) || anyBlueish || relativeBlue || strongBlue;
-        
-        // 添加调试输出
-        if (Math.random() < 0.001) {
-            log.debug("蓝色背景检测 - RGB({},{},{}) 蓝色占比:{:.2f} HSV({:.0f},{:.2f},{:.2f}) 结果:{} [聊天蓝:{} 基本蓝:{} HSV蓝:{} 任意蓝:{} 相对蓝:{} 强蓝:{}]", 
-                     r, g, b, blueRatio, hue, saturation, brightness, isBlue,
-                     isChatBlue, basicBlue, hsvBlue, anyBlueish, relativeBlue, strongBlue);
-        }
-        
-        return isBlue;
-    }
-    
-    /**
-     * 专门检测聊天应用的蓝色背景 #4696F6 (70, 150, 246) 及其变体
-     */
-    private boolean isChatBlueBackground(int r, int g, int b) {
-        // #4696F6 的RGB值：(70, 150, 246)
-        // 允许一定的容差范围来匹配相似的蓝色
-        
-        // 方法1：直接范围匹配（最精确）
-        boolean directMatch = (r >= 50 && r <= 90) &&     // 红色分量 70±20
-                             (g >= 130 && g <= 170) &&    // 绿色分量 150±20  
-                             (b >= 220 && b <= 255);      // 蓝色分量 246±9
-        
-        // 方法2：比例匹配（更灵活）
-        // #4696F6 的比例特征：蓝色远大于绿色，绿色大于红色
-        boolean proportionMatch = b > g + 80 &&           // 蓝色比绿色大80以上
-                                 g > r + 60 &&            // 绿色比红色大60以上
-                                 b > 200 &&               // 蓝色分量足够高
-                                 r < 100;                 // 红色分量相对较低
-        
-        // 方法3：相对差值匹配
-        int bgDiff = b - g;  // 蓝绿差值，#4696F6中约为96
-        int grDiff = g - r;  // 绿红差值，#4696F6中约为80
-        boolean relativeMatch = bgDiff >= 70 && bgDiff <= 120 &&  // 蓝绿差值在合理范围
-                               grDiff >= 60 && grDiff <= 100 &&   // 绿红差值在合理范围
-                               b > 180;                           // 蓝色分量足够高
-        
-        boolean isChatBlue = directMatch || proportionMatch || relativeMatch;
-        
-        // 特殊调试输出（针对聊天蓝色）
-        if (isChatBlue && Math.random() < 0.01) { // 1%概率输出聊天蓝色检测结果
-            log.debug("聊天蓝色检测 - RGB({},{},{}) 蓝绿差:{} 绿红差:{} 结果:{} [直接:{} 比例:{} 相对:{}]", 
-                     r, g, b, bgDiff, grDiff, isChatBlue, directMatch, proportionMatch, relativeMatch);
-        }
-        
-        return isChatBlue;
-    }
-    
-    /**
-     * 检测是否为明显的红色背景
+     * 检测是否为任何明显的彩色背景
      */
-    private boolean isObviousRedBackground(int r, int g, int b) {
-        // 红色分量必须大幅高于绿色和蓝色分量
-        return r > g + 60 && r > b + 60 && r > 180 && g < 100 && b < 100;
+    public boolean hasColoredBackground(byte[] imageBytes) throws IOException {
+        DecodedImage decodedImage = DecodedImage.read(imageBytes);
+        return decodedImage != null && hasColoredBackground(decodedImage);
     }
-    
+
     /**
-     * 检测是否为任何明显的彩色背景
+     * 检测已解码图像是否为任何明显的彩色背景
      */
-    public boolean hasColoredBackground(byte[] imageBytes) throws IOException {
-        BufferedImage image = ImageIO.read(new ByteArrayInputStream(imageBytes));
-        if (image == null) {
-            return false;
-        }
-        
-        int width = image.getWidth();
-        int height = image.getHeight();
-        
-        // 采样检测：检查图像中的多个点
-        int sampleCount = 0;
-        int coloredBackgroundCount = 0;
-        
-        // 检查边缘区域（通常是背景）
-        for (int y = 0; y < height; y += Math.max(1, height / 20)) {
-            for (int x = 0; x < width; x += Math.max(1, width / 20)) {
-                int rgb = image.getRGB(x, y);
-                int r = (rgb >> 16) & 0xFF;
-                int g = (rgb >> 8) & 0xFF;
-                int b = rgb & 0xFF;
-                
-                if (isObviousGreenBackground(r, g, b) || 
-                    isObviousBlueBackground(r, g, b) || 
-                    isObviousRedBackground(r, g, b)) {
-                    coloredBackgroundCount++;
-                }
-                sampleCount++;
-            }
-        }
-        
-        // 如果超过30%的采样点是彩色背景，则认为是彩色背景图像
-        double coloredRatio = (double) coloredBackgroundCount / sampleCount;
-        boolean hasColored = coloredRatio > 0.3;
-        
-        log.debug("彩色背景检测结果: 采样点={}, 彩色背景点={}, 比例={:.2f}, 结果={}", 
-                sampleCount, coloredBackgroundCount, coloredRatio, hasColored);
-        
-        return hasColored;
+    public boolean hasColoredBackground(DecodedImage decodedImage) {
+        return profileBackground(decodedImage).isColoredBackground();
     }
     
     /**
@@ -598,194 +586,94 @@ public class ImagePreprocessor {
      * @throws IOException IO异常
      */
     public byte[] preprocessForColoredBackground(byte[] imageBytes) throws IOException {
+        return DecodedImage.encodePng(preprocessForColoredBackground(readImage(imageBytes)));
+    }
+
+    /**
+     * 通用彩色背景预处理（已解码图像）
+     * @param decodedImage 已解码的图像
+     * @return 预处理后的图像
+     */
+    public BufferedImage preprocessForColoredBackground(DecodedImage decodedImage) {
         log.debug("开始通用彩色背景预处理");
         
-        // 读取原始图像
-        BufferedImage originalImage = ImageIO.read(new ByteArrayInputStream(imageBytes));
-        if (originalImage == null) {
-            throw new IOException("无法读取图像数据");
-        }
+        int width = decodedImage.getWidth();
+        int height = decodedImage.getHeight();
         
-        log.debug("原始图像尺寸: {}x{}", originalImage.getWidth(), originalImage.getHeight());
+        log.debug("原始图像尺寸: {}x{}", width, height);
         
         // 应用通用彩色背景处理
-        BufferedImage processedImage = originalImage;
+        int[] pixels = decodedImage.getRgbPixels();
         
         // 1. 彩色背景文字增强（核心步骤）
-        processedImage = enhanceColoredBackgroundText(processedImage);
+        BinaryRaster binary = enhanceColoredBackgroundText(pixels, width, height);
         
         // 2. 轻微的形态学操作来清理噪点
-        processedImage = applyLightMorphology(processedImage);
-        
-        // 转换为字节数组
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        ImageIO.write(processedImage, "PNG", baos);
-        
-        // 调试：保存预处理后的图片
-        try {
-            File debugFile = new File("debug_colored_processed_" + System.currentTimeMillis() + ".png");
-            ImageIO.write(processedImage, "PNG", debugFile);
-            log.info("调试：彩色背景预处理后的图片已保存到: {}", debugFile.getAbsolutePath());
-        } catch (Exception e) {
-            log.warn("保存调试图片失败: {}", e.getMessage());
-        }
+        BinaryRaster cleaned = applyLightMorphology(binary);
+        
+        BufferedImage processedImage = cleaned.toBufferedImage();
+        
+        // 调试：按采样率异步保存预处理后的图片
+        saveDebugImage("colored", processedImage);
         
         log.debug("通用彩色背景预处理完成");
-        return baos.toByteArray();
+        return processedImage;
     }
     
     /**
      * 增强彩色背景上的文字（通用方法）
      */
-    private BufferedImage enhanceColoredBackgroundText(BufferedImage image) {
-        int width = image.getWidth();
-        int height = image.getHeight();
-        BufferedImage result = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
-        
-        for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++) {
-                int rgb = image.getRGB(x, y);
-                int r = (rgb >> 16) & 0xFF;
-                int g = (rgb >> 8) & 0xFF;
-                int b = rgb & 0xFF;
-                
-                // 检测是否为彩色背景
-                boolean isColoredBg = isObviousGreenBackground(r, g, b) || 
-                                     isObviousBlueBackground(r, g, b) || 
-                                     isObviousRedBackground(r, g, b);
-                
-                if (isColoredBg) {
-                    // 彩色背景区域：转为白色
-                    result.setRGB(x, y, Color.WHITE.getRGB());
-                } else {
-                    // 非彩色背景区域：判断是否为文字
-                    // 计算亮度
-                    int brightness = (int) (0.299 * r + 0.587 * g + 0.114 * b);
-                    
-                    // 检查是否为白色或接近白色（聊天界面的文字通常是白色）
-                    boolean isWhiteText = r > 240 && g > 240 && b > 240;
+    private BinaryRaster enhanceColoredBackgroundText(int[] src, int width, int height) {
+        BinaryRaster result = new BinaryRaster(width, height);
+        
+        rowBands.forEachBand(height, width, (startRow, endRow) -> {
+            for (int y = startRow; y < endRow; y++) {
+                int row = y * width;
+                for (int x = 0; x < width; x++) {
+                    int rgb = src[row + x];
+                    int r = (rgb >> 16) & 0xFF;
+                    int g = (rgb >> 8) & 0xFF;
+                    int b = rgb & 0xFF;
                     
-                    // 检查是否为深色文字
-                    boolean isDarkText = brightness < 100;
+                    // 检测是否为彩色背景
+                    boolean isColoredBg = ColorClassifier.isColoredBackground(rgb);
                     
-                    // 检查是否为灰色文字（中等亮度）
-                    boolean isGrayText = brightness >= 100 && brightness <= 180 && 
-                                        Math.abs(r - g) < 30 && Math.abs(g - b) < 30 && Math.abs(r - b) < 30;
-                    
-                    if (isDarkText || isGrayText) {
-                        // 深色或灰色文字：转为黑色
-                        result.setRGB(x, y, Color.BLACK.getRGB());
-                    } else if (isWhiteText) {
-                        // 白色文字：保持黑色（反转）
-                        result.setRGB(x, y, Color.BLACK.getRGB());
+                    if (isColoredBg) {
+                        // 彩色背景区域：转为白色
+                        result.set(x, y, true);
                     } else {
-                        // 其他颜色：根据亮度判断
-                        if (brightness < 150) {
-                            result.setRGB(x, y, Color.BLACK.getRGB());
+                        // 非彩色背景区域：判断是否为文字
+                        // 计算亮度
+                        int brightness = grayOf(r, g, b);
+                        
+                        // 检查是否为白色或接近白色（聊天界面的文字通常是白色）
+                        boolean isWhiteText = r > 240 && g > 240 && b > 240;
+                        
+                        // 检查是否为深色文字
+                        boolean isDarkText = brightness < 100;
+                        
+                        // 检查是否为灰色文字（中等亮度）
+                        boolean isGrayText = brightness >= 100 && brightness <= 180 && 
+                                            Math.abs(r - g) < 30 && Math.abs(g - b) < 30 && Math.abs(r - b) < 30;
+                        
+                        if (isDarkText || isGrayText) {
+                            // 深色或灰色文字：转为黑色
+                            result.set(x, y, false);
+                        } else if (isWhiteText) {
+                            // 白色文字：保持黑色（反转）
+                            result.set(x, y, false);
                         } else {
-                            result.setRGB(x, y, Color.WHITE.getRGB());
+                            // 其他颜色：根据亮度判断
+                            if (brightness < 150) {
+                                result.set(x, y, false);
+                            } else {
+                                result.set(x, y, true);
+                            }
                         }
                     }
                 }
             }
-        }
-        
-        return result;
-    }
-
-    /**
-     * 判断是否为绿色背景（原有方法，用于整体检测）
-     */
-    private boolean isGreenBackground(int r, int g, int b) {
-        // 微信绿色的RGB值大约是 (149, 236, 105)，即 #95ec69
-        // 检测绿色范围，更精确地匹配微信绿色
-        
-        // 基本绿色条件：绿色分量明显大于红色和蓝色
-        boolean basicGreen = (g > r + 30) && (g > b + 30) && (g > 120);
-        
-        // 微信绿色特征检测
-        boolean isWechatGreen = false;
-        if (g >= 180 && g <= 255) { // 绿色分量较高
-            float greenRatio = (float) g / (r + g + b);
-            isWechatGreen = greenRatio > 0.45; // 绿色占比超过45%
-        }
-        
-        // HSV检测作为辅助
-        float[] hsv = new float[3];
-        Color.RGBtoHSB(r, g, b, hsv);
-        float hue = hsv[0] * 360;
-        float saturation = hsv[1];
-        float brightness = hsv[2];
-        
-        boolean hsvGreen = (hue >= 90 && hue <= 130) && 
-                          (saturation >= 0.4 && saturation <= 0.8) && 
-                          (brightness >= 0.5 && brightness <= 0.95);
-        
-        return basicGreen || isWechatGreen || hsvGreen;
-    }
-
-    /**
-     * 智能绿色背景检测（更保守的方法，避免误判文字）
-     */
-    private boolean isSmartGreenBackground(int r, int g, int b) {
-        // 微信绿色的RGB值大约是 (149, 236, 105)，即 #95ec69
-        // 使用更严格的条件来避免误判文字
-        
-        // 1. 首先检查是否接近微信绿色
-        int wechatR = 149, wechatG = 236, wechatB = 105;
-        double distance = Math.sqrt(Math.pow(r - wechatR, 2) + Math.pow(g - wechatG, 2) + Math.pow(b - wechatB, 2));
-        
-        // 如果颜色距离微信绿色很近（阈值40），认为是绿色背景
-        if (distance < 40) {
-            return true;
-        }
-        
-        // 2. 检查是否为高饱和度的绿色（避免低饱和度的绿色文字）
-        float[] hsv = new float[3];
-        Color.RGBtoHSB(r, g, b, hsv);
-        float hue = hsv[0] * 360;
-        float saturation = hsv[1];
-        float brightness = hsv[2];
-        
-        // 严格的HSV绿色检测：高饱和度、适中亮度、绿色色相
-        boolean isHighSaturationGreen = (hue >= 100 && hue <= 120) && 
-                                       (saturation >= 0.6) && // 提高饱和度要求
-                                       (brightness >= 0.7 && brightness <= 0.95);
-        
-        // 3. RGB检测：绿色分量必须显著高于红蓝分量，且绿色值较高
-        boolean isRgbGreen = (g > r + 50) && (g > b + 50) && (g >= 200);
-        
-        // 4. 排除可能的文字颜色（通常饱和度较低或亮度极端）
-        boolean isNotText = saturation >= 0.5 && brightness >= 0.6 && brightness <= 0.9;
-        
-        return (isHighSaturationGreen || isRgbGreen) && isNotText;
-    }
-    
-    /**
-     * 增强图像对比度
-     */
-    private BufferedImage enhanceContrast(BufferedImage image) {
-        log.debug("应用对比度增强");
-        
-        int width = image.getWidth();
-        int height = image.getHeight();
-        BufferedImage result = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
-        
-        // 计算对比度增强参数
-        double contrast = 1.5; // 对比度因子
-        double brightness = 10; // 亮度调整
-        
-        for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++) {
-                Color pixel = new Color(image.getRGB(x, y));
-                
-                int r = (int) Math.max(0, Math.min(255, contrast * pixel.getRed() + brightness));
-                int g = (int) Math.max(0, Math.min(255, contrast * pixel.getGreen() + brightness));
-                int b = (int) Math.max(0, Math.min(255, contrast * pixel.getBlue() + brightness));
-                
-                result.setRGB(x, y, new Color(r, g, b).getRGB());
-            }
-        }
+        });
         
         return result;
     }
@@ -793,180 +681,68 @@ public class ImagePreprocessor {
     /**
      * 应用自适应阈值处理
      */
-    private BufferedImage applyAdaptiveThreshold(BufferedImage image) {
+    private int[] applyAdaptiveThreshold(int[] src, int width, int height) {
         log.debug("应用自适应阈值处理");
         
         // 先转换为灰度图
-        BufferedImage grayImage = convertToGrayscale(image);
+        byte[] grayPlane = toGrayPlane(src, width, height);
+        IntegralImage graySums = IntegralImage.of(grayPlane, width, height, rowBands);
         
-        int width = grayImage.getWidth();
-        int height = grayImage.getHeight();
-        BufferedImage result = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        int[] result = new int[width * height];
         
         int windowSize = 15; // 自适应窗口大小
         double c = 10; // 常数调整值
         
-        for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++) {
-                // 计算局部区域的平均值
-                double localMean = calculateLocalMean(grayImage, x, y, windowSize);
-                
-                // 获取当前像素的灰度值
-                int grayValue = new Color(grayImage.getRGB(x, y)).getRed();
-                
-                // 自适应阈值判断
-                int binaryValue = (grayValue > localMean - c) ? 255 : 0;
-                
-                result.setRGB(x, y, new Color(binaryValue, binaryValue, binaryValue).getRGB());
+        rowBands.forEachBand(height, width, (startRow, endRow) -> {
+            for (int y = startRow; y < endRow; y++) {
+                int row = y * width;
+                for (int x = 0; x < width; x++) {
+                    // 计算局部区域的平均值
+                    double localMean = calculateLocalMean(graySums, x, y, windowSize);
+                    
+                    // 获取当前像素的灰度值
+                    int grayValue = grayPlane[row + x] & 0xFF;
+                    
+                    // 自适应阈值判断
+                    result[row + x] = (grayValue > localMean - c) ? WHITE : BLACK;
+                }
             }
-        }
+        });
         
         return result;
     }
     
-    /**
-     * 转换为灰度图
-     */
-    private BufferedImage convertToGrayscale(BufferedImage image) {
-        int width = image.getWidth();
-        int height = image.getHeight();
-        BufferedImage grayImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
-        
-        for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++) {
-                Color pixel = new Color(image.getRGB(x, y));
-                int gray = (int) (0.299 * pixel.getRed() + 0.587 * pixel.getGreen() + 0.114 * pixel.getBlue());
-                grayImage.setRGB(x, y, new Color(gray, gray, gray).getRGB());
-            }
-        }
-        
-        return grayImage;
-    }
-    
     /**
      * 计算局部区域的平均值
      */
-    private double calculateLocalMean(BufferedImage image, int centerX, int centerY, int windowSize) {
-        int width = image.getWidth();
-        int height = image.getHeight();
+    private double calculateLocalMean(IntegralImage graySums, int centerX, int centerY, int windowSize) {
         int halfWindow = windowSize / 2;
         
-        int sum = 0;
-        int count = 0;
-        
-        for (int y = Math.max(0, centerY - halfWindow); y <= Math.min(height - 1, centerY + halfWindow); y++) {
-            for (int x = Math.max(0, centerX - halfWindow); x <= Math.min(width - 1, centerX + halfWindow); x++) {
-                sum += new Color(image.getRGB(x, y)).getRed();
-                count++;
-            }
-        }
+        int sum = graySums.windowSum(centerX, centerY, halfWindow);
+        int count = graySums.windowArea(centerX, centerY, halfWindow);
         
         return count > 0 ? (double) sum / count : 0;
     }
     
     /**
-     * 应用轻量级形态学操作
+     * 应用轻量级形态学操作（灰度图）
      */
-    private BufferedImage applyLightMorphology(BufferedImage image) {
+    private GrayRaster applyLightMorphology(GrayRaster src) {
         log.debug("应用轻量级形态学操作");
         
         // 只应用轻微的闭运算来连接字符断裂部分
-        return applyClosing(image, 1);
-    }
-    
-    /**
-     * 应用形态学操作（去噪和字符增强）
-     */
-    private BufferedImage applyMorphologicalOperations(BufferedImage image) {
-        log.debug("应用形态学操作");
-        
-        // 应用开运算（先腐蚀后膨胀）去除小噪点
-        BufferedImage opened = applyOpening(image, 1);
-        
-        // 应用闭运算（先膨胀后腐蚀）连接字符断裂部分
-        BufferedImage closed = applyClosing(opened, 1);
-        
-        return closed;
+        byte[] closed = MorphologyFilter.close(src.getData(), src.getWidth(), src.getHeight(), 1, rowBands);
+        return new GrayRaster(src.getWidth(), src.getHeight(), closed);
     }
     
     /**
-     * 开运算：先腐蚀后膨胀
+     * 应用轻量级形态学操作（二值图，直接在按位压缩的数据上计算）
      */
-    private BufferedImage applyOpening(BufferedImage image, int kernelSize) {
-        BufferedImage eroded = applyErosion(image, kernelSize);
-        return applyDilation(eroded, kernelSize);
-    }
-    
-    /**
-     * 闭运算：先膨胀后腐蚀
-     */
-    private BufferedImage applyClosing(BufferedImage image, int kernelSize) {
-        BufferedImage dilated = applyDilation(image, kernelSize);
-        return applyErosion(dilated, kernelSize);
-    }
-    
-    /**
-     * 腐蚀操作
-     */
-    private BufferedImage applyErosion(BufferedImage image, int kernelSize) {
-        int width = image.getWidth();
-        int height = image.getHeight();
-        BufferedImage result = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
-        
-        for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++) {
-                int minValue = 255;
-                
-                // 检查核心区域
-                for (int ky = -kernelSize; ky <= kernelSize; ky++) {
-                    for (int kx = -kernelSize; kx <= kernelSize; kx++) {
-                        int nx = x + kx;
-                        int ny = y + ky;
-                        
-                        if (nx >= 0 && nx < width && ny >= 0 && ny < height) {
-                            int value = new Color(image.getRGB(nx, ny)).getRed();
-                            minValue = Math.min(minValue, value);
-                        }
-                    }
-                }
-                
-                result.setRGB(x, y, new Color(minValue, minValue, minValue).getRGB());
-            }
-        }
-        
-        return result;
-    }
-    
-    /**
-     * 膨胀操作
-     */
-    private BufferedImage applyDilation(BufferedImage image, int kernelSize) {
-        int width = image.getWidth();
-        int height = image.getHeight();
-        BufferedImage result = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
-        
-        for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++) {
-                int maxValue = 0;
-                
-                // 检查核心区域
-                for (int ky = -kernelSize; ky <= kernelSize; ky++) {
-                    for (int kx = -kernelSize; kx <= kernelSize; kx++) {
-                        int nx = x + kx;
-                        int ny = y + ky;
-                        
-                        if (nx >= 0 && nx < width && ny >= 0 && ny < height) {
-                            int value = new Color(image.getRGB(nx, ny)).getRed();
-                            maxValue = Math.max(maxValue, value);
-                        }
-                    }
-                }
-                
-                result.setRGB(x, y, new Color(maxValue, maxValue, maxValue).getRGB());
-            }
-        }
+    private BinaryRaster applyLightMorphology(BinaryRaster src) {
+        log.debug("应用轻量级形态学操作");
         
-        return result;
+        // 只应用轻微的闭运算来连接字符断裂部分
+        return src.close(1);
     }
     
     /**
@@ -975,30 +751,17 @@ public class ImagePreprocessor {
      * @return 是否包含绿色背景
      */
     public boolean hasGreenBackground(byte[] imageBytes) throws IOException {
-        BufferedImage image = ImageIO.read(new ByteArrayInputStream(imageBytes));
-        if (image == null) {
-            return false;
-        }
-        
-        int width = image.getWidth();
-        int height = image.getHeight();
-        int greenPixelCount = 0;
-        int totalPixels = width * height;
-        
-        for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++) {
-                Color pixel = new Color(image.getRGB(x, y));
-                if (isSmartGreenBackground(pixel.getRed(), pixel.getGreen(), pixel.getBlue())) {
-                    greenPixelCount++;
-                }
-            }
-        }
-        
-        // 如果绿色背景像素超过15%，认为是绿色背景图像（降低阈值）
-        double greenRatio = (double) greenPixelCount / totalPixels;
-        log.debug("绿色背景像素比例: {:.2f}%", greenRatio * 100);
-        
-        return greenRatio > 0.15;
+        DecodedImage decodedImage = DecodedImage.read(imageBytes);
+        return decodedImage != null && hasGreenBackground(decodedImage);
+    }
+
+    /**
+     * 检测已解码图像是否包含绿色背景
+     * @param decodedImage 已解码的图像
+     * @return 是否包含绿色背景
+     */
+    public boolean hasGreenBackground(DecodedImage decodedImage) {
+        return profileBackground(decodedImage).isGreenBackground();
     }
 
     /**
@@ -1007,30 +770,17 @@ public class ImagePreprocessor {
      * @return 是否包含蓝色背景
      */
     public boolean hasBlueBackground(byte[] imageBytes) throws IOException {
-        BufferedImage image = ImageIO.read(new ByteArrayInputStream(imageBytes));
-        if (image == null) {
-            return false;
-        }
-        
-        int width = image.getWidth();
-        int height = image.getHeight();
-        int bluePixelCount = 0;
-        int totalPixels = width * height;
-        
-        for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++) {
-                Color pixel = new Color(image.getRGB(x, y));
-                if (isObviousBlueBackground(pixel.getRed(), pixel.getGreen(), pixel.getBlue())) {
-                    bluePixelCount++;
-                }
-            }
-        }
-        
-        // 如果蓝色背景像素超过15%，认为是蓝色背景图像
-        double blueRatio = (double) bluePixelCount / totalPixels;
-        log.debug("蓝色背景像素比例: {:.2f}%", blueRatio * 100);
-        
-        return blueRatio > 0.15;
+        DecodedImage decodedImage = DecodedImage.read(imageBytes);
+        return decodedImage != null && hasBlueBackground(decodedImage);
+    }
+
+    /**
+     * 检测已解码图像是否包含蓝色背景
+     * @param decodedImage 已解码的图像
+     * @return 是否包含蓝色背景
+     */
+    public boolean hasBlueBackground(DecodedImage decodedImage) {
+        return profileBackground(decodedImage).isBlueBackground();
     }
 
     /**
@@ -1040,22 +790,27 @@ public class ImagePreprocessor {
      * @throws IOException IO异常
      */
     public byte[] preprocessForBlueBackground(byte[] imageBytes) throws IOException {
+        return DecodedImage.encodePng(preprocessForBlueBackground(readImage(imageBytes)));
+    }
+
+    /**
+     * 专门针对蓝色背景的预处理（已解码图像）
+     * @param decodedImage 已解码的图像
+     * @return 预处理后的图像
+     */
+    public BufferedImage preprocessForBlueBackground(DecodedImage decodedImage) {
         log.debug("开始蓝色背景预处理");
         
-        // 读取原始图像
-        BufferedImage originalImage = ImageIO.read(new ByteArrayInputStream(imageBytes));
-        if (originalImage == null) {
-            throw new IOException("无法读取图像数据");
-        }
+        BufferedImage originalImage = decodedImage.getImage();
         
         log.debug("原始图像尺寸: {}x{}", originalImage.getWidth(), originalImage.getHeight());
         
         // 应用专门的蓝色背景处理
         BufferedImage processedImage = originalImage;
         
-        // 1. 如果图像太大，先缩放到合适尺寸（提高OCR效率和准确性）
-        if (processedImage.getWidth() > 1500 || processedImage.getHeight() > 1500) {
-            processedImage = scaleImageForOCR(processedImage);
+        // 1. 按文字行高缩放到适合OCR的尺寸（提高OCR效率和准确性）
+        processedImage = scaleImageForOCR(originalImage, decodedImage.getRgbPixels(), decodedImage.getBuffers());
+        if (processedImage != originalImage) {
             log.debug("图像已缩放到: {}x{}", processedImage.getWidth(), processedImage.getHeight());
         }
         
@@ -1063,38 +818,47 @@ public class ImagePreprocessor {
         // 让Tesseract自己处理，避免过度预处理导致的识别错误
         log.debug("跳过复杂预处理，使用原始图像进行OCR");
         
-        // 转换为字节数组
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        ImageIO.write(processedImage, "PNG", baos);
-        
-        // 调试：保存预处理后的图片
-        try {
-            File debugFile = new File("debug_blue_processed_" + System.currentTimeMillis() + ".png");
-            ImageIO.write(processedImage, "PNG", debugFile);
-            log.info("调试：蓝色背景预处理后的图片已保存到: {}", debugFile.getAbsolutePath());
-        } catch (Exception e) {
-            log.warn("保存调试图片失败: {}", e.getMessage());
-        }
+        // 调试：按采样率异步保存预处理后的图片
+        saveDebugImage("blue", processedImage);
         
         log.debug("蓝色背景预处理完成");
-        return baos.toByteArray();
+        return processedImage;
     }
     
     /**
      * 缩放图像到适合OCR的尺寸
+     * 先估计主要文字行高，缩放到目标行高；估计不出行高时沿用原来的规则，
+     * 边长超过1500像素的图像按比例缩小到1200x1200以内
      */
-    private BufferedImage scaleImageForOCR(BufferedImage image) {
+    private BufferedImage scaleImageForOCR(BufferedImage image, int[] pixels, RasterBufferPool.Lease buffers) {
         int originalWidth = image.getWidth();
         int originalHeight = image.getHeight();
         
+        byte[] grayPlane = toGrayPlane(pixels, originalWidth, originalHeight, buffers);
+        int lineHeight = TextScaleEstimator.estimateLineHeight(grayPlane, originalWidth, originalHeight);
+        
         // 计算缩放比例，保持宽高比
-        double scale = Math.min(1200.0 / originalWidth, 1200.0 / originalHeight);
-        if (scale >= 1.0) {
+        double scale;
+        if (lineHeight > 0) {
+            scale = TextScaleEstimator.scaleFor(lineHeight, targetTextHeight, minScale, maxScale);
+            // 放大后不超过OCR引擎接受的最大边长；缩小后宽度不低于下限，小图的行高估计不可靠
+            scale = Math.min(scale, (double) maxImageDimension / Math.max(originalWidth, originalHeight));
+            if (scale < 1.0) {
+                scale = Math.max(scale, Math.min(1.0, (double) MIN_SCALED_WIDTH / originalWidth));
+            }
+            log.debug("估计文字行高: {}px，缩放比例: {}", lineHeight, String.format("%.2f", scale));
+        } else if (originalWidth > 1500 || originalHeight > 1500) {
+            scale = Math.min(1200.0 / originalWidth, 1200.0 / originalHeight);
+            log.debug("无法估计文字行高，按1200x1200缩放，缩放比例: {}", String.format("%.2f", scale));
+        } else {
+            return image;
+        }
+        if (Math.abs(scale - 1.0) < 0.1) {
             return image; // 不需要缩放
         }
         
-        int newWidth = (int) (originalWidth * scale);
-        int newHeight = (int) (originalHeight * scale);
+        int newWidth = Math.max(1, (int) (originalWidth * scale));
+        int newHeight = Math.max(1, (int) (originalHeight * scale));
         
         BufferedImage scaledImage = new BufferedImage(newWidth, newHeight, BufferedImage.TYPE_INT_RGB);
         Graphics2D g2d = scaledImage.createGraphics();
@@ -1113,262 +877,109 @@ public class ImagePreprocessor {
     /**
      * 专门处理蓝色背景，增强文字对比度（修复版本，正确处理蓝底白字）
      */
-    private BufferedImage enhanceBlueBackgroundText(BufferedImage image) {
+    private BinaryRaster enhanceBlueBackgroundText(int[] src, int width, int height, RasterBufferPool.Lease buffers) {
         log.debug("应用修复的蓝色背景文字增强算法，正确处理蓝底白字");
         
-        int width = image.getWidth();
-        int height = image.getHeight();
-        BufferedImage result = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        BinaryRaster result = new BinaryRaster(width, height);
         
         // 使用轻度图像增强
-        BufferedImage enhancedImage = enhanceImageContrastGentle(image);
-        
-        for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++) {
-                int rgb = enhancedImage.getRGB(x, y);
-                int r = (rgb >> 16) & 0xFF;
-                int g = (rgb >> 8) & 0xFF;
-                int b = rgb & 0xFF;
-                
-                // 检测是否在蓝色背景区域
-                boolean isInBlueArea = isObviousBlueBackground(r, g, b);
-                
-                if (isInBlueArea) {
-                    // 在蓝色背景区域内，需要区分背景和白字
-                    boolean isWhiteText = isWhiteTextOnBlue(r, g, b);
-                    
-                    if (isWhiteText) {
-                        // 蓝底上的白字 -> 转换为黑字
-                        result.setRGB(x, y, Color.BLACK.getRGB());
-                    } else {
-                        // 纯蓝色背景 -> 转换为白色背景
-                        result.setRGB(x, y, Color.WHITE.getRGB());
-                    }
-                } else {
-                    // 非蓝色区域，使用自适应阈值处理
-                    int gray = (int) (0.299 * r + 0.587 * g + 0.114 * b);
+        int[] enhancedPixels = enhanceImageContrastGentle(src, width, height);
+        byte[] grayPlane = toGrayPlane(enhancedPixels, width, height, buffers);
+        IntegralImage graySums = IntegralImage.of(grayPlane, width, height, rowBands, buffers);
+        IntegralImage darkCounts = IntegralImage.ofBelow(grayPlane, width, height, 140, rowBands, buffers);
+        
+        rowBands.forEachBand(height, width, (startRow, endRow) -> {
+            for (int y = startRow; y < endRow; y++) {
+                int row = y * width;
+                for (int x = 0; x < width; x++) {
+                    int rgb = enhancedPixels[row + x];
                     
-                    // 使用自适应阈值，提高文字识别准确性
-                    int adaptiveThreshold = calculateChatThreshold(enhancedImage, x, y, 15);
+                    // 检测是否在蓝色背景区域
+                    boolean isInBlueArea = ColorClassifier.isObviousBlueBackground(rgb);
                     
-                    // 对于聊天文本，使用更敏感的阈值
-                    if (gray < adaptiveThreshold - 10) {
-                        // 明显的文字像素
-                        result.setRGB(x, y, Color.BLACK.getRGB());
-                    } else if (gray > adaptiveThreshold + 20) {
-                        // 明显的背景像素
-                        result.setRGB(x, y, Color.WHITE.getRGB());
+                    if (isInBlueArea) {
+                        // 在蓝色背景区域内，需要区分背景和白字
+                        boolean isWhiteText = ColorClassifier.isWhiteTextOnBlue(rgb);
+                        
+                        if (isWhiteText) {
+                            // 蓝底上的白字 -> 转换为黑字
+                            result.set(x, y, false);
+                        } else {
+                            // 纯蓝色背景 -> 转换为白色背景
+                            result.set(x, y, true);
+                        }
                     } else {
-                        // 边界像素，根据周围像素决定
-                        boolean isTextLikely = isTextPixelLikely(enhancedImage, x, y, 3);
-                        if (isTextLikely) {
-                            result.setRGB(x, y, Color.BLACK.getRGB());
+                        // 非蓝色区域，使用自适应阈值处理
+                        int gray = grayPlane[row + x] & 0xFF;
+                        
+                        // 使用自适应阈值，提高文字识别准确性
+                        int adaptiveThreshold = calculateChatThreshold(graySums, x, y, 15);
+                        
+                        // 对于聊天文本，使用更敏感的阈值
+                        if (gray < adaptiveThreshold - 10) {
+                            // 明显的文字像素
+                            result.set(x, y, false);
+                        } else if (gray > adaptiveThreshold + 20) {
+                            // 明显的背景像素
+                            result.set(x, y, true);
                         } else {
-                            result.setRGB(x, y, Color.WHITE.getRGB());
+                            // 边界像素，根据周围像素决定
+                            boolean isTextLikely = isTextPixelLikely(darkCounts, x, y, 3);
+                            if (isTextLikely) {
+                                result.set(x, y, false);
+                            } else {
+                                result.set(x, y, true);
+                            }
                         }
                     }
                 }
             }
-        }
+        });
         
         // 应用轻度形态学操作，清理噪点但保留文字结构
-        result = applyLightMorphology(result);
-        
-        return result;
-    }
-    
-    /**
-     * 检测是否为蓝色背景上的白色文字（专门针对聊天蓝色#4696F6优化）
-     */
-    private boolean isWhiteTextOnBlue(int r, int g, int b) {
-        // 1. 首先检查是否为聊天蓝色背景上的白字
-        boolean isChatWhiteText = isWhiteTextOnChatBlue(r, g, b);
-        
-        // 2. 通用白字检测（保留原有逻辑）
-        // 计算亮度
-        int brightness = (int) (0.299 * r + 0.587 * g + 0.114 * b);
-        
-        // 计算RGB的标准差，判断是否均衡
-        double mean = (r + g + b) / 3.0;
-        double variance = ((r - mean) * (r - mean) + (g - mean) * (g - mean) + (b - mean) * (b - mean)) / 3.0;
-        double stdDev = Math.sqrt(variance);
-        
-        // 检查是否偏向蓝色（大幅放宽限制）
-        boolean notBlueBiased = b <= r + 60 && b <= g + 60;
-        
-        // 极度敏感的多层次检测（大幅降低所有阈值）：
-        
-        // 1. 高亮度白字（接近纯白）- 降低阈值
-        boolean pureWhiteText = brightness > 150 && stdDev < 40 && Math.min(Math.min(r, g), b) > 120;
-        
-        // 2. 中等亮度白字（稍微偏灰的白字）- 大幅降低阈值
-        boolean grayishWhiteText = brightness > 100 && brightness <= 150 && 
-                                  stdDev < 60 && Math.min(Math.min(r, g), b) > 70 && notBlueBiased;
-        
-        // 3. 相对白字（相对于蓝色背景较亮的像素）- 大幅降低阈值
-        boolean relativeWhiteText = brightness > 80 && 
-                                   Math.min(Math.min(r, g), b) > 50 && 
-                                   notBlueBiased && 
-                                   (r + g) > b; // 红绿分量之和大于蓝色分量
-        
-        // 4. 浅色文字（更低的阈值）- 进一步降低
-        boolean lightText = brightness > 70 && 
-                           Math.max(Math.max(r, g), b) - Math.min(Math.min(r, g), b) < 80 && // 颜色相对均衡
-                           notBlueBiased &&
-                           (r + g + b) > 200; // 总亮度足够
-        
-        // 5. 极低阈值检测（针对非常暗的白字）
-        boolean veryLightText = brightness > 60 && 
-                               (r > 50 || g > 50) && // 至少红色或绿色分量不太低
-                               notBlueBiased &&
-                               Math.abs(r - g) < 50; // 红绿分量相对接近
-        
-        // 6. 任何相对较亮的非蓝色像素
-        boolean anyLighterPixel = brightness > 50 && 
-                                 (r + g) > b + 10 && // 红绿分量之和略大于蓝色
-                                 Math.max(Math.max(r, g), b) > 60; // 至少有一个分量不太低
-        
-        boolean isWhite = isChatWhiteText || pureWhiteText || grayishWhiteText || relativeWhiteText || lightText || veryLightText || anyLighterPixel;
-        
-        // 添加调试输出
-        if (Math.random() < 0.001) {
-            log.debug("白字检测 - RGB({},{},{}) 亮度:{} 标准差:{:.1f} 非蓝偏:{} 结果:{} [聊天白:{} 纯白:{} 灰白:{} 相对白:{} 浅色:{} 极浅:{} 任意亮:{}]", 
-                     r, g, b, brightness, stdDev, notBlueBiased, isWhite,
-                     isChatWhiteText, pureWhiteText, grayishWhiteText, relativeWhiteText, lightText, veryLightText, anyLighterPixel);
-        }
-        
-        return isWhite;
-    }
-    
-    /**
-     * 专门检测聊天蓝色背景上的白字文本
-     * 针对 #4696F6 (70, 150, 246) 背景优化
-     */
-    private boolean isWhiteTextOnChatBlue(int r, int g, int b) {
-        // 聊天应用中白字的特征：
-        // 1. 通常是纯白色或接近白色
-        // 2. RGB值相对均衡且较高
-        // 3. 与蓝色背景形成强烈对比
-        
-        // 方法1：纯白色检测（最严格）
-        boolean pureWhite = r >= 240 && g >= 240 && b >= 240 && 
-                           Math.abs(r - g) <= 10 && Math.abs(g - b) <= 10 && Math.abs(r - b) <= 10;
-        
-        // 方法2：接近白色检测（稍宽松）
-        boolean nearWhite = r >= 220 && g >= 220 && b >= 220 && 
-                           Math.abs(r - g) <= 20 && Math.abs(g - b) <= 20 && Math.abs(r - b) <= 20;
-        
-        // 方法3：浅色文字检测（更宽松，包括浅灰色）
-        boolean lightGray = r >= 180 && g >= 180 && b >= 180 && 
-                           Math.abs(r - g) <= 30 && Math.abs(g - b) <= 30 && Math.abs(r - b) <= 30;
-        
-        // 方法4：相对亮色检测（最宽松）
-        // 相对于蓝色背景 #4696F6 (70, 150, 246) 明显更亮的像素
-        boolean relativeBright = (r > 120 || g > 180 || (r > 100 && g > 160)) && 
-                                b < 200 && // 蓝色分量不能太高（避免误判蓝色）
-                                (r + g) > b; // 红绿之和大于蓝色
-        
-        // 方法5：高对比度检测
-        // 与典型聊天蓝色形成高对比度的像素
-        int contrastWithChatBlue = Math.abs(r - 70) + Math.abs(g - 150) + Math.abs(b - 246);
-        boolean highContrast = contrastWithChatBlue > 300 && // 与聊天蓝色差异很大
-                              (r > 100 || g > 100) && // 至少有一个分量较高
-                              b < Math.max(r, g) + 50; // 蓝色分量不占绝对优势
-        
-        // 方法6：极度宽松检测（针对任何可能的白字）
-        boolean veryLoose = (r > 80 || g > 80) && // 至少红色或绿色分量不太低
-                           b < r + g && // 蓝色分量小于红绿之和
-                           (r + g + b) > 180; // 总亮度足够
-        
-        boolean isChatWhite = pureWhite || nearWhite || lightGray || relativeBright || highContrast || veryLoose;
-        
-        // 特殊调试输出（针对聊天白字）
-        if (isChatWhite && Math.random() < 0.01) { // 1%概率输出聊天白字检测结果
-            log.debug("聊天白字检测 - RGB({},{},{}) 对比度:{} 结果:{} [纯白:{} 近白:{} 浅灰:{} 相对亮:{} 高对比:{} 极宽松:{}]", 
-                     r, g, b, contrastWithChatBlue, isChatWhite, pureWhite, nearWhite, lightGray, relativeBright, highContrast, veryLoose);
-        }
-        
-        return isChatWhite;
+        return applyLightMorphology(result);
     }
     
     /**
      * 判断像素是否可能是文字的一部分
+     * @param darkCounts 灰度小于140的暗像素积分图
      */
-    private boolean isTextPixelLikely(BufferedImage image, int centerX, int centerY, int radius) {
-        int width = image.getWidth();
-        int height = image.getHeight();
-        int darkPixelCount = 0;
-        int totalPixels = 0;
-        
-        for (int y = Math.max(0, centerY - radius); y <= Math.min(height - 1, centerY + radius); y++) {
-            for (int x = Math.max(0, centerX - radius); x <= Math.min(width - 1, centerX + radius); x++) {
-                int rgb = image.getRGB(x, y);
-                int r = (rgb >> 16) & 0xFF;
-                int g = (rgb >> 8) & 0xFF;
-                int b = rgb & 0xFF;
-                int gray = (int) (0.299 * r + 0.587 * g + 0.114 * b);
-                
-                if (gray < 140) { // 较暗的像素
-                    darkPixelCount++;
-                }
-                totalPixels++;
-            }
-        }
+    private boolean isTextPixelLikely(IntegralImage darkCounts, int centerX, int centerY, int radius) {
+        int darkPixelCount = darkCounts.windowSum(centerX, centerY, radius);
+        int totalPixels = darkCounts.windowArea(centerX, centerY, radius);
         
         // 如果周围有足够多的暗像素，则认为当前像素可能是文字
         return (double) darkPixelCount / totalPixels > 0.3;
     }
     
     /**
-     * 保守的图像对比度增强，避免过度处理
+     * 温和的图像对比度增强，适合聊天界面
      */
-    private BufferedImage enhanceImageContrastConservative(BufferedImage image) {
-        int width = image.getWidth();
-        int height = image.getHeight();
-        BufferedImage result = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
-        
-        // 使用最保守的对比度增强参数
-        double contrast = 1.1; // 极低的对比度增强
-        double brightness = 2; // 极低的亮度调整
-        
-        for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++) {
-                Color pixel = new Color(image.getRGB(x, y));
-                
-                int r = (int) Math.max(0, Math.min(255, contrast * pixel.getRed() + brightness));
-                int g = (int) Math.max(0, Math.min(255, contrast * pixel.getGreen() + brightness));
-                int b = (int) Math.max(0, Math.min(255, contrast * pixel.getBlue() + brightness));
-                
-                result.setRGB(x, y, new Color(r, g, b).getRGB());
-            }
-        }
+    private int[] enhanceImageContrastGentle(int[] src, int width, int height) {
+        // 使用更温和的对比度增强参数
+        double contrast = 1.2; // 降低对比度增强强度
+        double brightness = 5; // 降低亮度调整
         
-        return result;
+        return applyLinearContrast(src, width, height, contrast, brightness);
     }
     
     /**
-     * 温和的图像对比度增强，适合聊天界面
+     * 线性对比度/亮度调整：value = contrast * value + brightness，结果截断到0-255
+     * 每个通道的映射只有256种输入，预先计算查找表
      */
-    private BufferedImage enhanceImageContrastGentle(BufferedImage image) {
-        int width = image.getWidth();
-        int height = image.getHeight();
-        BufferedImage result = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
-        
-        // 使用更温和的对比度增强参数
-        double contrast = 1.2; // 降低对比度增强强度
-        double brightness = 5; // 降低亮度调整
+    private int[] applyLinearContrast(int[] src, int width, int height, double contrast, double brightness) {
+        int[] lut = new int[256];
+        for (int v = 0; v < 256; v++) {
+            lut[v] = (int) Math.max(0, Math.min(255, contrast * v + brightness));
+        }
         
-        for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++) {
-                Color pixel = new Color(image.getRGB(x, y));
-                
-                int r = (int) Math.max(0, Math.min(255, contrast * pixel.getRed() + brightness));
-                int g = (int) Math.max(0, Math.min(255, contrast * pixel.getGreen() + brightness));
-                int b = (int) Math.max(0, Math.min(255, contrast * pixel.getBlue() + brightness));
-                
-                result.setRGB(x, y, new Color(r, g, b).getRGB());
+        int[] result = new int[width * height];
+        rowBands.forEachBand(height, width, (startRow, endRow) -> {
+            for (int i = startRow * width; i < endRow * width; i++) {
+                int rgb = src[i];
+                result[i] = (lut[(rgb >> 16) & 0xFF] << 16) | (lut[(rgb >> 8) & 0xFF] << 8) | lut[rgb & 0xFF];
             }
-        }
+        });
         
         return result;
     }
@@ -1378,26 +989,12 @@ public class ImagePreprocessor {
     /**
      * 聊天界面专用的阈值计算
      */
-    private int calculateChatThreshold(BufferedImage image, int centerX, int centerY, int windowSize) {
-        int width = image.getWidth();
-        int height = image.getHeight();
+    private int calculateChatThreshold(IntegralImage graySums, int centerX, int centerY, int windowSize) {
         int halfWindow = windowSize / 2;
         
-        int sum = 0;
-        int count = 0;
-        
         // 计算局部区域的平均亮度
-        for (int y = Math.max(0, centerY - halfWindow); y <= Math.min(height - 1, centerY + halfWindow); y++) {
-            for (int x = Math.max(0, centerX - halfWindow); x <= Math.min(width - 1, centerX + halfWindow); x++) {
-                int rgb = image.getRGB(x, y);
-                int r = (rgb >> 16) & 0xFF;
-                int g = (rgb >> 8) & 0xFF;
-                int b = rgb & 0xFF;
-                int gray = (int) (0.299 * r + 0.587 * g + 0.114 * b);
-                sum += gray;
-                count++;
-            }
-        }
+        int sum = graySums.windowSum(centerX, centerY, halfWindow);
+        int count = graySums.windowArea(centerX, centerY, halfWindow);
         
         if (count == 0) return 140; // 提高默认阈值
         
@@ -1407,79 +1004,15 @@ public class ImagePreprocessor {
         return Math.max(120, mean - 10); // 提高最小阈值
     }
     
-    /**
-     * 增强图像对比度，提高文字清晰度
-     */
-    private BufferedImage enhanceImageContrast(BufferedImage image) {
-        int width = image.getWidth();
-        int height = image.getHeight();
-        BufferedImage result = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
-        
-        // 计算图像直方图
-        int[] histogram = new int[256];
-        for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++) {
-                int rgb = image.getRGB(x, y);
-                int r = (rgb >> 16) & 0xFF;
-                int g = (rgb >> 8) & 0xFF;
-                int b = rgb & 0xFF;
-                int gray = (int) (0.299 * r + 0.587 * g + 0.114 * b);
-                histogram[gray]++;
-            }
-        }
-        
-        // 计算累积分布函数
-        int[] cdf = new int[256];
-        cdf[0] = histogram[0];
-        for (int i = 1; i < 256; i++) {
-            cdf[i] = cdf[i-1] + histogram[i];
-        }
-        
-        // 直方图均衡化
-        int totalPixels = width * height;
-        for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++) {
-                int rgb = image.getRGB(x, y);
-                int r = (rgb >> 16) & 0xFF;
-                int g = (rgb >> 8) & 0xFF;
-                int b = rgb & 0xFF;
-                int gray = (int) (0.299 * r + 0.587 * g + 0.114 * b);
-                
-                int newGray = (cdf[gray] * 255) / totalPixels;
-                
-                // 应用对比度增强
-                newGray = Math.max(0, Math.min(255, (newGray - 128) * 2 + 128));
-                
-                result.setRGB(x, y, new Color(newGray, newGray, newGray).getRGB());
-            }
-        }
-        
-        return result;
-    }
-    
     /**
      * 计算自适应阈值，保护中文字符细节
      */
-    private int calculateAdaptiveThreshold(BufferedImage image, int centerX, int centerY, int windowSize) {
-        int width = image.getWidth();
-        int height = image.getHeight();
+    private int calculateAdaptiveThreshold(IntegralImage graySums, int centerX, int centerY, int windowSize) {
         int halfWindow = windowSize / 2;
         
-        int sum = 0;
-        int count = 0;
-        
         // 计算局部区域的平均亮度
-        for (int y = Math.max(0, centerY - halfWindow); y <= Math.min(height - 1, centerY + halfWindow); y++) {
-            for (int x = Math.max(0, centerX - halfWindow); x <= Math.min(width - 1, centerX + halfWindow); x++) {
-                int rgb = image.getRGB(x, y);
-                int r = (rgb >> 16) & 0xFF;
-                int g = (rgb >> 8) & 0xFF;
-                int b = rgb & 0xFF;
-                int gray = (int) (0.299 * r + 0.587 * g + 0.114 * b);
-                sum += gray;
-                count++;
-            }
-        }
+        int sum = graySums.windowSum(centerX, centerY, halfWindow);
+        int count = graySums.windowArea(centerX, centerY, halfWindow);
         
         if (count == 0) return 128; // 默认阈值
         
@@ -1488,53 +1021,65 @@ public class ImagePreprocessor {
         // 使用更保守的阈值，保护中文字符的细节
         return Math.max(100, mean - 20); // 确保阈值不会太低
     }
-    
+
     /**
-     * 计算颜色饱和度
+     * 提交调试图片，是否保存由DebugImageSink的开关和采样率决定
      */
-    private double calculateSaturation(int r, int g, int b) {
-        int max = Math.max(Math.max(r, g), b);
-        int min = Math.min(Math.min(r, g), b);
-        if (max == 0) return 0;
-        return (double)(max - min) / max;
+    private void saveDebugImage(String tag, BufferedImage image) {
+        if (debugImageSink != null) {
+            debugImageSink.submit(tag, image);
+        }
     }
-    
+
     /**
-     * 清理噪声的形态学操作
+     * 解码图像字节数组，无法识别格式时抛出异常
      */
-    private BufferedImage cleanupNoise(BufferedImage image) {
-        int width = image.getWidth();
-        int height = image.getHeight();
-        BufferedImage cleaned = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
-        
-        // 使用3x3核进行形态学开运算（先腐蚀后膨胀）
-        for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++) {
-                int blackCount = 0;
-                int totalCount = 0;
-                
-                // 检查3x3邻域
-                for (int dy = -1; dy <= 1; dy++) {
-                    for (int dx = -1; dx <= 1; dx++) {
-                        int nx = x + dx;
-                        int ny = y + dy;
-                        if (nx >= 0 && nx < width && ny >= 0 && ny < height) {
-                            int pixel = image.getRGB(nx, ny) & 0xFF;
-                            if (pixel < 128) blackCount++;
-                            totalCount++;
-                        }
-                    }
-                }
-                
-                // 如果邻域中黑色像素比例足够高，保留黑色
-                if (blackCount >= 3) {
-                    cleaned.setRGB(x, y, 0x000000);
-                } else {
-                    cleaned.setRGB(x, y, 0xFFFFFF);
-                }
-            }
+    private static DecodedImage readImage(byte[] imageBytes) throws IOException {
+        DecodedImage decodedImage = DecodedImage.read(imageBytes);
+        if (decodedImage == null) {
+            throw new IOException("无法读取图像数据");
         }
-        
-        return cleaned;
+        return decodedImage;
+    }
+
+    /**
+     * 计算整幅图像的灰度平面
+     */
+    private byte[] toGrayPlane(int[] pixels, int width, int height) {
+        return toGrayPlane(pixels, width, height, RasterBufferPool.unpooled());
+    }
+
+    /**
+     * 计算整幅图像的灰度平面，平面从租约中借出
+     */
+    private byte[] toGrayPlane(int[] pixels, int width, int height, RasterBufferPool.Lease buffers) {
+        byte[] gray = buffers.bytes(width * height);
+        rowBands.forEachBand(height, width, (startRow, endRow) -> {
+            for (int i = startRow * width; i < endRow * width; i++) {
+                gray[i] = (byte) grayOf(pixels[i]);
+            }
+        });
+        return gray;
+    }
+
+    /**
+     * 提取红色通道平面（形态学操作以红色通道作为灰度值）
+     */
+    private byte[] toRedPlane(int[] pixels, int width, int height) {
+        byte[] red = new byte[width * height];
+        rowBands.forEachBand(height, width, (startRow, endRow) -> {
+            for (int i = startRow * width; i < endRow * width; i++) {
+                red[i] = (byte) (pixels[i] >> 16);
+            }
+        });
+        return red;
+    }
+
+    private static int grayOf(int rgb) {
+        return grayOf((rgb >> 16) & 0xFF, (rgb >> 8) & 0xFF, rgb & 0xFF);
+    }
+
+    private static int grayOf(int r, int g, int b) {
+        return (int) (0.299 * r + 0.587 * g + 0.114 * b);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,29 @@
+package cn.laobayou.siyubao.util;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * 预处理阶段之间传递的紧凑图像
+ * 灰度图每像素1字节，二值图每像素1位，只有在OCR引擎或调试输出需要时才转换
+ */
+public interface ImageRaster {
+
+    int getWidth();
+
+    int getHeight();
+
+    /**
+     * 像素数据占用的字节数
+     */
+    int getByteSize();
+
+    /**
+     * 包装为BufferedImage（不复制数据），之后不能再修改本图像
+     */
+    BufferedImage toBufferedImage();
+
+    /**
+     * 展开为RGB像素数组（0xRRGGBB），长度可能大于width*height，只有前width*height个元素有效
+     */
+    int[] toRgbPixels();
+}
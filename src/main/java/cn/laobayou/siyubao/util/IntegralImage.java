@@ -0,0 +1,148 @@
+package cn.laobayou.siyubao.util;
+
+import java.util.Arrays;
+
+/**
+ * 积分图（Summed-Area Table）
+ * 一次遍历建表后，任意矩形窗口的像素和都可以用4次查表在O(1)内得到，
+ * 供自适应阈值、局部均值以及邻域暗像素计数等窗口统计共用
+ *
+ * 累加值使用int保存：整幅图的前缀和可能溢出，但窗口和远小于2^31，
+ * 按补码做加减后结果仍然精确
+ *
+ * 建表按行带并行计算行内前缀和，再按列带并行完成纵向累加
+ */
+public final class IntegralImage {
+
+    private final int width;
+    private final int height;
+    private final int stride;
+
+    /**
+     * (width+1) x (height+1) 的前缀和表，第0行和第0列为0
+     */
+    private final int[] table;
+
+    private IntegralImage(int width, int height, int[] table) {
+        this.width = width;
+        this.height = height;
+        this.stride = width + 1;
+        this.table = table;
+    }
+
+    /**
+     * 对8位灰度平面建立积分图
+     * @param plane 灰度平面（无符号byte，行优先）
+     */
+    public static IntegralImage of(byte[] plane, int width, int height) {
+        return of(plane, width, height, RowBandExecutor.sequential());
+    }
+
+    public static IntegralImage of(byte[] plane, int width, int height, RowBandExecutor executor) {
+        return build(plane, width, height, -1, executor, RasterBufferPool.unpooled());
+    }
+
+    /**
+     * 对8位灰度平面建立积分图，前缀和表从租约中借出
+     */
+    public static IntegralImage of(byte[] plane, int width, int height, RowBandExecutor executor,
+                                   RasterBufferPool.Lease buffers) {
+        return build(plane, width, height, -1, executor, buffers);
+    }
+
+    /**
+     * 对"灰度值小于阈值"的指示函数建立积分图，用于统计窗口内的暗像素个数
+     * @param plane 灰度平面（无符号byte，行优先）
+     * @param threshold 严格小于该值的像素计为1
+     */
+    public static IntegralImage ofBelow(byte[] plane, int width, int height, int threshold) {
+        return ofBelow(plane, width, height, threshold, RowBandExecutor.sequential());
+    }
+
+    public static IntegralImage ofBelow(byte[] plane, int width, int height, int threshold,
+                                        RowBandExecutor executor) {
+        return build(plane, width, height, threshold, executor, RasterBufferPool.unpooled());
+    }
+
+    public static IntegralImage ofBelow(byte[] plane, int width, int height, int threshold,
+                                        RowBandExecutor executor, RasterBufferPool.Lease buffers) {
+        return build(plane, width, height, threshold, executor, buffers);
+    }
+
+    /**
+     * 分两步建表：先按行带并行计算每行的前缀和，再按列带并行向下累加
+     * 借出的表可能残留旧数据，第0行和第0列显式清零，其余位置都会被覆盖
+     * @param threshold 小于0时累加灰度值，否则累加"灰度值小于threshold"的指示值
+     */
+    private static IntegralImage build(byte[] plane, int width, int height, int threshold,
+                                       RowBandExecutor executor, RasterBufferPool.Lease buffers) {
+        int stride = width + 1;
+        int[] table = buffers.ints(stride * (height + 1));
+        Arrays.fill(table, 0, stride, 0);
+
+        executor.forEachBand(height, width, (startRow, endRow) -> {
+            for (int y = startRow; y < endRow; y++) {
+                int rowSum = 0;
+                int src = y * width;
+                int dst = (y + 1) * stride + 1;
+                table[dst - 1] = 0;
+                for (int x = 0; x < width; x++) {
+                    int value = plane[src + x] & 0xFF;
+                    rowSum += threshold < 0 ? value : (value < threshold ? 1 : 0);
+                    table[dst + x] = rowSum;
+                }
+            }
+        });
+
+        executor.forEachBand(width, height, (startColumn, endColumn) -> {
+            for (int y = 2; y <= height; y++) {
+                int above = (y - 1) * stride + 1;
+                int dst = y * stride + 1;
+                for (int x = startColumn; x < endColumn; x++) {
+                    table[dst + x] += table[above + x];
+                }
+            }
+        });
+
+        return new IntegralImage(width, height, table);
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * 矩形区域 [x0,x1] x [y0,y1]（闭区间，调用方保证已在图像范围内）的和
+     */
+    public int sum(int x0, int y0, int x1, int y1) {
+        int top = y0 * stride;
+        int bottom = (y1 + 1) * stride;
+        return table[bottom + x1 + 1] - table[top + x1 + 1] - table[bottom + x0] + table[top + x0];
+    }
+
+    /**
+     * 以(centerX, centerY)为中心、半径为halfWindow的窗口和，窗口超出图像的部分被裁掉
+     */
+    public int windowSum(int centerX, int centerY, int halfWindow) {
+        int x0 = Math.max(0, centerX - halfWindow);
+        int y0 = Math.max(0, centerY - halfWindow);
+        int x1 = Math.min(width - 1, centerX + halfWindow);
+        int y1 = Math.min(height - 1, centerY + halfWindow);
+        return sum(x0, y0, x1, y1);
+    }
+
+    /**
+     * 裁剪到图像范围后窗口内的像素个数
+     */
+    public int windowArea(int centerX, int centerY, int halfWindow) {
+        int x0 = Math.max(0, centerX - halfWindow);
+        int y0 = Math.max(0, centerY - halfWindow);
+        int x1 = Math.min(width - 1, centerX + halfWindow);
+        int y1 = Math.min(height - 1, centerY + halfWindow);
+        return (x1 - x0 + 1) * (y1 - y0 + 1);
+    }
+}
@@ -0,0 +1,157 @@
+package cn.laobayou.siyubao.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 无锁的延迟直方图（对数-线性分桶，与HdrHistogram的分桶方式相同）
+ * 以微秒为单位：小于32微秒的值每微秒一个桶，之后每个2的幂区间均分为16个桶，相对误差不超过1/16，
+ * 528个桶覆盖到约2^36微秒（19小时）。记录只是一次原子自增，多线程并发记录不需要加锁
+ */
+public class LatencyHistogram {
+
+    private static final int LINEAR_BITS = 5;
+    private static final int SUB_BUCKET_BITS = LINEAR_BITS - 1;
+    private static final int LINEAR_BUCKETS = 1 << LINEAR_BITS;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_EXPONENT = 36;
+
+    /**
+     * 桶数
+     */
+    public static final int BUCKETS = LINEAR_BUCKETS + (MAX_EXPONENT - LINEAR_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong totalCount = new AtomicLong();
+    private final AtomicLong totalMicros = new AtomicLong();
+    private final AtomicLong maxMicros = new AtomicLong();
+
+    /**
+     * 记录一次耗时
+     * @param nanos 纳秒
+     */
+    public void recordNanos(long nanos) {
+        long micros = Math.max(0, nanos / 1000);
+        counts.incrementAndGet(bucketOf(micros));
+        totalCount.incrementAndGet();
+        totalMicros.addAndGet(micros);
+        long max;
+        while (micros > (max = maxMicros.get()) && !maxMicros.compareAndSet(max, micros)) {
+            // 其他线程更新了最大值，重新比较
+        }
+    }
+
+    /**
+     * 清空计数。与并发的记录之间不做同步，清空瞬间的少量记录可能丢失
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        totalCount.set(0);
+        totalMicros.set(0);
+        maxMicros.set(0);
+    }
+
+    /**
+     * 把当前计数累加到快照中
+     */
+    public void addTo(Snapshot snapshot) {
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot.counts[i] += counts.get(i);
+        }
+        snapshot.totalCount += totalCount.get();
+        snapshot.totalMicros += totalMicros.get();
+        snapshot.maxMicros = Math.max(snapshot.maxMicros, maxMicros.get());
+    }
+
+    public Snapshot snapshot() {
+        Snapshot snapshot = new Snapshot();
+        addTo(snapshot);
+        return snapshot;
+    }
+
+    static int bucketOf(long micros) {
+        if (micros < LINEAR_BUCKETS) {
+            return (int) micros;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        if (exponent >= MAX_EXPONENT) {
+            return BUCKETS - 1;
+        }
+        int subBucket = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return LINEAR_BUCKETS + (exponent - LINEAR_BITS) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * 桶的下界（微秒）
+     */
+    static long lowerBound(int bucket) {
+        if (bucket < LINEAR_BUCKETS) {
+            return bucket;
+        }
+        int exponent = (bucket - LINEAR_BUCKETS) / SUB_BUCKETS + LINEAR_BITS;
+        int subBucket = (bucket - LINEAR_BUCKETS) % SUB_BUCKETS;
+        return (long) (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS);
+    }
+
+    /**
+     * 桶的宽度（微秒）
+     */
+    static long width(int bucket) {
+        if (bucket < LINEAR_BUCKETS) {
+            return 1;
+        }
+        int exponent = (bucket - LINEAR_BUCKETS) / SUB_BUCKETS + LINEAR_BITS;
+        return 1L << (exponent - SUB_BUCKET_BITS);
+    }
+
+    /**
+     * 直方图快照，可由多个时间段的直方图合并而成
+     */
+    public static final class Snapshot {
+
+        private final long[] counts = new long[BUCKETS];
+        private long totalCount;
+        private long totalMicros;
+        private long maxMicros;
+
+        public long getCount() {
+            return totalCount;
+        }
+
+        /**
+         * 平均值（毫秒）
+         */
+        public double getMeanMs() {
+            return totalCount > 0 ? totalMicros / 1000.0 / totalCount : 0;
+        }
+
+        /**
+         * 最大值（毫秒）
+         */
+        public double getMaxMs() {
+            return maxMicros / 1000.0;
+        }
+
+        /**
+         * 百分位值（毫秒），取所在桶的中点，不超过记录到的最大值
+         * @param percentile 0到100
+         */
+        public double getPercentileMs(double percentile) {
+            if (totalCount == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * totalCount));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    double middle = lowerBound(i) + (width(i) - 1) / 2.0;
+                    return Math.min(middle, maxMicros) / 1000.0;
+                }
+            }
+            return maxMicros / 1000.0;
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package cn.laobayou.siyubao.util;
+
+import java.util.Arrays;
+
+/**
+ * 形态学滤波（腐蚀、膨胀、开运算、闭运算）
+ * 方形结构元素可以分解为先按行、再按列的一维最小/最大值滤波，
+ * 一维滤波使用van Herk/Gil-Werman算法：按窗口长度分块，计算块内前缀和后缀极值，
+ * 每个输出只需要一次比较，耗时与结构元素大小无关
+ *
+ * 输入输出均为8位灰度平面（无符号byte，行优先）；二值图按0/255存储时同样适用，
+ * 此时最小/最大值滤波即二值腐蚀/膨胀。窗口超出图像的部分不参与计算
+ *
+ * 行方向按行带并行；列方向每个行带额外读取上下各radius行的halo，独立完成分块计算
+ */
+public final class MorphologyFilter {
+
+    private MorphologyFilter() {
+    }
+
+    /**
+     * 腐蚀：(2*radius+1)^2 邻域内的最小值
+     */
+    public static byte[] erode(byte[] src, int width, int height, int radius) {
+        return erode(src, width, height, radius, RowBandExecutor.sequential());
+    }
+
+    public static byte[] erode(byte[] src, int width, int height, int radius, RowBandExecutor executor) {
+        return filter(src, width, height, radius, true, executor);
+    }
+
+    /**
+     * 膨胀：(2*radius+1)^2 邻域内的最大值
+     */
+    public static byte[] dilate(byte[] src, int width, int height, int radius) {
+        return dilate(src, width, height, radius, RowBandExecutor.sequential());
+    }
+
+    public static byte[] dilate(byte[] src, int width, int height, int radius, RowBandExecutor executor) {
+        return filter(src, width, height, radius, false, executor);
+    }
+
+    /**
+     * 开运算：先腐蚀后膨胀
+     */
+    public static byte[] open(byte[] src, int width, int height, int radius) {
+        return open(src, width, height, radius, RowBandExecutor.sequential());
+    }
+
+    public static byte[] open(byte[] src, int width, int height, int radius, RowBandExecutor executor) {
+        return dilate(erode(src, width, height, radius, executor), width, height, radius, executor);
+    }
+
+    /**
+     * 闭运算：先膨胀后腐蚀
+     */
+    public static byte[] close(byte[] src, int width, int height, int radius) {
+        return close(src, width, height, radius, RowBandExecutor.sequential());
+    }
+
+    public static byte[] close(byte[] src, int width, int height, int radius, RowBandExecutor executor) {
+        return erode(dilate(src, width, height, radius, executor), width, height, radius, executor);
+    }
+
+    private static byte[] filter(byte[] src, int width, int height, int radius, boolean min,
+                                 RowBandExecutor executor) {
+        if (radius <= 0) {
+            return src.clone();
+        }
+
+        // 1. 行方向
+        byte[] horizontal = new byte[width * height];
+        executor.forEachBand(height, width, (startRow, endRow) -> {
+            int paddedLength = width + 2 * radius;
+            int[] prefix = new int[paddedLength];
+            int[] suffix = new int[paddedLength];
+            for (int y = startRow; y < endRow; y++) {
+                filterRow(src, horizontal, y * width, width, radius, min, prefix, suffix);
+            }
+        });
+
+        // 2. 列方向
+        byte[] result = new byte[width * height];
+        executor.forEachBand(height, width, (startRow, endRow) ->
+                filterColumns(horizontal, result, width, height, radius, min, startRow, endRow));
+        return result;
+    }
+
+    /**
+     * 对一行做一维van Herk/Gil-Werman滤波
+     */
+    private static void filterRow(byte[] src, byte[] dst, int offset, int length, int radius, boolean min,
+                                  int[] prefix, int[] suffix) {
+        int window = 2 * radius + 1;
+        int pad = min ? 255 : 0;
+        int paddedLength = length + 2 * radius;
+
+        // 块内前缀极值
+        int position = 0;
+        for (int i = 0; i < paddedLength; i++) {
+            int value = i < radius || i >= radius + length ? pad : src[offset + i - radius] & 0xFF;
+            if (position == 0) {
+                prefix[i] = value;
+            } else {
+                prefix[i] = min ? Math.min(prefix[i - 1], value) : Math.max(prefix[i - 1], value);
+            }
+            if (++position == window) {
+                position = 0;
+            }
+        }
+
+        // 块内后缀极值
+        for (int i = paddedLength - 1; i >= 0; i--) {
+            int value = i < radius || i >= radius + length ? pad : src[offset + i - radius] & 0xFF;
+            if (i == paddedLength - 1 || i % window == window - 1) {
+                suffix[i] = value;
+            } else {
+                suffix[i] = min ? Math.min(suffix[i + 1], value) : Math.max(suffix[i + 1], value);
+            }
+        }
+
+        // 窗口[x, x+2r]最多跨越两个块
+        for (int x = 0; x < length; x++) {
+            int a = suffix[x];
+            int b = prefix[x + 2 * radius];
+            dst[offset + x] = (byte) (min ? Math.min(a, b) : Math.max(a, b));
+        }
+    }
+
+    /**
+     * 列方向的van Herk/Gil-Werman滤波，计算输出行 [startRow, endRow)
+     * 按整行逐元素计算以保持顺序访问内存；分块从startRow开始对齐，
+     * 需要读取 [startRow - radius, endRow + radius) 范围内的输入行
+     */
+    private static void filterColumns(byte[] src, byte[] dst, int width, int height, int radius, boolean min,
+                                      int startRow, int endRow) {
+        int window = 2 * radius + 1;
+        int localHeight = endRow - startRow + 2 * radius;
+        byte pad = (byte) (min ? 255 : 0);
+        byte[] prefix = new byte[localHeight * width];
+        byte[] suffix = new byte[localHeight * width];
+
+        for (int q = 0, position = 0; q < localHeight; q++) {
+            int rowOffset = q * width;
+            int srcRow = startRow + q - radius;
+            int srcOffset = srcRow * width;
+            boolean padded = srcRow < 0 || srcRow >= height;
+            if (position == 0) {
+                if (padded) {
+                    Arrays.fill(prefix, rowOffset, rowOffset + width, pad);
+                } else {
+                    System.arraycopy(src, srcOffset, prefix, rowOffset, width);
+                }
+            } else if (padded) {
+                combineRow(prefix, rowOffset - width, pad, prefix, rowOffset, width, min);
+            } else {
+                combineRows(prefix, rowOffset - width, src, srcOffset, prefix, rowOffset, width, min);
+            }
+            if (++position == window) {
+                position = 0;
+            }
+        }
+
+        for (int q = localHeight - 1; q >= 0; q--) {
+            int rowOffset = q * width;
+            int srcRow = startRow + q - radius;
+            int srcOffset = srcRow * width;
+            boolean padded = srcRow < 0 || srcRow >= height;
+            if (q == localHeight - 1 || q % window == window - 1) {
+                if (padded) {
+                    Arrays.fill(suffix, rowOffset, rowOffset + width, pad);
+                } else {
+                    System.arraycopy(src, srcOffset, suffix, rowOffset, width);
+                }
+            } else if (padded) {
+                combineRow(suffix, rowOffset + width, pad, suffix, rowOffset, width, min);
+            } else {
+                combineRows(suffix, rowOffset + width, src, srcOffset, suffix, rowOffset, width, min);
+            }
+        }
+
+        for (int y = startRow; y < endRow; y++) {
+            int q = y - startRow;
+            combineRows(suffix, q * width, prefix, (q + 2 * radius) * width, dst, y * width, width, min);
+        }
+    }
+
+    private static void combineRows(byte[] a, int aOffset, byte[] b, int bOffset, byte[] dst, int dstOffset,
+                                    int length, boolean min) {
+        for (int i = 0; i < length; i++) {
+            int va = a[aOffset + i] & 0xFF;
+            int vb = b[bOffset + i] & 0xFF;
+            dst[dstOffset + i] = (byte) (min ? Math.min(va, vb) : Math.max(va, vb));
+        }
+    }
+
+    private static void combineRow(byte[] a, int aOffset, byte value, byte[] dst, int dstOffset,
+                                   int length, boolean min) {
+        int vb = value & 0xFF;
+        for (int i = 0; i < length; i++) {
+            int va = a[aOffset + i] & 0xFF;
+            dst[dstOffset + i] = (byte) (min ? Math.min(va, vb) : Math.max(va, vb));
+        }
+    }
+}
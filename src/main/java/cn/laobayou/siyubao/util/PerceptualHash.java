@@ -0,0 +1,144 @@
+package cn.laobayou.siyubao.util;
+
+/**
+ * 感知哈希（dHash）
+ * 将灰度图按面积平均缩小到17x16，每行比较相邻两格的亮度，左边更亮记为1，得到256位哈希。
+ * 重新编码、轻微缩放或裁剪只会翻转少量位，用汉明距离判断两张图像是否近似；
+ * 聊天截图的整体布局彼此相似，64位哈希容易误判，所以取256位，并同时比较宽高比。
+ *
+ * 17x16的格子里文字行被平均成灰色，同一个应用的两张截图只要气泡位置相同，哈希距离就可能为0。
+ * 所以同时保存48x96的亮度缩略图（每格约一个字大小），哈希相近时再逐格比较，
+ * 文字不同的格子亮度相差明显，重新压缩和缩放几乎不会让格子亮度变化超过{@link #CHANGED_CELL_LEVELS}
+ */
+public final class PerceptualHash {
+
+    private static final int GRID_WIDTH = 17;
+    private static final int GRID_HEIGHT = 16;
+    private static final int THUMBNAIL_WIDTH = 48;
+    private static final int THUMBNAIL_HEIGHT = 96;
+
+    /**
+     * 缩略图格子亮度相差达到该值时视为内容不同
+     */
+    public static final int CHANGED_CELL_LEVELS = 24;
+
+    /**
+     * 哈希位数
+     */
+    public static final int BITS = (GRID_WIDTH - 1) * GRID_HEIGHT;
+
+    private final long[] bits;
+    private final double aspectRatio;
+
+    /**
+     * 亮度缩略图，每格一个字节（0-255）
+     */
+    private final byte[] thumbnail;
+
+    private PerceptualHash(long[] bits, double aspectRatio, byte[] thumbnail) {
+        this.bits = bits;
+        this.aspectRatio = aspectRatio;
+        this.thumbnail = thumbnail;
+    }
+
+    /**
+     * 计算已解码图像的哈希，图像可以是采样解码的缩小图
+     */
+    public static PerceptualHash of(DecodedImage image) {
+        return of(image.getRgbPixels(), image.getWidth(), image.getHeight());
+    }
+
+    /**
+     * 计算哈希
+     * @param pixels RGB像素（行优先，0xRRGGBB）
+     * @param width 宽度
+     * @param height 高度
+     */
+    public static PerceptualHash of(int[] pixels, int width, int height) {
+        // 按面积平均缩小：每个像素累加到它所在的格子
+        long[] sums = new long[GRID_WIDTH * GRID_HEIGHT];
+        int[] counts = new int[GRID_WIDTH * GRID_HEIGHT];
+        long[] thumbnailSums = new long[THUMBNAIL_WIDTH * THUMBNAIL_HEIGHT];
+        int[] thumbnailCounts = new int[THUMBNAIL_WIDTH * THUMBNAIL_HEIGHT];
+        int[] columnCell = new int[width];
+        int[] thumbnailColumn = new int[width];
+        for (int x = 0; x < width; x++) {
+            columnCell[x] = x * GRID_WIDTH / width;
+            thumbnailColumn[x] = x * THUMBNAIL_WIDTH / width;
+        }
+        for (int y = 0; y < height; y++) {
+            int cellRow = y * GRID_HEIGHT / height * GRID_WIDTH;
+            int thumbnailRow = (int) ((long) y * THUMBNAIL_HEIGHT / height) * THUMBNAIL_WIDTH;
+            int row = y * width;
+            for (int x = 0; x < width; x++) {
+                int rgb = pixels[row + x];
+                int luminance = ((rgb >> 16) & 0xFF) * 299 + ((rgb >> 8) & 0xFF) * 587 + (rgb & 0xFF) * 114;
+                int cell = cellRow + columnCell[x];
+                sums[cell] += luminance;
+                counts[cell]++;
+                int thumbnailCell = thumbnailRow + thumbnailColumn[x];
+                thumbnailSums[thumbnailCell] += luminance;
+                thumbnailCounts[thumbnailCell]++;
+            }
+        }
+        byte[] thumbnail = new byte[THUMBNAIL_WIDTH * THUMBNAIL_HEIGHT];
+        for (int i = 0; i < thumbnail.length; i++) {
+            // 图像比缩略图小时部分格子没有像素，按0处理
+            thumbnail[i] = (byte) (thumbnailCounts[i] > 0 ? thumbnailSums[i] / thumbnailCounts[i] / 1000 : 0);
+        }
+
+        long[] bits = new long[(BITS + 63) / 64];
+        int bit = 0;
+        for (int gy = 0; gy < GRID_HEIGHT; gy++) {
+            for (int gx = 0; gx < GRID_WIDTH - 1; gx++) {
+                int left = gy * GRID_WIDTH + gx;
+                // 比较平均值：sums[left]/counts[left] > sums[right]/counts[right]
+                if (sums[left] * counts[left + 1] > sums[left + 1] * counts[left]) {
+                    bits[bit >> 6] |= 1L << (bit & 63);
+                }
+                bit++;
+            }
+        }
+        return new PerceptualHash(bits, height > 0 ? (double) width / height : 0, thumbnail);
+    }
+
+    /**
+     * 与另一个哈希的汉明距离
+     */
+    public int distance(PerceptualHash other) {
+        int distance = 0;
+        for (int i = 0; i < bits.length; i++) {
+            distance += Long.bitCount(bits[i] ^ other.bits[i]);
+        }
+        return distance;
+    }
+
+    /**
+     * 与另一个哈希相比，缩略图中亮度相差至少{@link #CHANGED_CELL_LEVELS}的格子数
+     */
+    public int changedCells(PerceptualHash other) {
+        int changed = 0;
+        for (int i = 0; i < thumbnail.length; i++) {
+            if (Math.abs((thumbnail[i] & 0xFF) - (other.thumbnail[i] & 0xFF)) >= CHANGED_CELL_LEVELS) {
+                changed++;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * 宽高比
+     */
+    public double getAspectRatio() {
+        return aspectRatio;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder hex = new StringBuilder(bits.length * 16);
+        for (int i = bits.length - 1; i >= 0; i--) {
+            hex.append(String.format("%016x", bits[i]));
+        }
+        return hex.toString();
+    }
+}
@@ -0,0 +1,115 @@
+package cn.laobayou.siyubao.util;
+
+import java.awt.color.ColorSpace;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.IndexColorModel;
+import java.awt.image.Raster;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 未压缩的PNM编码（二进制PBM/PGM/PPM）
+ * 交给OCR引擎的图像只在进程间传递一次，不需要压缩：二值图编码为PBM（每像素1位），
+ * 灰度图编码为PGM，其余编码为PPM。编码只是逐行拷贝像素，比PNG的压缩和解压便宜得多，leptonica可以直接读取
+ */
+public final class PnmEncoder {
+
+    private PnmEncoder() {
+    }
+
+    /**
+     * 按图像类型选择PBM、PGM或PPM编码，支持getSubimage得到的子图
+     */
+    public static byte[] encode(BufferedImage image) {
+        ColorModel colorModel = image.getColorModel();
+        if (colorModel instanceof IndexColorModel && colorModel.getPixelSize() == 1
+                && ((IndexColorModel) colorModel).getMapSize() == 2) {
+            return encodePbm(image, (IndexColorModel) colorModel);
+        }
+        if (colorModel.getColorSpace().getType() == ColorSpace.TYPE_GRAY
+                && colorModel.getNumComponents() == 1 && colorModel.getPixelSize() == 8) {
+            return encodePgm(image);
+        }
+        return encodePpm(image);
+    }
+
+    /**
+     * PBM：位为1表示黑色，行内高位在前，每行按字节对齐
+     */
+    private static byte[] encodePbm(BufferedImage image, IndexColorModel colorModel) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        boolean[] black = new boolean[2];
+        for (int i = 0; i < 2; i++) {
+            int rgb = colorModel.getRGB(i);
+            black[i] = ((rgb >> 16 & 0xFF) * 299 + (rgb >> 8 & 0xFF) * 587 + (rgb & 0xFF) * 114) / 1000 < 128;
+        }
+
+        int stride = (width + 7) >> 3;
+        byte[] header = header("P4", width, height, -1);
+        byte[] result = new byte[header.length + stride * height];
+        System.arraycopy(header, 0, result, 0, header.length);
+
+        Raster raster = image.getRaster();
+        int[] row = new int[width];
+        int offset = header.length;
+        for (int y = 0; y < height; y++) {
+            raster.getSamples(raster.getMinX(), raster.getMinY() + y, width, 1, 0, row);
+            for (int x = 0; x < width; x++) {
+                if (black[row[x]]) {
+                    result[offset + (x >> 3)] |= (byte) (0x80 >>> (x & 7));
+                }
+            }
+            offset += stride;
+        }
+        return result;
+    }
+
+    private static byte[] encodePgm(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        byte[] header = header("P5", width, height, 255);
+        byte[] result = new byte[header.length + width * height];
+        System.arraycopy(header, 0, result, 0, header.length);
+
+        Raster raster = image.getRaster();
+        int[] row = new int[width];
+        int offset = header.length;
+        for (int y = 0; y < height; y++) {
+            raster.getSamples(raster.getMinX(), raster.getMinY() + y, width, 1, 0, row);
+            for (int x = 0; x < width; x++) {
+                result[offset++] = (byte) row[x];
+            }
+        }
+        return result;
+    }
+
+    private static byte[] encodePpm(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        byte[] header = header("P6", width, height, 255);
+        byte[] result = new byte[header.length + width * height * 3];
+        System.arraycopy(header, 0, result, 0, header.length);
+
+        int[] row = new int[width];
+        int offset = header.length;
+        for (int y = 0; y < height; y++) {
+            image.getRGB(0, y, width, 1, row, 0, width);
+            for (int x = 0; x < width; x++) {
+                int rgb = row[x];
+                result[offset++] = (byte) (rgb >> 16);
+                result[offset++] = (byte) (rgb >> 8);
+                result[offset++] = (byte) rgb;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 文件头，maxValue为负时省略（PBM没有最大值字段）
+     */
+    private static byte[] header(String magic, int width, int height, int maxValue) {
+        String header = magic + "\n" + width + " " + height + "\n" + (maxValue >= 0 ? maxValue + "\n" : "");
+        return header.getBytes(StandardCharsets.US_ASCII);
+    }
+}
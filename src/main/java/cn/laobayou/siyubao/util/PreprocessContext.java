@@ -0,0 +1,79 @@
+package cn.laobayou.siyubao.util;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * 一次预处理的上下文
+ * 持有原图和当前阶段的图像，当前图像可能是RGB、灰度或二值图
+ */
+public class PreprocessContext {
+
+    private final DecodedImage source;
+    private ImageRaster raster;
+    private boolean modified;
+
+    public PreprocessContext(DecodedImage source) {
+        this.source = source;
+    }
+
+    /**
+     * 原图
+     */
+    public DecodedImage getSource() {
+        return source;
+    }
+
+    /**
+     * 本次请求的缓冲区租约
+     */
+    public RasterBufferPool.Lease getBuffers() {
+        return source.getBuffers();
+    }
+
+    /**
+     * 当前图像，还没有阶段修改过时为原图像素
+     */
+    public ImageRaster getRaster() {
+        if (raster == null) {
+            raster = new RgbRaster(source.getWidth(), source.getHeight(), source.getRgbPixels());
+        }
+        return raster;
+    }
+
+    /**
+     * 当前图像的RGB像素，灰度图和二值图会展开为RGB
+     */
+    public int[] getRgbPixels() {
+        return getRaster().toRgbPixels();
+    }
+
+    public int getWidth() {
+        return getRaster().getWidth();
+    }
+
+    public int getHeight() {
+        return getRaster().getHeight();
+    }
+
+    /**
+     * 写入阶段的处理结果
+     */
+    public void setRaster(ImageRaster raster) {
+        this.raster = raster;
+        this.modified = true;
+    }
+
+    /**
+     * 是否有阶段修改过图像
+     */
+    public boolean isModified() {
+        return modified;
+    }
+
+    /**
+     * 当前图像，未经修改时直接返回原图
+     */
+    public BufferedImage toBufferedImage() {
+        return modified ? raster.toBufferedImage() : source.getImage();
+    }
+}
@@ -0,0 +1,172 @@
+package cn.laobayou.siyubao.util;
+
+import cn.laobayou.siyubao.config.PreprocessPipelineProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * 可配置的预处理流水线
+ * 所有注册的{@link PreprocessStage}按名称登记，每种背景类型按配置的阶段列表依次执行，
+ * 记录每个阶段的耗时和处理的像素数，便于不改代码调整成本与识别效果
+ */
+@Slf4j
+@Component
+public class PreprocessPipeline {
+
+    @Autowired
+    private List<PreprocessStage> registeredStages;
+
+    @Autowired
+    private PreprocessPipelineProperties properties;
+
+    @Autowired
+    private DebugImageSink debugImageSink;
+
+    private final Map<String, PreprocessStage> stages = new HashMap<>();
+    private final Map<String, List<PreprocessStage>> pipelines = new LinkedHashMap<>();
+    private final Map<String, StageTimer> timers = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        for (PreprocessStage stage : registeredStages) {
+            if (stages.put(stage.getName(), stage) != null) {
+                throw new IllegalStateException("预处理阶段名称重复: " + stage.getName());
+            }
+        }
+
+        Map<String, List<String>> profiles = new LinkedHashMap<>(PreprocessPipelineProperties.defaultProfiles());
+        profiles.putAll(properties.getProfiles());
+        for (Map.Entry<String, List<String>> entry : profiles.entrySet()) {
+            List<PreprocessStage> pipeline = new ArrayList<>();
+            for (String name : entry.getValue()) {
+                PreprocessStage stage = stages.get(name);
+                if (stage == null) {
+                    throw new IllegalStateException("流水线 " + entry.getKey() + " 引用了未知的预处理阶段: " + name
+                            + "，可用阶段: " + stages.keySet());
+                }
+                pipeline.add(stage);
+            }
+            pipelines.put(entry.getKey(), Collections.unmodifiableList(pipeline));
+            log.info("预处理流水线 {}: {}", entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * 按背景类型执行流水线
+     * @param profile 背景类型（流水线名称）
+     * @param decodedImage 已解码的图像
+     * @return 处理后的图像，没有阶段修改图像时返回原图
+     */
+    public BufferedImage run(String profile, DecodedImage decodedImage) {
+        return run(profile, decodedImage, null);
+    }
+
+    /**
+     * 按背景类型执行流水线，每个阶段结束后回调其耗时
+     * @param profile 背景类型（流水线名称）
+     * @param decodedImage 已解码的图像
+     * @param stageListener 接收阶段名称和耗时（纳秒），可以为null
+     * @return 处理后的图像，没有阶段修改图像时返回原图
+     */
+    public BufferedImage run(String profile, DecodedImage decodedImage, ObjLongConsumer<String> stageListener) {
+        List<PreprocessStage> pipeline = pipelines.get(profile);
+        if (pipeline == null) {
+            log.warn("未配置预处理流水线: {}，使用原始图像", profile);
+            return decodedImage.getImage();
+        }
+
+        PreprocessContext context = new PreprocessContext(decodedImage);
+        for (PreprocessStage stage : pipeline) {
+            long pixels = (long) context.getWidth() * context.getHeight();
+            long start = System.nanoTime();
+            stage.apply(context);
+            long elapsed = System.nanoTime() - start;
+            timers.computeIfAbsent(stage.getName(), k -> new StageTimer()).record(elapsed, pixels);
+            if (stageListener != null) {
+                stageListener.accept(stage.getName(), elapsed);
+            }
+            log.debug("预处理阶段 {} 完成，耗时: {}ms，像素数: {}", stage.getName(), elapsed / 1_000_000, pixels);
+        }
+
+        BufferedImage result = context.toBufferedImage();
+        if (context.isModified()) {
+            debugImageSink.submit(profile, result);
+        }
+        return result;
+    }
+
+    /**
+     * 当前生效的流水线配置
+     */
+    public Map<String, List<String>> getPipelines() {
+        Map<String, List<String>> result = new LinkedHashMap<>();
+        for (Map.Entry<String, List<PreprocessStage>> entry : pipelines.entrySet()) {
+            List<String> names = new ArrayList<>();
+            for (PreprocessStage stage : entry.getValue()) {
+                names.add(stage.getName());
+            }
+            result.put(entry.getKey(), names);
+        }
+        return result;
+    }
+
+    /**
+     * 各阶段的耗时统计
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        for (Map.Entry<String, StageTimer> entry : timers.entrySet()) {
+            stats.put(entry.getKey(), entry.getValue().toMap());
+        }
+        return stats;
+    }
+
+    /**
+     * 重置阶段统计
+     */
+    public void resetStatistics() {
+        timers.clear();
+    }
+
+    private static final class StageTimer {
+
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAdder totalPixels = new LongAdder();
+        private final AtomicLong maxNanos = new AtomicLong();
+
+        void record(long nanos, long pixels) {
+            count.increment();
+            totalNanos.add(nanos);
+            totalPixels.add(pixels);
+            maxNanos.accumulateAndGet(nanos, Math::max);
+        }
+
+        Map<String, Object> toMap() {
+            long runs = count.sum();
+            long nanos = totalNanos.sum();
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("count", runs);
+            map.put("totalMs", nanos / 1_000_000);
+            map.put("avgMs", runs > 0 ? String.format("%.2f", nanos / 1_000_000.0 / runs) : "N/A");
+            map.put("maxMs", maxNanos.get() / 1_000_000);
+            map.put("totalPixels", totalPixels.sum());
+            map.put("nsPerPixel", totalPixels.sum() > 0 ? String.format("%.2f", (double) nanos / totalPixels.sum()) : "N/A");
+            return map;
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package cn.laobayou.siyubao.util;
+
+import java.util.function.Consumer;
+
+/**
+ * 预处理流水线中的一个阶段
+ * 阶段以Spring Bean注册，按名称在application.yml中组合成各背景类型的流水线
+ */
+public interface PreprocessStage {
+
+    /**
+     * 阶段名称，流水线配置中引用
+     */
+    String getName();
+
+    /**
+     * 处理上下文中的当前图像，结果写回上下文
+     */
+    void apply(PreprocessContext context);
+
+    /**
+     * 用方法引用创建阶段
+     */
+    static PreprocessStage of(String name, Consumer<PreprocessContext> action) {
+        return new PreprocessStage() {
+            @Override
+            public String getName() {
+                return name;
+            }
+
+            @Override
+            public void apply(PreprocessContext context) {
+                action.accept(context);
+            }
+        };
+    }
+}
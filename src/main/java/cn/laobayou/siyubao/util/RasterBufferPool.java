@@ -0,0 +1,202 @@
+package cn.laobayou.siyubao.util;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 跨请求复用的像素缓冲区池
+ * 按长度档位分类保存int[]和byte[]：请求的长度向上取整到档位（每个2的幂区间再等分为8档，浪费不超过12.5%），
+ * 池中的数组按档位长度分配，1080x2400和1080x2340这类相近的分辨率落在同一档，可以互相复用。
+ * 每个请求通过{@link #lease()}借出一组缓冲区，在finally中关闭租约统一归还；
+ * 池中保留的总字节数和每个档位保留的数量都有上限，超出时直接丢弃交给GC
+ */
+@Component
+public class RasterBufferPool {
+
+    private static final Lease UNPOOLED = new Lease(null);
+
+    /**
+     * 每个2的幂区间划分的档位数
+     */
+    private static final int SIZE_CLASS_STEPS = 8;
+
+    @Value("${ocr.buffer-pool.enabled:true}")
+    private boolean enabled;
+
+    @Value("${ocr.buffer-pool.max-bytes:134217728}")
+    private long maxBytes;
+
+    @Value("${ocr.buffer-pool.max-per-class:4}")
+    private int maxPerClass;
+
+    private final Map<Integer, ArrayDeque<int[]>> intBuffers = new HashMap<>();
+    private final Map<Integer, ArrayDeque<byte[]>> byteBuffers = new HashMap<>();
+    private long retainedBytes;
+
+    // 统计信息
+    private final AtomicLong acquireCount = new AtomicLong(0);
+    private final AtomicLong hitCount = new AtomicLong(0);
+    private final AtomicLong droppedCount = new AtomicLong(0);
+
+    /**
+     * 不经过池、直接分配的租约，关闭时什么也不做
+     */
+    public static Lease unpooled() {
+        return UNPOOLED;
+    }
+
+    /**
+     * 借出一个租约，未开启时等同于{@link #unpooled()}
+     */
+    public Lease lease() {
+        return enabled ? new Lease(this) : UNPOOLED;
+    }
+
+    /**
+     * 获取统计信息
+     */
+    public synchronized Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new HashMap<>();
+        long acquired = acquireCount.get();
+        stats.put("enabled", enabled);
+        stats.put("acquireCount", acquired);
+        stats.put("hitCount", hitCount.get());
+        stats.put("hitRate", acquired > 0 ? String.format("%.2f%%", hitCount.get() * 100.0 / acquired) : "N/A");
+        stats.put("droppedCount", droppedCount.get());
+        stats.put("retainedBytes", retainedBytes);
+        stats.put("sizeClasses", intBuffers.size() + byteBuffers.size());
+        return stats;
+    }
+
+    /**
+     * 长度所在档位的数组长度：取最高位对应的2的幂，把它到下一个2的幂之间等分为8档，向上取整
+     */
+    static int sizeClass(int length) {
+        if (length <= SIZE_CLASS_STEPS) {
+            return length;
+        }
+        int step = Integer.highestOneBit(length - 1) / SIZE_CLASS_STEPS;
+        long rounded = (length + (long) step - 1) / step * step;
+        return rounded > Integer.MAX_VALUE ? length : (int) rounded;
+    }
+
+    private int[] takeInts(int length) {
+        acquireCount.incrementAndGet();
+        int sizeClass = sizeClass(length);
+        synchronized (this) {
+            ArrayDeque<int[]> buffers = intBuffers.get(sizeClass);
+            if (buffers != null && !buffers.isEmpty()) {
+                hitCount.incrementAndGet();
+                retainedBytes -= (long) sizeClass * Integer.BYTES;
+                return buffers.pop();
+            }
+        }
+        return new int[sizeClass];
+    }
+
+    private byte[] takeBytes(int length) {
+        acquireCount.incrementAndGet();
+        int sizeClass = sizeClass(length);
+        synchronized (this) {
+            ArrayDeque<byte[]> buffers = byteBuffers.get(sizeClass);
+            if (buffers != null && !buffers.isEmpty()) {
+                hitCount.incrementAndGet();
+                retainedBytes -= sizeClass;
+                return buffers.pop();
+            }
+        }
+        return new byte[sizeClass];
+    }
+
+    private synchronized void giveInts(int[] buffer) {
+        long size = (long) buffer.length * Integer.BYTES;
+        ArrayDeque<int[]> buffers = intBuffers.get(buffer.length);
+        if ((buffers != null && buffers.size() >= maxPerClass) || retainedBytes + size > maxBytes) {
+            droppedCount.incrementAndGet();
+            return;
+        }
+        if (buffers == null) {
+            buffers = new ArrayDeque<>();
+            intBuffers.put(buffer.length, buffers);
+        }
+        buffers.push(buffer);
+        retainedBytes += size;
+    }
+
+    private synchronized void giveBytes(byte[] buffer) {
+        ArrayDeque<byte[]> buffers = byteBuffers.get(buffer.length);
+        if ((buffers != null && buffers.size() >= maxPerClass) || retainedBytes + buffer.length > maxBytes) {
+            droppedCount.incrementAndGet();
+            return;
+        }
+        if (buffers == null) {
+            buffers = new ArrayDeque<>();
+            byteBuffers.put(buffer.length, buffers);
+        }
+        buffers.push(buffer);
+        retainedBytes += buffer.length;
+    }
+
+    /**
+     * 一个请求借出的缓冲区
+     * 借出的数组长度是所在档位的长度，可能大于请求的长度，调用方只能使用前length个元素；
+     * 借出的数组内容未定义（可能残留上一个请求的数据），调用方必须完整覆盖后再读取；
+     * 关闭后所有借出的数组都已归还，不能再使用。只在请求线程中借出，不是线程安全的
+     */
+    public static final class Lease implements AutoCloseable {
+
+        private final RasterBufferPool pool;
+        private final List<int[]> ints = new ArrayList<>();
+        private final List<byte[]> bytes = new ArrayList<>();
+
+        private Lease(RasterBufferPool pool) {
+            this.pool = pool;
+        }
+
+        /**
+         * 借出长度不小于length的int数组
+         */
+        public int[] ints(int length) {
+            if (pool == null) {
+                return new int[length];
+            }
+            int[] buffer = pool.takeInts(length);
+            ints.add(buffer);
+            return buffer;
+        }
+
+        /**
+         * 借出长度不小于length的byte数组
+         */
+        public byte[] bytes(int length) {
+            if (pool == null) {
+                return new byte[length];
+            }
+            byte[] buffer = pool.takeBytes(length);
+            bytes.add(buffer);
+            return buffer;
+        }
+
+        @Override
+        public void close() {
+            if (pool == null) {
+                return;
+            }
+            for (int[] buffer : ints) {
+                pool.giveInts(buffer);
+            }
+            for (byte[] buffer : bytes) {
+                pool.giveBytes(buffer);
+            }
+            ints.clear();
+            bytes.clear();
+        }
+    }
+}
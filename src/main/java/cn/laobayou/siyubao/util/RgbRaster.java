@@ -0,0 +1,82 @@
+package cn.laobayou.siyubao.util;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DirectColorModel;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+
+/**
+ * RGB图像（每像素一个int，0xRRGGBB，行优先）
+ * 预处理流水线中尚未转成灰度图或二值图的阶段使用。数组可以来自缓冲区池，长度可能大于width*height，只使用前width*height个元素
+ */
+public final class RgbRaster implements ImageRaster {
+
+    private final int width;
+    private final int height;
+    private final int[] data;
+
+    public RgbRaster(int width, int height, int[] data) {
+        if (data.length < width * height) {
+            throw new IllegalArgumentException("RGB数据长度小于图像尺寸");
+        }
+        this.width = width;
+        this.height = height;
+        this.data = data;
+    }
+
+    /**
+     * 从BufferedImage创建，TYPE_INT_RGB图像直接共享像素数组，其余类型批量提取
+     */
+    public static RgbRaster of(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        if (image.getType() == BufferedImage.TYPE_INT_RGB
+                && image.getRaster().getDataBuffer() instanceof DataBufferInt
+                && ((DataBufferInt) image.getRaster().getDataBuffer()).getData().length == width * height) {
+            return new RgbRaster(width, height, ((DataBufferInt) image.getRaster().getDataBuffer()).getData());
+        }
+        return new RgbRaster(width, height, image.getRGB(0, 0, width, height, null, 0, width));
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * 像素数据，直接返回内部数组
+     */
+    public int[] getData() {
+        return data;
+    }
+
+    @Override
+    public int getByteSize() {
+        return width * height * Integer.BYTES;
+    }
+
+    /**
+     * 包装为TYPE_INT_RGB图像（不复制数据）
+     */
+    @Override
+    public BufferedImage toBufferedImage() {
+        DirectColorModel colorModel = (DirectColorModel) ColorModel.getRGBdefault();
+        DirectColorModel rgbModel = new DirectColorModel(24,
+                colorModel.getRedMask(), colorModel.getGreenMask(), colorModel.getBlueMask());
+        WritableRaster raster = Raster.createPackedRaster(new DataBufferInt(data, width * height),
+                width, height, width, rgbModel.getMasks(), null);
+        return new BufferedImage(rgbModel, raster, false, null);
+    }
+
+    @Override
+    public int[] toRgbPixels() {
+        return data;
+    }
+}
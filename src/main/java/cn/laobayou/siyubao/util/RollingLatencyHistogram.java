@@ -0,0 +1,67 @@
+package cn.laobayou.siyubao.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 滚动时间窗口的延迟直方图
+ * 时间按固定长度分段，每段一个{@link LatencyHistogram}，循环复用；查询时合并最近若干段，得到最近一段时间的分布
+ */
+public class RollingLatencyHistogram {
+
+    private final long slotMs;
+    private final LatencyHistogram[] slots;
+    private final AtomicLongArray slotEpochs;
+
+    /**
+     * @param slotMs 每段的时长
+     * @param slotCount 段数，slotMs * slotCount 为可查询的最长窗口
+     */
+    public RollingLatencyHistogram(long slotMs, int slotCount) {
+        this.slotMs = Math.max(1, slotMs);
+        this.slots = new LatencyHistogram[Math.max(1, slotCount)];
+        this.slotEpochs = new AtomicLongArray(slots.length);
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = new LatencyHistogram();
+            slotEpochs.set(i, -1);
+        }
+    }
+
+    /**
+     * 记录一次耗时
+     * @param nanos 纳秒
+     */
+    public void recordNanos(long nanos) {
+        long epoch = System.currentTimeMillis() / slotMs;
+        int index = (int) (epoch % slots.length);
+        long slotEpoch = slotEpochs.get(index);
+        // 段已过期时由抢到CAS的线程清空后复用
+        if (slotEpoch < epoch && slotEpochs.compareAndSet(index, slotEpoch, epoch)) {
+            slots[index].reset();
+        }
+        slots[index].recordNanos(nanos);
+    }
+
+    /**
+     * 最近一段时间的分布
+     * @param windowMs 窗口长度，向上取整到段长，不超过全部段覆盖的时长
+     */
+    public LatencyHistogram.Snapshot snapshot(long windowMs) {
+        long epoch = System.currentTimeMillis() / slotMs;
+        long windowSlots = Math.min(slots.length, Math.max(1, (windowMs + slotMs - 1) / slotMs));
+        LatencyHistogram.Snapshot snapshot = new LatencyHistogram.Snapshot();
+        for (int i = 0; i < slots.length; i++) {
+            long slotEpoch = slotEpochs.get(i);
+            if (slotEpoch > epoch - windowSlots && slotEpoch <= epoch) {
+                slots[i].addTo(snapshot);
+            }
+        }
+        return snapshot;
+    }
+
+    public void reset() {
+        for (int i = 0; i < slots.length; i++) {
+            slotEpochs.set(i, -1);
+            slots[i].reset();
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package cn.laobayou.siyubao.util;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 按行带并行执行图像处理
+ * 把图像切分为若干连续的行带，在ForkJoin线程池中并行处理；每个行带只写自己负责的行，
+ * 邻域算子按需读取行带上下的halo行（输入在处理期间只读），因此各行带之间无需同步
+ *
+ * 像素数低于阈值的小图直接在调用线程中顺序执行，避免任务调度开销
+ */
+public class RowBandExecutor {
+
+    /**
+     * 行带任务：处理 [start, end) 范围内的行（或列）
+     */
+    @FunctionalInterface
+    public interface BandTask {
+        void run(int start, int end);
+    }
+
+    /**
+     * 每个并行线程切分的行带数，多切几份便于负载均衡
+     */
+    private static final int BANDS_PER_THREAD = 4;
+
+    /**
+     * 每个行带的最少行数，避免行带过窄
+     */
+    private static final int MIN_ROWS_PER_BAND = 16;
+
+    private static final RowBandExecutor SEQUENTIAL = new RowBandExecutor(null, Long.MAX_VALUE);
+
+    private final ForkJoinPool pool;
+    private final long minParallelPixels;
+
+    private RowBandExecutor(ForkJoinPool pool, long minParallelPixels) {
+        this.pool = pool;
+        this.minParallelPixels = minParallelPixels;
+    }
+
+    /**
+     * 始终在调用线程中顺序执行
+     */
+    public static RowBandExecutor sequential() {
+        return SEQUENTIAL;
+    }
+
+    /**
+     * 创建并行执行器
+     * @param parallelism 并行度，小于等于1时退化为顺序执行
+     * @param minParallelPixels 像素数达到该值才并行处理
+     */
+    public static RowBandExecutor create(int parallelism, long minParallelPixels) {
+        if (parallelism <= 1) {
+            return SEQUENTIAL;
+        }
+        AtomicInteger threadNumber = new AtomicInteger(1);
+        ForkJoinPool pool = new ForkJoinPool(parallelism, p -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+            thread.setName("Image-Preprocess-" + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }, null, false);
+        return new RowBandExecutor(pool, minParallelPixels);
+    }
+
+    /**
+     * 当前并行度，顺序执行时为1
+     */
+    public int getParallelism() {
+        return pool == null ? 1 : pool.getParallelism();
+    }
+
+    /**
+     * 对 [0, rows) 按行带执行任务
+     * @param rows 行数（列方向处理时为列数）
+     * @param rowLength 每行的像素数，用于判断是否值得并行
+     * @param task 行带任务
+     */
+    public void forEachBand(int rows, int rowLength, BandTask task) {
+        if (pool == null || rows < 2 * MIN_ROWS_PER_BAND || (long) rows * rowLength < minParallelPixels) {
+            task.run(0, rows);
+            return;
+        }
+        int bands = pool.getParallelism() * BANDS_PER_THREAD;
+        int grain = Math.max(MIN_ROWS_PER_BAND, (rows + bands - 1) / bands);
+        pool.invoke(new BandAction(task, 0, rows, grain));
+    }
+
+    /**
+     * 关闭线程池
+     */
+    public void shutdown() {
+        if (pool != null) {
+            pool.shutdown();
+            try {
+                pool.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * 二分切分行带，直到不超过grain行
+     */
+    private static class BandAction extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final BandTask task;
+        private final int start;
+        private final int end;
+        private final int grain;
+
+        BandAction(BandTask task, int start, int end, int grain) {
+            this.task = task;
+            this.start = start;
+            this.end = end;
+            this.grain = grain;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start <= grain) {
+                task.run(start, end);
+                return;
+            }
+            int middle = (start + end) >>> 1;
+            invokeAll(new BandAction(task, start, middle, grain), new BandAction(task, middle, end, grain));
+        }
+    }
+}
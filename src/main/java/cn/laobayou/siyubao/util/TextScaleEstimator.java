@@ -0,0 +1,123 @@
+package cn.laobayou.siyubao.util;
+
+import java.util.Arrays;
+
+/**
+ * 文字行高估计
+ * 将图像按列分成若干竖条，在每个竖条内统计每一行的水平边缘数（相邻像素灰度差较大的位置），
+ * 边缘足够多的行视为文字行，连续的文字行组成一个文字行带，取所有行带高度的中位数作为主要文字行高。
+ * 只看灰度差，不区分深底浅字还是浅底深字；分竖条统计避免左右两侧的聊天气泡行带相互粘连
+ */
+public final class TextScaleEstimator {
+
+    /**
+     * 竖条宽度，图像较窄时整幅作为一个竖条
+     */
+    private static final int STRIP_WIDTH = 256;
+
+    /**
+     * 视为边缘的相邻像素灰度差
+     */
+    private static final int EDGE_CONTRAST = 40;
+
+    /**
+     * 竖条内一行至少有这么多边缘才视为文字行
+     */
+    private static final int MIN_EDGES_PER_ROW = 4;
+
+    /**
+     * 行带内允许的最大空行数（如“二”“三”字中间的空白）
+     */
+    private static final int MAX_ROW_GAP = 1;
+
+    /**
+     * 有效行带的最小高度，更矮的视为噪点或分隔线
+     */
+    private static final int MIN_LINE_HEIGHT = 6;
+
+    /**
+     * 至少需要这么多个行带才给出估计
+     */
+    private static final int MIN_LINE_COUNT = 3;
+
+    private TextScaleEstimator() {
+    }
+
+    /**
+     * 估计主要文字行高
+     * @param gray 灰度平面（行优先，无符号byte）
+     * @param width 宽度
+     * @param height 高度
+     * @return 文字行高（像素），无法估计时返回0
+     */
+    public static int estimateLineHeight(byte[] gray, int width, int height) {
+        if (width < 2 || height < MIN_LINE_HEIGHT) {
+            return 0;
+        }
+        int strips = Math.max(1, width / STRIP_WIDTH);
+        int maxLineHeight = Math.max(MIN_LINE_HEIGHT, height / 4);
+        int[] heights = new int[64];
+        int count = 0;
+
+        for (int s = 0; s < strips; s++) {
+            int startX = s * width / strips;
+            int endX = (s + 1) * width / strips;
+            int runStart = -1;
+            int gap = 0;
+            for (int y = 0; y <= height; y++) {
+                boolean textRow = y < height && isTextRow(gray, y * width, startX, endX);
+                if (textRow) {
+                    if (runStart < 0) {
+                        runStart = y;
+                    }
+                    gap = 0;
+                } else if (runStart >= 0 && (++gap > MAX_ROW_GAP || y == height)) {
+                    int lineHeight = y - gap + 1 - runStart;
+                    if (lineHeight >= MIN_LINE_HEIGHT && lineHeight <= maxLineHeight) {
+                        if (count == heights.length) {
+                            heights = Arrays.copyOf(heights, count * 2);
+                        }
+                        heights[count++] = lineHeight;
+                    }
+                    runStart = -1;
+                    gap = 0;
+                }
+            }
+        }
+
+        if (count < MIN_LINE_COUNT) {
+            return 0;
+        }
+        Arrays.sort(heights, 0, count);
+        return heights[count / 2];
+    }
+
+    /**
+     * 根据文字行高计算缩放比例
+     * @param lineHeight 估计的文字行高，0表示未知
+     * @param targetLineHeight 期望的文字行高
+     * @param minScale 最小缩放比例
+     * @param maxScale 最大缩放比例
+     * @return 缩放比例，行高未知时返回1
+     */
+    public static double scaleFor(int lineHeight, int targetLineHeight, double minScale, double maxScale) {
+        if (lineHeight <= 0) {
+            return 1.0;
+        }
+        double scale = (double) targetLineHeight / lineHeight;
+        return Math.max(minScale, Math.min(maxScale, scale));
+    }
+
+    private static boolean isTextRow(byte[] gray, int row, int startX, int endX) {
+        int edges = 0;
+        int previous = gray[row + startX] & 0xFF;
+        for (int x = startX + 1; x < endX; x++) {
+            int current = gray[row + x] & 0xFF;
+            if (Math.abs(current - previous) >= EDGE_CONTRAST && ++edges >= MIN_EDGES_PER_ROW) {
+                return true;
+            }
+            previous = current;
+        }
+        return false;
+    }
+}
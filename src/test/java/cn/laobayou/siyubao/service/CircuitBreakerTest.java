@@ -0,0 +1,121 @@
+package cn.laobayou.siyubao.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 熔断器状态转换：关闭 → 打开 → 半开 → 关闭/重新打开
+ */
+public class CircuitBreakerTest {
+
+    private static final long OPEN_MS = 100;
+
+    @Test
+    public void closedOpenHalfOpenClosed() throws InterruptedException {
+        CircuitBreaker breaker = newBreaker();
+        call(breaker, true);
+        call(breaker, true);
+        call(breaker, false);
+        call(breaker, false);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+
+        // 第5次调用达到最少调用数，失败率60%
+        call(breaker, false);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquire());
+        assertTrue(breaker.getRetryAfterMs() > 0);
+
+        Thread.sleep(OPEN_MS + 20);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertTrue(breaker.tryAcquire());
+        assertTrue(breaker.tryAcquire());
+        assertFalse(breaker.tryAcquire(), "半开状态只放行配置数量的探测调用");
+        breaker.onSuccess(10);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        breaker.onSuccess(10);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+
+        // 关闭后重新统计，一次失败不会再打开
+        call(breaker, false);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void failedProbeReopens() throws InterruptedException {
+        CircuitBreaker breaker = newBreaker();
+        for (int i = 0; i < 5; i++) {
+            call(breaker, false);
+        }
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+        Thread.sleep(OPEN_MS + 20);
+        assertTrue(breaker.tryAcquire());
+        breaker.onFailure(10);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquire());
+    }
+
+    @Test
+    public void slowProbeReopens() throws InterruptedException {
+        CircuitBreaker breaker = newBreaker();
+        for (int i = 0; i < 5; i++) {
+            call(breaker, false);
+        }
+        Thread.sleep(OPEN_MS + 20);
+        assertTrue(breaker.tryAcquire());
+        breaker.onSuccess(5000);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    public void ignoredCallsDoNotOpen() {
+        CircuitBreaker breaker = newBreaker();
+        for (int i = 0; i < 20; i++) {
+            assertTrue(breaker.tryAcquire());
+            breaker.onIgnored();
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void ignoredProbeReleasesSlot() throws InterruptedException {
+        CircuitBreaker breaker = newBreaker();
+        for (int i = 0; i < 5; i++) {
+            call(breaker, false);
+        }
+        Thread.sleep(OPEN_MS + 20);
+        assertTrue(breaker.tryAcquire());
+        assertTrue(breaker.tryAcquire());
+        breaker.onIgnored();
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertTrue(breaker.tryAcquire());
+    }
+
+    @Test
+    public void staysClosedBelowMinRequests() {
+        CircuitBreaker breaker = newBreaker();
+        for (int i = 0; i < 4; i++) {
+            call(breaker, false);
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    /**
+     * 窗口60秒，至少5次调用，失败率50%打开，慢调用阈值1秒，冷却100毫秒，半开放行2次探测
+     */
+    private static CircuitBreaker newBreaker() {
+        return new CircuitBreaker("test", 60000, 6, 5, 50, 1000, 80, OPEN_MS, 2);
+    }
+
+    private static void call(CircuitBreaker breaker, boolean success) {
+        assertTrue(breaker.tryAcquire());
+        if (success) {
+            breaker.onSuccess(10);
+        } else {
+            breaker.onFailure(10);
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package cn.laobayou.siyubao.service;
+
+import cn.laobayou.siyubao.util.DecodedImage;
+import cn.laobayou.siyubao.util.PerceptualHash;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 用合成的聊天截图校验近似截图匹配：布局相同、文字不同的截图不能匹配，缩放后的同一张截图要能匹配
+ */
+public class NearDuplicateIndexTest {
+
+    private static final int WIDTH = 1080;
+    private static final int HEIGHT = 1920;
+    private static final String FINGERPRINT = "tesseract|1";
+
+    @Test
+    public void sameLayoutWithDifferentTextIsNotMatched() {
+        NearDuplicateIndex index = newIndex();
+        for (long seed = 1; seed <= 20; seed++) {
+            PerceptualHash first = hash(chatScreenshot(seed));
+            PerceptualHash second = hash(chatScreenshot(seed + 100));
+            index.clear();
+            index.add(first, FINGERPRINT, "第一张截图");
+
+            assertNull(index.find(second, FINGERPRINT), "seed " + seed + " 哈希距离 " + first.distance(second));
+        }
+    }
+
+    @Test
+    public void shortMessagesWithSameLayoutAreNotMatched() {
+        // 每行只有一个字时，17x16哈希几乎完全相同，只能靠缩略图区分
+        NearDuplicateIndex index = newIndex();
+        PerceptualHash first = hash(chatScreenshot(7, 1));
+        PerceptualHash second = hash(chatScreenshot(8, 1));
+        assertTrue(first.distance(second) <= 24, "哈希距离 " + first.distance(second));
+        index.add(first, FINGERPRINT, "第一张截图");
+
+        assertNull(index.find(second, FINGERPRINT));
+    }
+
+    @Test
+    public void rescaledCopyIsMatched() {
+        NearDuplicateIndex index = newIndex();
+        BufferedImage original = chatScreenshot(3);
+        index.add(hash(original), FINGERPRINT, "原图");
+
+        NearDuplicateIndex.Match match = index.find(hash(scale(original, 0.75)), FINGERPRINT);
+
+        assertNotNull(match);
+        assertEquals("原图", match.getText());
+    }
+
+    @Test
+    public void differentFingerprintIsNotMatched() {
+        NearDuplicateIndex index = newIndex();
+        BufferedImage original = chatScreenshot(3);
+        index.add(hash(original), FINGERPRINT, "原图");
+
+        assertNull(index.find(hash(original), "textin|1"));
+    }
+
+    private static NearDuplicateIndex newIndex() {
+        NearDuplicateIndex index = new NearDuplicateIndex();
+        ReflectionTestUtils.setField(index, "enabled", true);
+        ReflectionTestUtils.setField(index, "action", NearDuplicateIndex.ACTION_FLAG);
+        ReflectionTestUtils.setField(index, "maxDistance", 24);
+        ReflectionTestUtils.setField(index, "maxAspectDiff", 0.05);
+        ReflectionTestUtils.setField(index, "maxChangedCells", 0);
+        ReflectionTestUtils.setField(index, "maxEntries", 100);
+        index.init();
+        return index;
+    }
+
+    private static PerceptualHash hash(BufferedImage image) {
+        return PerceptualHash.of(DecodedImage.of(image));
+    }
+
+    private static BufferedImage chatScreenshot(long seed) {
+        return chatScreenshot(seed, 18);
+    }
+
+    /**
+     * 固定布局的聊天截图：标题栏、6个左右交替的气泡和头像，每个气泡3行字，只有字形随seed变化
+     */
+    private static BufferedImage chatScreenshot(long seed, int charsPerLine) {
+        int[] pixels = new int[WIDTH * HEIGHT];
+        Arrays.fill(pixels, 0xEDEDED);
+        fill(pixels, 0, 0, WIDTH, 160, 0xF7F7F7);
+        Random random = new Random(seed);
+        for (int i = 0; i < 6; i++) {
+            int y = 220 + i * 270;
+            boolean right = i % 2 == 1;
+            fill(pixels, right ? 970 : 30, y, 80, 80, 0x9E9E9E);
+            int x = right ? 430 : 130;
+            fill(pixels, x, y, 520, 190, right ? 0x95EC69 : 0xFFFFFF);
+            for (int line = 0; line < 3; line++) {
+                for (int c = 0; c < charsPerLine; c++) {
+                    glyph(pixels, x + 20 + c * 26, y + 25 + line * 55, random);
+                }
+            }
+        }
+        BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        image.setRGB(0, 0, WIDTH, HEIGHT, pixels, 0, WIDTH);
+        return image;
+    }
+
+    /**
+     * 一个24x24的“字”：4x4的笔画格随机填充
+     */
+    private static void glyph(int[] pixels, int x, int y, Random random) {
+        for (int row = 0; row < 4; row++) {
+            for (int column = 0; column < 4; column++) {
+                if (random.nextInt(5) < 2) {
+                    fill(pixels, x + column * 6, y + row * 6, 6, 6, 0x111111);
+                }
+            }
+        }
+    }
+
+    private static void fill(int[] pixels, int x, int y, int width, int height, int color) {
+        for (int row = y; row < y + height; row++) {
+            Arrays.fill(pixels, row * WIDTH + x, row * WIDTH + x + width, color);
+        }
+    }
+
+    private static BufferedImage scale(BufferedImage image, double factor) {
+        int width = (int) (image.getWidth() * factor);
+        int height = (int) (image.getHeight() * factor);
+        BufferedImage scaled = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = scaled.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g.drawImage(image, 0, 0, width, height, null);
+        g.dispose();
+        return scaled;
+    }
+}
@@ -0,0 +1,116 @@
+package cn.laobayou.siyubao.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * 校验按位压缩的二值图像与0/255灰度平面上的MorphologyFilter结果一致
+ * 宽度覆盖8的倍数和非8的倍数，行末填充位在运算后必须保持为0
+ */
+public class BinaryRasterTest {
+
+    private static final int[] WIDTHS = {1, 2, 7, 8, 9, 15, 16, 17, 23, 31, 33, 64};
+    private static final int[] HEIGHTS = {1, 2, 5, 17};
+
+    @Test
+    public void morphologyMatchesGrayPlaneFilter() {
+        Random random = new Random(11);
+        for (int width : WIDTHS) {
+            for (int height : HEIGHTS) {
+                for (int radius = 0; radius <= 3; radius++) {
+                    BinaryRaster raster = randomRaster(random, width, height);
+                    byte[] plane = raster.toGrayPlane();
+                    String label = width + "x" + height + " r=" + radius;
+
+                    assertMatches(MorphologyFilter.erode(plane, width, height, radius), raster.erode(radius), "erode " + label);
+                    assertMatches(MorphologyFilter.dilate(plane, width, height, radius), raster.dilate(radius), "dilate " + label);
+                    assertMatches(MorphologyFilter.close(plane, width, height, radius), raster.close(radius), "close " + label);
+                    assertMatches(MorphologyFilter.open(plane, width, height, radius), raster.open(radius), "open " + label);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void allWhiteRasterStaysWhiteAfterErosion() {
+        // 腐蚀时图像外和行末填充位都不能把边缘像素变黑
+        for (int width : WIDTHS) {
+            BinaryRaster raster = new BinaryRaster(width, 5);
+            for (int y = 0; y < 5; y++) {
+                for (int x = 0; x < width; x++) {
+                    raster.set(x, y, true);
+                }
+            }
+            BinaryRaster eroded = raster.erode(2);
+            for (int y = 0; y < 5; y++) {
+                for (int x = 0; x < width; x++) {
+                    if (!eroded.isWhite(x, y)) {
+                        fail("宽度" + width + " (" + x + "," + y + ") 被腐蚀为黑色");
+                    }
+                }
+            }
+            assertTailBitsClear(eroded, "erode width=" + width);
+        }
+    }
+
+    @Test
+    public void bufferedImageAndRgbPixelsMatchBits() {
+        Random random = new Random(5);
+        for (int width : WIDTHS) {
+            BinaryRaster raster = randomRaster(random, width, 3);
+            BufferedImage image = raster.toBufferedImage();
+            Raster samples = image.getRaster();
+            int[] pixels = raster.toRgbPixels();
+            assertEquals(width, image.getWidth());
+            assertEquals(3, image.getHeight());
+            for (int y = 0; y < 3; y++) {
+                for (int x = 0; x < width; x++) {
+                    boolean white = raster.isWhite(x, y);
+                    String label = "宽度" + width + " (" + x + "," + y + ")";
+                    assertEquals(white ? 1 : 0, samples.getSample(x, y, 0), label);
+                    assertEquals(white ? 0xFFFFFF : 0, image.getRGB(x, y) & 0xFFFFFF, label);
+                    assertEquals(white ? 0xFFFFFF : 0, pixels[y * width + x], label);
+                }
+            }
+        }
+    }
+
+    private static BinaryRaster randomRaster(Random random, int width, int height) {
+        BinaryRaster raster = new BinaryRaster(width, height);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                raster.set(x, y, random.nextInt(3) != 0);
+            }
+        }
+        return raster;
+    }
+
+    private static void assertMatches(byte[] expectedPlane, BinaryRaster actual, String label) {
+        byte[] actualPlane = actual.toGrayPlane();
+        for (int i = 0; i < expectedPlane.length; i++) {
+            if (expectedPlane[i] != actualPlane[i]) {
+                fail(label + " 第" + i + "个像素: 期望" + (expectedPlane[i] & 0xFF) + "，实际" + (actualPlane[i] & 0xFF));
+            }
+        }
+        assertTailBitsClear(actual, label);
+    }
+
+    private static void assertTailBitsClear(BinaryRaster raster, String label) {
+        int tailBits = raster.getWidth() & 7;
+        if (tailBits == 0) {
+            return;
+        }
+        int padding = 0xFF >>> tailBits;
+        byte[] data = raster.getData();
+        for (int y = 0; y < raster.getHeight(); y++) {
+            int last = data[y * raster.getStride() + raster.getStride() - 1] & 0xFF;
+            assertEquals(0, last & padding, label + " 第" + y + "行填充位");
+        }
+    }
+}
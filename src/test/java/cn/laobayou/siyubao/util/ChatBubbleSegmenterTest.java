@@ -0,0 +1,103 @@
+package cn.laobayou.siyubao.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 用合成的截图校验聊天气泡分割和文字覆盖率
+ */
+public class ChatBubbleSegmenterTest {
+
+    private static final int WIDTH = 1080;
+    private static final int HEIGHT = 1920;
+
+    @Test
+    public void chatLayoutSplitsLeftAndRightBubbles() {
+        int[] pixels = canvas(0xEDEDED);
+        fill(pixels, 120, 300, 500, 120, 0xFFFFFF);
+        text(pixels, 150, 330, 440, 0x111111);
+        text(pixels, 150, 370, 300, 0x111111);
+        fill(pixels, 560, 500, 400, 120, 0x95EC69);
+        text(pixels, 590, 550, 340, 0x111111);
+
+        ChatBubbleSegmenter.Segmentation segmentation = ChatBubbleSegmenter.segment(pixels, WIDTH, HEIGHT);
+
+        List<ChatBubble> bubbles = segmentation.getBubbles();
+        assertEquals(2, bubbles.size());
+        assertEquals(ChatBubble.Side.LEFT, bubbles.get(0).getSide());
+        assertTrue(bubbles.get(0).getBounds().contains(150, 330));
+        assertEquals(ChatBubble.Side.RIGHT, bubbles.get(1).getSide());
+        assertTrue(bubbles.get(1).getBounds().contains(590, 550));
+        assertTrue(segmentation.getTextCoverage() > 0.99, segmentation.toString());
+    }
+
+    /**
+     * 评论区：白底黑字，只有底部一个灰色输入框。
+     * 输入框可能被当成气泡，但绝大部分文字在气泡外，覆盖率必须足够低，使调用方识别整幅图像
+     */
+    @Test
+    public void commentPageWithInputBarHasLowTextCoverage() {
+        int[] pixels = canvas(0xFFFFFF);
+        for (int line = 0; line < 30; line++) {
+            text(pixels, 40, 100 + line * 55, 700 - line % 3 * 150, 0x000000);
+        }
+        fill(pixels, 40, 1780, 760, 108, 0xE6E6E8);
+        text(pixels, 80, 1820, 200, 0x999999);
+
+        ChatBubbleSegmenter.Segmentation segmentation = ChatBubbleSegmenter.segment(pixels, WIDTH, HEIGHT);
+
+        assertTrue(segmentation.getBubbles().size() <= 1, segmentation.toString());
+        assertTrue(segmentation.getTextCoverage() < 0.1, segmentation.toString());
+    }
+
+    @Test
+    public void plainTextPageHasNoBubbles() {
+        int[] pixels = canvas(0xFFFFFF);
+        for (int line = 0; line < 10; line++) {
+            text(pixels, 40, 100 + line * 55, 900, 0x000000);
+        }
+
+        ChatBubbleSegmenter.Segmentation segmentation = ChatBubbleSegmenter.segment(pixels, WIDTH, HEIGHT);
+
+        assertTrue(segmentation.getBubbles().isEmpty());
+        assertEquals(0.0, segmentation.getTextCoverage(), 0.0);
+    }
+
+    @Test
+    public void fullWidthBarIsNotABubble() {
+        int[] pixels = canvas(0xEDEDED);
+        fill(pixels, 0, 0, WIDTH, 160, 0xF7F7F7);
+        text(pixels, 460, 60, 160, 0x111111);
+
+        ChatBubbleSegmenter.Segmentation segmentation = ChatBubbleSegmenter.segment(pixels, WIDTH, HEIGHT);
+
+        assertTrue(segmentation.getBubbles().isEmpty());
+    }
+
+    private static int[] canvas(int background) {
+        int[] pixels = new int[WIDTH * HEIGHT];
+        Arrays.fill(pixels, background);
+        return pixels;
+    }
+
+    private static void fill(int[] pixels, int x, int y, int width, int height, int color) {
+        for (int row = y; row < y + height; row++) {
+            Arrays.fill(pixels, row * WIDTH + x, row * WIDTH + x + width, color);
+        }
+    }
+
+    /**
+     * 一行20像素高的“文字”：每个字由竖笔画和横笔画组成，字宽24像素
+     */
+    private static void text(int[] pixels, int x, int y, int width, int color) {
+        for (int cx = x; cx + 20 <= x + width; cx += 24) {
+            fill(pixels, cx + 2, y, 4, 20, color);
+            fill(pixels, cx, y + 8, 18, 4, color);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package cn.laobayou.siyubao.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.function.IntPredicate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * 校验颜色分类查找表与原始判断逻辑在全部2^24种颜色上结果一致
+ */
+public class ColorClassifierTest {
+
+    @Test
+    public void obviousBlueTableMatchesPredicate() {
+        assertTableMatches(ColorClassifier::isObviousBlueBackground, ColorClassifier::isObviousBlueColor);
+    }
+
+    @Test
+    public void smartGreenTableMatchesPredicate() {
+        assertTableMatches(ColorClassifier::isSmartGreenBackground, ColorClassifier::isSmartGreenColor);
+    }
+
+    @Test
+    public void coloredBackgroundTableMatchesPredicate() {
+        assertTableMatches(ColorClassifier::isColoredBackground, ColorClassifier::isColoredBackgroundColor);
+    }
+
+    @Test
+    public void whiteTextOnBlueTableMatchesPredicate() {
+        assertTableMatches(ColorClassifier::isWhiteTextOnBlue, ColorClassifier::isWhiteTextOnBlueColor);
+    }
+
+    @Test
+    public void lookupIgnoresAlphaChannel() {
+        int chatBlue = 0x4696F6;
+        assertEquals(ColorClassifier.isObviousBlueBackground(chatBlue),
+                ColorClassifier.isObviousBlueBackground(0xFF000000 | chatBlue));
+        assertEquals(ColorClassifier.isWhiteTextOnBlue(0xFFFFFF),
+                ColorClassifier.isWhiteTextOnBlue(0xFFFFFFFF));
+    }
+
+    private static void assertTableMatches(IntPredicate table, ColorClassifier.ColorPredicate predicate) {
+        float[] hsv = new float[3];
+        for (int rgb = 0; rgb < (1 << 24); rgb++) {
+            boolean expected = predicate.test((rgb >> 16) & 0xFF, (rgb >> 8) & 0xFF, rgb & 0xFF, hsv);
+            if (table.test(rgb) != expected) {
+                assertEquals(expected, table.test(rgb), String.format("颜色 #%06X 的查表结果与判断逻辑不一致", rgb));
+            }
+        }
+    }
+}
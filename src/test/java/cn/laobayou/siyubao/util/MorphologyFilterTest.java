@@ -0,0 +1,107 @@
+package cn.laobayou.siyubao.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * 校验van Herk/Gil-Werman分块滤波与逐像素扫描窗口的朴素实现结果一致
+ * 覆盖奇偶宽高、小于分块长度的图像，以及并行执行时跨行带的halo
+ */
+public class MorphologyFilterTest {
+
+    private static final int[][] SIZES = {
+            {1, 1}, {1, 9}, {9, 1}, {2, 3}, {5, 4}, {7, 7}, {8, 6}, {13, 11}, {16, 16}, {31, 40}, {64, 33}
+    };
+
+    @Test
+    public void erodeAndDilateMatchNaiveReference() {
+        Random random = new Random(42);
+        for (int[] size : SIZES) {
+            for (int radius = 0; radius <= 7; radius++) {
+                byte[] src = randomPlane(random, size[0], size[1], false);
+                assertFilters(src, size[0], size[1], radius, RowBandExecutor.sequential());
+            }
+        }
+    }
+
+    @Test
+    public void binaryPlaneMatchesNaiveReference() {
+        Random random = new Random(7);
+        for (int[] size : SIZES) {
+            for (int radius = 0; radius <= 7; radius++) {
+                byte[] src = randomPlane(random, size[0], size[1], true);
+                assertFilters(src, size[0], size[1], radius, RowBandExecutor.sequential());
+            }
+        }
+    }
+
+    @Test
+    public void parallelBandsMatchNaiveReference() {
+        // 行带最少16行，200行会切成多个行带，半径不超过7时halo跨越相邻行带
+        RowBandExecutor executor = RowBandExecutor.create(4, 0);
+        try {
+            Random random = new Random(3);
+            for (int width : new int[]{37, 64}) {
+                for (int radius = 0; radius <= 7; radius++) {
+                    byte[] src = randomPlane(random, width, 200, radius % 2 == 0);
+                    assertFilters(src, width, 200, radius, executor);
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static void assertFilters(byte[] src, int width, int height, int radius, RowBandExecutor executor) {
+        String label = width + "x" + height + " r=" + radius;
+        byte[] eroded = naive(src, width, height, radius, true);
+        byte[] dilated = naive(src, width, height, radius, false);
+        assertPlaneEquals(eroded, MorphologyFilter.erode(src, width, height, radius, executor), "erode " + label);
+        assertPlaneEquals(dilated, MorphologyFilter.dilate(src, width, height, radius, executor), "dilate " + label);
+        assertPlaneEquals(naive(eroded, width, height, radius, false),
+                MorphologyFilter.open(src, width, height, radius, executor), "open " + label);
+        assertPlaneEquals(naive(dilated, width, height, radius, true),
+                MorphologyFilter.close(src, width, height, radius, executor), "close " + label);
+    }
+
+    /**
+     * 朴素实现：(2*radius+1)^2窗口裁剪到图像范围内后取最小/最大值
+     */
+    private static byte[] naive(byte[] src, int width, int height, int radius, boolean min) {
+        byte[] dst = new byte[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int extreme = min ? 255 : 0;
+                for (int wy = Math.max(0, y - radius); wy <= Math.min(height - 1, y + radius); wy++) {
+                    for (int wx = Math.max(0, x - radius); wx <= Math.min(width - 1, x + radius); wx++) {
+                        int value = src[wy * width + wx] & 0xFF;
+                        extreme = min ? Math.min(extreme, value) : Math.max(extreme, value);
+                    }
+                }
+                dst[y * width + x] = (byte) extreme;
+            }
+        }
+        return dst;
+    }
+
+    private static byte[] randomPlane(Random random, int width, int height, boolean binary) {
+        byte[] plane = new byte[width * height];
+        for (int i = 0; i < plane.length; i++) {
+            plane[i] = (byte) (binary ? (random.nextInt(4) == 0 ? 0 : 255) : random.nextInt(256));
+        }
+        return plane;
+    }
+
+    private static void assertPlaneEquals(byte[] expected, byte[] actual, String label) {
+        assertEquals(expected.length, actual.length, label);
+        for (int i = 0; i < expected.length; i++) {
+            if (expected[i] != actual[i]) {
+                fail(label + " 第" + i + "个像素: 期望" + (expected[i] & 0xFF) + "，实际" + (actual[i] & 0xFF));
+            }
+        }
+    }
+}